@@ -0,0 +1,69 @@
+package com.cryptotracker.cache;
+
+import com.cryptotracker.database.DatabaseManager;
+import com.cryptotracker.scraper.PriceFeed;
+import com.cryptotracker.scraper.PriceTick;
+
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Último precio conocido de cada criptomoneda.
+ *
+ * Se actualiza una vez por tick desde el PriceFeed y publica una lista
+ * inmutable ya ordenada por id, así /prices/current solo lee una referencia
+ * volatile sin consultar MySQL ni armar objetos nuevos por petición.
+ */
+public class LatestPriceCache implements PriceFeed.PriceListener {
+
+    private final DatabaseManager dbManager;
+    private final Map<Integer, PriceTick> latest = new ConcurrentHashMap<>();
+    private volatile List<Map<String, Object>> snapshot = List.of();
+
+    public LatestPriceCache(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    @Override
+    public void onPrices(List<PriceTick> ticks) {
+        boolean changed = false;
+        for (PriceTick tick : ticks) {
+            PriceTick previous = latest.get(tick.cryptoId());
+            if (previous == null || tick.time() >= previous.time()) {
+                latest.put(tick.cryptoId(), tick);
+                changed = true;
+            }
+        }
+        if (changed) {
+            rebuildSnapshot();
+        }
+    }
+
+    private synchronized void rebuildSnapshot() {
+        List<PriceTick> ordered = new ArrayList<>(latest.values());
+        ordered.sort(Comparator.comparingInt(PriceTick::cryptoId));
+
+        List<Map<String, Object>> prices = new ArrayList<>(ordered.size());
+        for (PriceTick tick : ordered) {
+            Map<String, Object> crypto = new HashMap<>();
+            crypto.put("id", tick.cryptoId());
+            crypto.put("symbol", dbManager.getCryptoSymbol(tick.cryptoId()));
+            crypto.put("name", dbManager.getCryptoName(tick.cryptoId()));
+            crypto.put("price", tick.price());
+            crypto.put("timestamp", new Timestamp(tick.time()).toString());
+            prices.add(Collections.unmodifiableMap(crypto));
+        }
+
+        snapshot = Collections.unmodifiableList(prices);
+    }
+
+    /** Lista lista para serializar, vacía si el cache todavía está frío. */
+    public List<Map<String, Object>> getSnapshot() {
+        return snapshot;
+    }
+
+    public boolean isWarm() {
+        return !snapshot.isEmpty();
+    }
+}
@@ -0,0 +1,67 @@
+package com.cryptotracker.cache;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Junta peticiones idénticas que llegan al mismo tiempo.
+ *
+ * La primera petición con una llave ejecuta la carga; las que llegan mientras
+ * sigue corriendo esperan el mismo future y reciben el mismo resultado (o la
+ * misma excepción). En cuanto termina la llave se libera, así que no guarda
+ * nada: el cache de respuestas sigue siendo el ResponseCache.
+ */
+public class SingleFlight<V> {
+
+    private final Map<String, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    // Peticiones que ejecutaron la carga y peticiones que esperaron a otra
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+
+    public V execute(String key, Callable<V> loader) throws Exception {
+        CompletableFuture<V> call = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, call);
+
+        if (existing != null) {
+            collapsed.increment();
+            try {
+                return existing.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception exception) {
+                    throw exception;
+                }
+                throw (Error) cause;
+            }
+        }
+
+        executed.increment();
+        try {
+            V value = loader.call();
+            call.complete(value);
+            return value;
+        } catch (Throwable t) {
+            call.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    public long getExecutedCount() {
+        return executed.sum();
+    }
+
+    public long getCollapsedCount() {
+        return collapsed.sum();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+}
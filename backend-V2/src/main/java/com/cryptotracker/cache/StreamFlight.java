@@ -0,0 +1,174 @@
+package com.cryptotracker.cache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SingleFlight para respuestas que se escriben directo al socket.
+ *
+ * La primera petición con una llave escribe el cuerpo en su propia salida sin
+ * armarlo en memoria; de paso guarda una copia de lo escrito mientras no pase
+ * de maxSharedBytes. Las peticiones iguales que llegan mientras tanto esperan
+ * y reciben esa copia. Si falló el socket de la primera (no la consulta) cada
+ * una escribe el suyo. Así el heap por respuesta queda acotado tenga o no
+ * peticiones esperando.
+ *
+ * La copia se guarda en los mismos pedazos en que se escribió, sin juntarlos
+ * en un arreglo al final. En cuanto pasa del límite se descarta y se despierta
+ * a las que esperan para que cada una haga su consulta, en vez de tenerlas
+ * paradas hasta que la primera termine de escribir; la llave se suelta en ese
+ * momento, así que las que lleguen después tampoco se quedan esperando.
+ */
+public class StreamFlight {
+
+    @FunctionalInterface
+    public interface Body {
+        void writeTo(OutputStream out) throws Exception;
+    }
+
+    private final int maxSharedBytes;
+    private final Map<String, CompletableFuture<List<byte[]>>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+
+    public StreamFlight(int maxSharedBytes) {
+        this.maxSharedBytes = maxSharedBytes;
+    }
+
+    public void execute(String key, OutputStream out, Body body) throws Exception {
+        CompletableFuture<List<byte[]>> call = new CompletableFuture<>();
+        CompletableFuture<List<byte[]>> existing = inFlight.putIfAbsent(key, call);
+
+        if (existing != null) {
+            List<byte[]> shared = await(existing);
+            if (shared != null) {
+                collapsed.increment();
+                for (byte[] chunk : shared) {
+                    out.write(chunk);
+                }
+                return;
+            }
+            // La copia no cupo: esta petición hace su propia consulta
+            executed.increment();
+            body.writeTo(out);
+            return;
+        }
+
+        executed.increment();
+        SharingStream sharing = new SharingStream(out, maxSharedBytes, () -> {
+            inFlight.remove(key, call);
+            call.complete(null);
+        });
+        try {
+            body.writeTo(sharing);
+            call.complete(sharing.shared());
+        } catch (Throwable t) {
+            if (sharing.sinkFailed) {
+                // Se cayó el cliente de esta petición, no la consulta: las demás la repiten
+                call.complete(null);
+            } else {
+                call.completeExceptionally(t);
+            }
+            throw t;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    public long getExecutedCount() {
+        return executed.sum();
+    }
+
+    public long getCollapsedCount() {
+        return collapsed.sum();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private static List<byte[]> await(CompletableFuture<List<byte[]>> call) throws Exception {
+        try {
+            return call.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception exception) {
+                throw exception;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    // Escribe en la salida y guarda una copia hasta el límite; al pasarlo avisa una vez
+    private static final class SharingStream extends OutputStream {
+        private final OutputStream out;
+        private final int maxBytes;
+        private final Runnable onOverflow;
+        private List<byte[]> copy = new ArrayList<>();
+        private long copied = 0;
+        private boolean sinkFailed = false;
+
+        SharingStream(OutputStream out, int maxBytes, Runnable onOverflow) {
+            this.out = out;
+            this.maxBytes = maxBytes;
+            this.onOverflow = onOverflow;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                out.write(b, off, len);
+            } catch (IOException e) {
+                sinkFailed = true;
+                throw e;
+            }
+            if (copy != null) {
+                copied += len;
+                if (copied > maxBytes) {
+                    copy = null;
+                    onOverflow.run();
+                } else if (len > 0) {
+                    copy.add(Arrays.copyOfRange(b, off, off + len));
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                sinkFailed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.close();
+            } catch (IOException e) {
+                sinkFailed = true;
+                throw e;
+            }
+        }
+
+        List<byte[]> shared() {
+            return copy;
+        }
+    }
+}
@@ -1,40 +1,254 @@
 package com.cryptotracker.database;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 
+/**
+ * Retención de la tabla prices.
+ *
+ * Si prices está particionada por RANGE COLUMNS(price_time) (ver
+ * database/partition_prices.sql) mantiene una partición por cada
+ * data.partition.hours horas: crea por adelantado las de las próximas
+ * data.partition.future.hours partiendo pmax y borra con DROP PARTITION las
+ * que ya quedaron completas fuera de la retención, sin tocar filas.
+ *
+ * Si no está particionada borra por lotes de data.cleanup.chunk.size filas
+ * con una pausa entre lotes, así cada DELETE es una transacción corta que no
+ * detiene los INSERT del escritor de ticks.
+ *
+ * Las tablas de agregados de RollupTier tienen su propia retención
+ * (rollup.&lt;nivel&gt;.retention.hours) y se limpian siempre por lotes: tienen
+ * una fila por cripto y bucket, muchas menos que prices.
+ *
+ * Todos los nodos programan la tarea pero solo uno a la vez la ejecuta, con
+ * un candado con nombre de MySQL.
+ */
 public class DataCleanupTask implements Runnable {
+    private static final Logger log = LoggerFactory.getLogger(DataCleanupTask.class);
+
+    private static final String LOCK_NAME = "cryptotracker_retention";
+    private static final String MAX_PARTITION = "pmax";
+
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p'yyyyMMddHH");
+    private static final DateTimeFormatter PARTITION_BOUND = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
     private final DatabaseManager dbManager;
     private final int retentionHours;
+    private final int partitionHours;
+    private final int futureHours;
+    private final int chunkSize;
+    private final long pauseMillis;
+    private final boolean rollupsEnabled;
+    private final Map<RollupTier, Integer> rollupRetention;
     private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm:ss");
-    
-    public DataCleanupTask(DatabaseManager dbManager, int retentionHours) {
+
+    // Partición de prices según information_schema: nombre y límite superior (null = MAXVALUE)
+    private record Partition(String name, LocalDateTime lessThan) {
+    }
+
+    public DataCleanupTask(DatabaseManager dbManager, int retentionHours, Properties config) {
         this.dbManager = dbManager;
         this.retentionHours = retentionHours;
+        this.partitionHours = Integer.parseInt(config.getProperty("data.partition.hours", "1"));
+        this.futureHours = Integer.parseInt(config.getProperty("data.partition.future.hours", "24"));
+        this.chunkSize = Integer.parseInt(config.getProperty("data.cleanup.chunk.size", "5000"));
+        this.pauseMillis = Long.parseLong(config.getProperty("data.cleanup.pause.ms", "200"));
+        this.rollupsEnabled = Boolean.parseBoolean(config.getProperty("rollup.enabled", "true"));
+        this.rollupRetention = RollupTier.retentionHours(config);
     }
-    
+
     @Override
     public void run() {
         String horaActual = LocalDateTime.now().format(formatter);
-        
+
         try (Connection conn = dbManager.getConnection()) {
-            // Usar DATE_SUB para MySQL
-            String sql = "DELETE FROM prices WHERE price_time < DATE_SUB(NOW(), INTERVAL ? HOUR)";
-            
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setInt(1, retentionHours);
-                
-                int deletedRows = stmt.executeUpdate();
-                
-                if (deletedRows > 0) {
-                    System.out.println("[" + horaActual + "] Limpieza: " + deletedRows + 
-                                     " registros antiguos eliminados (>" + retentionHours + " horas)");
+            if (!acquireLock(conn)) {
+                log.debug("[{}] Limpieza en curso en otro nodo", horaActual);
+                return;
+            }
+
+            try {
+                List<Partition> partitions = loadPartitions(conn);
+                if (partitions != null) {
+                    maintainPartitions(conn, partitions, horaActual);
+                } else {
+                    deleteInChunks(conn, "prices", "price_time", retentionHours, horaActual);
+                }
+                if (rollupsEnabled) {
+                    cleanRollups(conn, horaActual);
                 }
+            } finally {
+                releaseLock(conn);
             }
-            
+
         } catch (SQLException e) {
-            System.err.println("[" + horaActual + "] Error en limpieza de datos: " + e.getMessage());
+            log.error("[{}] Error en limpieza de datos: {}", horaActual, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("[{}] Limpieza interrumpida", horaActual);
+        }
+    }
+
+    private boolean acquireLock(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT GET_LOCK(?, 0)")) {
+            stmt.setString(1, LOCK_NAME);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private void releaseLock(Connection conn) {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            stmt.setString(1, LOCK_NAME);
+            stmt.executeQuery().close();
+        } catch (SQLException e) {
+            log.warn("No se pudo liberar el candado de limpieza: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Particiones de prices en orden, o null si la tabla no está particionada
+     * por RANGE COLUMNS (entonces se usa el DELETE por lotes).
+     */
+    private List<Partition> loadPartitions(Connection conn) throws SQLException {
+        String sql = """
+            SELECT PARTITION_NAME, PARTITION_METHOD, PARTITION_DESCRIPTION
+            FROM information_schema.PARTITIONS
+            WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'prices'
+            ORDER BY PARTITION_ORDINAL_POSITION
+        """;
+
+        List<Partition> partitions = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+
+            while (rs.next()) {
+                if (!"RANGE COLUMNS".equals(rs.getString("PARTITION_METHOD"))) {
+                    return null;
+                }
+                String bound = rs.getString("PARTITION_DESCRIPTION");
+                LocalDateTime lessThan = bound.equals("MAXVALUE")
+                        ? null
+                        : LocalDateTime.parse(bound.replace("'", ""), PARTITION_BOUND);
+                partitions.add(new Partition(rs.getString("PARTITION_NAME"), lessThan));
+            }
+        }
+        return partitions.isEmpty() ? null : partitions;
+    }
+
+    private void maintainPartitions(Connection conn, List<Partition> partitions, String horaActual) throws SQLException {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime cutoff = now.minusHours(retentionHours);
+
+        List<String> expired = new ArrayList<>();
+        LocalDateTime lastBound = null;
+        boolean hasMax = false;
+        for (Partition partition : partitions) {
+            if (partition.lessThan() == null) {
+                hasMax = true;
+                continue;
+            }
+            if (!partition.lessThan().isAfter(cutoff)) {
+                expired.add(partition.name());
+            }
+            lastBound = partition.lessThan();
+        }
+
+        // Primero crear las que falten hasta futureHours adelante, así nunca se
+        // borran todas; si la última quedó antes del corte se empieza ahí y lo
+        // que quede en medio cae en la primera partición nueva
+        LocalDateTime target = now.plusHours(futureHours);
+        List<String> definitions = new ArrayList<>();
+        for (LocalDateTime bound = alignedBound(lastBound != null && lastBound.isAfter(cutoff) ? lastBound : cutoff);
+             !bound.isAfter(target); bound = bound.plusHours(partitionHours)) {
+            definitions.add("PARTITION " + bound.minusHours(partitionHours).format(PARTITION_NAME)
+                    + " VALUES LESS THAN ('" + bound.format(PARTITION_BOUND) + "')");
+        }
+
+        if (!definitions.isEmpty()) {
+            String ddl = hasMax
+                    // pmax normalmente está vacía: partirla no copia filas
+                    ? "ALTER TABLE prices REORGANIZE PARTITION " + MAX_PARTITION + " INTO ("
+                            + String.join(", ", definitions)
+                            + ", PARTITION " + MAX_PARTITION + " VALUES LESS THAN (MAXVALUE))"
+                    : "ALTER TABLE prices ADD PARTITION (" + String.join(", ", definitions) + ")";
+
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(ddl);
+            }
+            log.info("[{}] {} particiones nuevas hasta {}", horaActual, definitions.size(), target.format(PARTITION_BOUND));
+        }
+
+        // Borrar las que terminan antes del corte: DDL de metadatos, sin recorrer filas
+        if (!expired.isEmpty()) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE prices DROP PARTITION " + String.join(", ", expired));
+            }
+            log.info("[{}] Limpieza: {} particiones eliminadas (>{} horas)", horaActual, expired.size(), retentionHours);
+        }
+    }
+
+    // Primer límite de partición (múltiplo de partitionHours desde medianoche) posterior a time
+    private LocalDateTime alignedBound(LocalDateTime time) {
+        LocalDateTime day = time.truncatedTo(ChronoUnit.DAYS);
+        long hours = ChronoUnit.HOURS.between(day, time) / partitionHours * partitionHours + partitionHours;
+        return day.plusHours(hours);
+    }
+
+    private void cleanRollups(Connection conn, String horaActual) throws InterruptedException {
+        for (RollupTier tier : RollupTier.values()) {
+            try {
+                deleteInChunks(conn, tier.table(), "bucket_time", rollupRetention.get(tier), horaActual);
+            } catch (SQLException e) {
+                // Un nivel que falla (p. ej. tabla sin crear) no detiene los demás
+                log.warn("[{}] Error limpiando {}: {}", horaActual, tier.table(), e.getMessage());
+            }
+        }
+    }
+
+    private void deleteInChunks(Connection conn, String table, String timeColumn, int retentionHours,
+                                String horaActual) throws SQLException, InterruptedException {
+        // Rango sobre el índice de la columna de tiempo; cada lote se confirma solo (autocommit)
+        String sql = """
+            DELETE FROM %s
+            WHERE %s < ?
+            ORDER BY %s
+            LIMIT ?
+        """.formatted(table, timeColumn, timeColumn);
+
+        Timestamp cutoff = new Timestamp(System.currentTimeMillis() - retentionHours * 3600_000L);
+        long deletedRows = 0;
+        int chunks = 0;
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setTimestamp(1, cutoff);
+            stmt.setInt(2, chunkSize);
+
+            int deleted;
+            do {
+                deleted = stmt.executeUpdate();
+                deletedRows += deleted;
+                chunks++;
+                if (deleted == chunkSize) {
+                    // Pausa para que los INSERT no esperen detrás de la limpieza
+                    Thread.sleep(pauseMillis);
+                }
+            } while (deleted == chunkSize);
+        }
+
+        if (deletedRows > 0) {
+            log.info("[{}] Limpieza de {}: {} registros antiguos eliminados en {} lotes (>{} horas)",
+                     horaActual, table, deletedRows, chunks, retentionHours);
         }
     }
-}
\ No newline at end of file
+}
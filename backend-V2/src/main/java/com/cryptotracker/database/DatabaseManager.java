@@ -2,34 +2,68 @@ package com.cryptotracker.database;
 
 import java.sql.*;
 import java.util.*;
-import javax.sql.DataSource;
-import com.mysql.cj.jdbc.MysqlDataSource;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import com.cryptotracker.metrics.MetricsRegistry;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.pool.HikariPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Acceso a MySQL. Las escrituras (y todo lo que use getConnection()) van al
+ * primario; las lecturas de getReadConnection() van a las réplicas de
+ * db.replica.urls o db.replica.instances cuando hay alguna al día, y si no
+ * al primario.
+ */
 public class DatabaseManager {
+    private static final Logger log = LoggerFactory.getLogger(DatabaseManager.class);
+    
     private final Properties config;
-    private DataSource dataSource;
+    
+    // Pool de conexiones; reconnect() lo reemplaza por uno nuevo
+    private volatile HikariDataSource dataSource;
+    
+    // Pools anteriores que esperan a que se devuelvan sus conexiones prestadas
+    private final Set<HikariDataSource> retiring = ConcurrentHashMap.newKeySet();
+    
+    // Métricas del pool (null hasta que se configure el registro)
+    private MetricsRegistry registry;
+    private PoolMetricsTracker poolMetrics;
+    
+    // Resultado del último ping a MySQL, que hace un hilo aparte cada
+    // db.health.check.ms; testConnection() solo lo lee
+    private volatile boolean reachable = false;
+    private ScheduledExecutorService healthExecutor;
+    
+    // Réplicas de lectura (null si no hay ninguna configurada)
+    private ReplicaRouter replicaRouter;
+    private final LongAdder primaryReads = new LongAdder();
     
     // Cache de IDs de criptomonedas
     private final Map<String, Integer> cryptoIdCache = new HashMap<>();
+    private final Map<Integer, String> cryptoSymbolCache = new HashMap<>();
+    private final Map<Integer, String> cryptoNameCache = new HashMap<>();
     
     public DatabaseManager(Properties config) {
         this.config = config;
     }
     
+    public void setMetricsRegistry(MetricsRegistry registry) {
+        this.registry = registry;
+        this.poolMetrics = new PoolMetricsTracker(registry);
+        registry.counter("cryptotracker_db_reads_total", "Lecturas por destino",
+                MetricsRegistry.labels("target", "primary"), primaryReads::sum);
+    }
+    
     public void initialize() throws SQLException {
-        // Configurar DataSource
-        MysqlDataSource ds = new MysqlDataSource();
-        
-        String jdbcUrl = String.format(
-                "jdbc:mysql://google/%s?cloudSqlInstance=%s&socketFactory=com.google.cloud.sql.mysql.SocketFactory&useSSL=false",
-                config.getProperty("db.databaseName"),
-                config.getProperty("db.instanceConnectionName")
-            );
-        ds.setURL(jdbcUrl);        
-        ds.setUser(config.getProperty("db.user"));
-        ds.setPassword(config.getProperty("db.password"));
-        
-        this.dataSource = ds;
+        this.dataSource = createPool();
+        this.replicaRouter = createReplicaRouter();
         
         // Cargar cache de IDs
         loadCryptoIds();
@@ -40,22 +74,205 @@ public class DatabaseManager {
                 throw new SQLException("No se pudo establecer conexión válida con la base de datos");
             }
         }
+        reachable = true;
+        
+        long healthMillis = Long.parseLong(config.getProperty("db.health.check.ms", "5000"));
+        healthExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-health-check");
+            t.setDaemon(true);
+            return t;
+        });
+        healthExecutor.scheduleWithFixedDelay(this::ping, healthMillis, healthMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    private void ping() {
+        HikariDataSource ds = dataSource;
+        if (ds == null || ds.isClosed()) {
+            reachable = false;
+            return;
+        }
+        try (Connection conn = ds.getConnection()) {
+            reachable = conn.isValid(1);
+        } catch (SQLException e) {
+            // Con el pool ocupado las conexiones prestadas siguen funcionando:
+            // se conserva el último resultado
+            if (!isPoolBusy(e)) {
+                reachable = false;
+            }
+        } catch (RuntimeException e) {
+            log.error("Error revisando la conexión a la base de datos: {}", e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * true si Hikari se cansó de esperar una conexión libre sin que fallara
+     * ninguna conexión a la BD: está ocupado, no caído. Cuando sí hubo error
+     * de conexión Hikari lo pone como causa del timeout.
+     */
+    static boolean isPoolBusy(SQLException e) {
+        return e instanceof SQLTransientConnectionException && e.getCause() == null;
+    }
+    
+    // URL de Cloud SQL para una instancia (primario o réplica) de la misma base
+    private String cloudSqlUrl(String instanceConnectionName) {
+        return String.format(
+                "jdbc:mysql://google/%s?cloudSqlInstance=%s&socketFactory=com.google.cloud.sql.mysql.SocketFactory&useSSL=false",
+                config.getProperty("db.databaseName"),
+                instanceConnectionName
+            );
+    }
+    
+    private HikariDataSource createPool() throws SQLException {
+        // db.url reemplaza a Cloud SQL, p. ej. para una base local o embebida
+        String jdbcUrl = config.getProperty("db.url",
+                cloudSqlUrl(config.getProperty("db.instanceConnectionName")));
+        
+        // Conexiones en uso al mismo tiempo. Con hilos virtuales miles de
+        // peticiones pueden esperar al pool estacionadas sin agotar MySQL; además
+        // el driver usa synchronized y fija el hilo portador mientras espera I/O,
+        // así que conviene que el límite no rebase los núcleos disponibles.
+        int maxConcurrent = Integer.parseInt(config.getProperty("db.max.concurrent", "10"));
+        HikariConfig pool = poolConfig("cryptotracker-db", jdbcUrl,
+                config.getProperty("db.user"), config.getProperty("db.password"), maxConcurrent);
+        pool.setConnectionTimeout(Long.parseLong(config.getProperty("db.acquire.timeout.ms", "5000")));
+        
+        if (poolMetrics != null) {
+            pool.setMetricsTrackerFactory(poolMetrics);
+        }
+        
+        try {
+            HikariDataSource ds = new HikariDataSource(pool);
+            log.info("Pool de conexiones iniciado (máximo {}, mínimo libres {})",
+                    pool.getMaximumPoolSize(), pool.getMinimumIdle());
+            return ds;
+        } catch (HikariPool.PoolInitializationException e) {
+            throw new SQLException("No se pudo iniciar el pool de conexiones: " + e.getMessage(), e);
+        }
     }
     
+    /**
+     * Un pool por réplica, de db.replica.urls (URLs JDBC separadas por coma) o
+     * si no de db.replica.instances (instancias de Cloud SQL). null si no hay.
+     */
+    private ReplicaRouter createReplicaRouter() {
+        String urls = config.getProperty("db.replica.urls", "").trim();
+        String instances = config.getProperty("db.replica.instances", "").trim();
+        List<String> jdbcUrls = new ArrayList<>();
+        if (!urls.isEmpty()) {
+            for (String url : urls.split(",")) {
+                jdbcUrls.add(url.trim());
+            }
+        } else if (!instances.isEmpty()) {
+            for (String instance : instances.split(",")) {
+                jdbcUrls.add(cloudSqlUrl(instance.trim()));
+            }
+        }
+        if (jdbcUrls.isEmpty()) {
+            return null;
+        }
+        
+        String user = config.getProperty("db.replica.user", config.getProperty("db.user"));
+        String password = config.getProperty("db.replica.password", config.getProperty("db.password"));
+        int maxConcurrent = Integer.parseInt(config.getProperty("db.replica.max.concurrent",
+                config.getProperty("db.max.concurrent", "10")));
+        
+        List<ReplicaRouter.Replica> replicas = new ArrayList<>();
+        for (int i = 0; i < jdbcUrls.size(); i++) {
+            String name = "replica" + (i + 1);
+            HikariConfig pool = poolConfig("cryptotracker-db-" + name, jdbcUrls.get(i), user, password, maxConcurrent);
+            // Una réplica lenta cede pronto la lectura a otra o al primario
+            pool.setConnectionTimeout(Long.parseLong(config.getProperty("db.replica.acquire.timeout.ms", "1000")));
+            // Que arranque aunque la réplica esté caída; la revisión la activa cuando responda
+            pool.setInitializationFailTimeout(-1);
+            replicas.add(new ReplicaRouter.Replica(name, new HikariDataSource(pool)));
+        }
+        
+        ReplicaRouter router = new ReplicaRouter(replicas,
+                Long.parseLong(config.getProperty("db.replica.max.lag.seconds", "5")),
+                config.getProperty("db.replica.lag.query", "SHOW REPLICA STATUS"),
+                config.getProperty("db.replica.lag.column", "Seconds_Behind_Source"),
+                Long.parseLong(config.getProperty("db.replica.check.ms", "5000")));
+        if (registry != null) {
+            router.setMetricsRegistry(registry);
+        }
+        router.start();
+        log.info("Lecturas repartidas entre {} réplicas ({} al día)", replicas.size(), router.getHealthyCount());
+        return router;
+    }
+    
+    // Configuración común del pool del primario y de las réplicas
+    private HikariConfig poolConfig(String poolName, String jdbcUrl, String user, String password, int maxConcurrent) {
+        HikariConfig pool = new HikariConfig();
+        pool.setPoolName(poolName);
+        pool.setJdbcUrl(jdbcUrl);
+        pool.setUsername(user);
+        pool.setPassword(password);
+        pool.setMaximumPoolSize(maxConcurrent);
+        // Al menos una conexión viva para que el ping no espere a abrir una
+        pool.setMinimumIdle(Math.max(1, Math.min(maxConcurrent,
+                Integer.parseInt(config.getProperty("db.pool.min.idle", "2")))));
+        pool.setIdleTimeout(Long.parseLong(config.getProperty("db.pool.idle.timeout.ms", "600000")));
+        pool.setMaxLifetime(Long.parseLong(config.getProperty("db.pool.max.lifetime.ms", "1800000")));
+        pool.setKeepaliveTime(Long.parseLong(config.getProperty("db.pool.keepalive.ms", "120000")));
+        // Al prestar una conexión que estuvo libre se valida con isValid() del driver
+        pool.setValidationTimeout(Long.parseLong(config.getProperty("db.pool.validation.timeout.ms", "3000")));
+        // Aviso en el log si una conexión no vuelve al pool en este tiempo (0 = apagado)
+        pool.setLeakDetectionThreshold(Long.parseLong(config.getProperty("db.pool.leak.detection.ms", "60000")));
+        
+        // executeBatch de un INSERT se manda como un solo INSERT de varias filas
+        pool.addDataSourceProperty("rewriteBatchedStatements", "true");
+        // Cache de sentencias preparadas del lado del cliente
+        pool.addDataSourceProperty("cachePrepStmts", "true");
+        pool.addDataSourceProperty("prepStmtCacheSize", "250");
+        pool.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        return pool;
+    }
+    
+    /**
+     * Conexión del pool; se regresa al cerrarla, así que siempre se debe usar
+     * con try-with-resources. Espera a lo más db.acquire.timeout.ms.
+     */
     public Connection getConnection() throws SQLException {
         return dataSource.getConnection();
     }
     
+    /**
+     * Conexión para consultas de solo lectura: de una réplica al día si hay,
+     * si no del primario. Lo leído puede ir hasta db.replica.max.lag.seconds
+     * atrás de lo último escrito.
+     */
+    public Connection getReadConnection() throws SQLException {
+        ReplicaRouter router = replicaRouter;
+        if (router != null) {
+            Connection conn = router.getConnection();
+            if (conn != null) {
+                return conn;
+            }
+        }
+        primaryReads.increment();
+        return getConnection();
+    }
+    
+    public int getReplicaCount() {
+        return replicaRouter != null ? replicaRouter.getReplicaCount() : 0;
+    }
+    
+    public int getHealthyReplicaCount() {
+        return replicaRouter != null ? replicaRouter.getHealthyCount() : 0;
+    }
+    
     private void loadCryptoIds() throws SQLException {
         try (Connection conn = getConnection();
              Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT id, symbol FROM crypto")) {
+             ResultSet rs = stmt.executeQuery("SELECT id, symbol, name FROM crypto")) {
             
             while (rs.next()) {
                 cryptoIdCache.put(rs.getString("symbol"), rs.getInt("id"));
+                cryptoSymbolCache.put(rs.getInt("id"), rs.getString("symbol"));
+                cryptoNameCache.put(rs.getInt("id"), rs.getString("name"));
             }
             
-            System.out.println("Cargados " + cryptoIdCache.size() + " IDs de criptomonedas");
+            log.info("Cargados {} IDs de criptomonedas", cryptoIdCache.size());
         }
     }
     
@@ -67,32 +284,84 @@ public class DatabaseManager {
         return cryptoIdCache.get(symbol);
     }
 
+    public String getCryptoSymbol(int id) {
+        return cryptoSymbolCache.get(id);
+    }
+
+    public String getCryptoName(int id) {
+        return cryptoNameCache.get(id);
+    }
+
     public boolean testConnection() {
-        try (Connection conn = getConnection()) {
-            return conn != null && !conn.isClosed();
-        } catch (SQLException e) {
-            return false;
-        }
+        // No pide conexiones: /health debe responder aunque el pool esté
+        // saturado. El ping de fondo ya probó la BD hace a lo más db.health.check.ms
+        HikariDataSource ds = dataSource;
+        return ds != null && ds.isRunning() && reachable;
     }
 
     public void reconnect() throws SQLException {
-        // Cerrar pool actual si existe
-        if (dataSource != null) {
-            if (dataSource instanceof MysqlDataSource) {
-                ((DatabaseManager) dataSource).close();
-            }
+        // El pool nuevo entra antes de retirar el anterior, así las peticiones no
+        // ven un hueco
+        HikariDataSource old = dataSource;
+        dataSource = createPool();
+        if (old != null) {
+            retire(old);
         }
+        ping();
         
-        // Reinicializar
-        initialize();
+        log.info("Reconexión a base de datos completada");
+    }
+    
+    /**
+     * Retira un pool sin abortar las conexiones prestadas: softEvict cierra ya
+     * las libres y las demás al devolverse, y el pool se cierra cuando no queda
+     * ninguna activa o pasado db.reconnect.drain.ms.
+     */
+    private void retire(HikariDataSource old) {
+        HikariPoolMXBean pool = old.getHikariPoolMXBean();
+        ScheduledExecutorService executor = healthExecutor;
+        if (pool == null || executor == null || executor.isShutdown()) {
+            old.close();
+            return;
+        }
+        pool.softEvictConnections();
+        retiring.add(old);
         
-        System.out.println("Reconexión a base de datos completada");
+        long deadline = System.currentTimeMillis()
+                + Long.parseLong(config.getProperty("db.reconnect.drain.ms", "30000"));
+        Runnable closeWhenIdle = new Runnable() {
+            @Override
+            public void run() {
+                int active = pool.getActiveConnections();
+                if (active == 0 || System.currentTimeMillis() >= deadline) {
+                    if (active > 0) {
+                        log.warn("Cerrando el pool anterior con {} conexiones aún prestadas", active);
+                    }
+                    old.close();
+                    retiring.remove(old);
+                } else if (!executor.isShutdown()) {
+                    executor.schedule(this, 500, TimeUnit.MILLISECONDS);
+                }
+            }
+        };
+        executor.execute(closeWhenIdle);
     }
     
     public void close() throws SQLException {
-        // Limpiar recursos si es necesario
-        if (dataSource instanceof MysqlDataSource) {
-            ((DatabaseManager) dataSource).close();
+        if (healthExecutor != null) {
+            healthExecutor.shutdownNow();
+        }
+        if (replicaRouter != null) {
+            replicaRouter.close();
+        }
+        for (HikariDataSource old : retiring) {
+            old.close();
+        }
+        retiring.clear();
+        HikariDataSource ds = dataSource;
+        if (ds != null && !ds.isClosed()) {
+            ds.close();
+            log.info("Pool de conexiones cerrado");
         }
     }
 }
\ No newline at end of file
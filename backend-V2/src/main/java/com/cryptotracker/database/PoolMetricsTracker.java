@@ -0,0 +1,72 @@
+package com.cryptotracker.database;
+
+import com.cryptotracker.metrics.Histogram;
+import com.cryptotracker.metrics.MetricsRegistry;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pasa las métricas del pool de Hikari al registro de Prometheus.
+ *
+ * Los tiempos (espera por una conexión, uso y creación) llegan por eventos;
+ * el estado del pool (activas, libres, en espera) se lee de PoolStats al
+ * exportar. Un pool nuevo tras reconnect() reemplaza los gauges del anterior
+ * y sigue sumando en los mismos histogramas.
+ */
+class PoolMetricsTracker implements MetricsTrackerFactory {
+
+    private final MetricsRegistry registry;
+    private final Histogram acquireTime;
+    private final Histogram heldTime;
+    private final Histogram createTime;
+    private final LongAdder timeouts;
+
+    PoolMetricsTracker(MetricsRegistry registry) {
+        this.registry = registry;
+        this.acquireTime = registry.histogram("cryptotracker_db_acquire_seconds",
+                "Espera por una conexión del pool", "");
+        this.heldTime = registry.histogram("cryptotracker_db_connection_held_seconds",
+                "Tiempo que una petición retiene la conexión (consulta y lectura de filas)", "");
+        this.createTime = registry.histogram("cryptotracker_db_connection_create_seconds",
+                "Apertura de conexiones nuevas a MySQL (socket, TLS y autenticación)", "");
+        this.timeouts = registry.counter("cryptotracker_db_acquire_timeouts_total",
+                "Peticiones que no obtuvieron conexión dentro de db.acquire.timeout.ms", "");
+    }
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats stats) {
+        registry.gauge("cryptotracker_db_pool_connections", "Conexiones del pool por estado",
+                MetricsRegistry.labels("state", "active"), stats::getActiveConnections);
+        registry.gauge("cryptotracker_db_pool_connections", "Conexiones del pool por estado",
+                MetricsRegistry.labels("state", "idle"), stats::getIdleConnections);
+        registry.gauge("cryptotracker_db_pool_pending", "Hilos esperando una conexión del pool",
+                "", stats::getPendingThreads);
+        registry.gauge("cryptotracker_db_pool_max", "Tamaño máximo del pool (db.max.concurrent)",
+                "", stats::getMaxConnections);
+
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionCreatedMillis(long millis) {
+                createTime.observeNanos(millis * 1_000_000L);
+            }
+
+            @Override
+            public void recordConnectionAcquiredNanos(long nanos) {
+                acquireTime.observeNanos(nanos);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long millis) {
+                heldTime.observeNanos(millis * 1_000_000L);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.increment();
+            }
+        };
+    }
+}
@@ -0,0 +1,158 @@
+package com.cryptotracker.database;
+
+import com.cryptotracker.scraper.PriceFeed;
+import com.cryptotracker.scraper.PriceTick;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lee de la BD los precios desde el último publicado y los manda al
+ * PriceFeed. En los seguidores es la única fuente de datos en memoria; en el
+ * líder normalmente no encuentra nada nuevo porque el scraper ya publicó esos
+ * ticks.
+ *
+ * El cursor se relee con >=: TickWriter guarda por lotes de tamaño fijo, así
+ * que los ticks de un mismo scrape (mismo price_time) pueden quedar en dos
+ * commits. Los que ya se publicaron los descarta el PriceFeed por cripto.
+ *
+ * Un nodo que dejó de ser líder guarda su bitácora después de que el nuevo
+ * líder ya publicó ticks más nuevos, así que esas filas quedan detrás del
+ * cursor. Para verlas también se leen las filas con id mayor al de hace dos
+ * corridas y price_time anterior al cursor: el PriceFeed las pasa a la serie
+ * en memoria, que solo inserta las que faltan. Se usan dos corridas porque
+ * dos escritores pueden confirmar sus ids fuera de orden.
+ */
+public class PriceSyncTask implements Runnable {
+    private static final Logger log = LoggerFactory.getLogger(PriceSyncTask.class);
+    
+    private final DatabaseManager dbManager;
+    private final PriceFeed priceFeed;
+    private final int retentionHours;
+    private long historyStart = 0;
+    // Mayor id leído en la corrida anterior y en la de antes
+    private long lastId = 0;
+    private long previousId = 0;
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    public PriceSyncTask(DatabaseManager dbManager, PriceFeed priceFeed, int retentionHours) {
+        this.dbManager = dbManager;
+        this.priceFeed = priceFeed;
+        this.retentionHours = retentionHours;
+    }
+
+    @Override
+    public void run() {
+        boolean initialLoad = historyStart == 0;
+        long since;
+        if (initialLoad) {
+            // Arranque en frío: cargar toda la ventana de retención
+            since = System.currentTimeMillis() - retentionHours * 3600_000L;
+        } else {
+            since = Math.max(priceFeed.getLastTimestamp(), historyStart);
+        }
+
+        String sql = """
+            SELECT id, crypto_id, price, price_time
+            FROM prices
+            WHERE price_time >= ?
+            ORDER BY price_time ASC, crypto_id ASC
+        """;
+
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            long maxId;
+            if (initialLoad) {
+                // Antes de cargar: lo que se confirme durante la carga entra como atrasado
+                maxId = readMaxId(conn);
+                previousId = maxId;
+            } else {
+                maxId = Math.max(lastId, readLate(conn, previousId, since));
+            }
+
+            stmt.setTimestamp(1, new Timestamp(since));
+
+            List<PriceTick> ticks = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ticks.add(new PriceTick(
+                        rs.getInt("crypto_id"),
+                        rs.getDouble("price"),
+                        rs.getTimestamp("price_time").getTime()
+                    ));
+                    maxId = Math.max(maxId, rs.getLong("id"));
+                }
+            }
+
+            if (!ticks.isEmpty()) {
+                priceFeed.publish(ticks);
+            }
+            if (!initialLoad) {
+                previousId = lastId;
+            }
+            lastId = maxId;
+            
+            if (initialLoad) {
+                historyStart = since;
+                priceFeed.historyLoaded(since);
+                log.info("Historial cargado en memoria: {} precios", ticks.size());
+            }
+
+        } catch (SQLException e) {
+            String horaActual = LocalDateTime.now().format(formatter);
+            log.error("[{}] Error sincronizando precios: {}", horaActual, e.getMessage());
+        } catch (RuntimeException e) {
+            // Que una falla no cancele la ejecución periódica
+            String horaActual = LocalDateTime.now().format(formatter);
+            log.error("[{}] Error inesperado sincronizando precios: {}", horaActual, e.getMessage());
+        }
+    }
+
+    /**
+     * Publica las filas con id mayor a afterId y price_time anterior al
+     * cursor, que el PriceFeed trata como atrasadas.
+     *
+     * @return el mayor id leído (afterId si ninguno)
+     */
+    private long readLate(Connection conn, long afterId, long before) throws SQLException {
+        String sql = """
+            SELECT id, crypto_id, price, price_time
+            FROM prices
+            WHERE id > ? AND price_time < ?
+            ORDER BY price_time ASC, crypto_id ASC
+        """;
+        long maxId = afterId;
+        List<PriceTick> ticks = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, afterId);
+            stmt.setTimestamp(2, new Timestamp(before));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ticks.add(new PriceTick(
+                        rs.getInt("crypto_id"),
+                        rs.getDouble("price"),
+                        rs.getTimestamp("price_time").getTime()
+                    ));
+                    maxId = Math.max(maxId, rs.getLong("id"));
+                }
+            }
+        }
+        if (!ticks.isEmpty()) {
+            priceFeed.publish(ticks);
+        }
+        return maxId;
+    }
+
+    private static long readMaxId(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM prices")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
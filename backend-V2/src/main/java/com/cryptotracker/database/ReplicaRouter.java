@@ -0,0 +1,194 @@
+package com.cryptotracker.database;
+
+import com.cryptotracker.metrics.MetricsRegistry;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.*;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reparte las lecturas entre las réplicas de MySQL.
+ *
+ * Cada réplica tiene su propio pool. Un hilo revisa cada checkMillis que
+ * responda y cuánto retraso lleva (lagQuery, por defecto SHOW REPLICA STATUS);
+ * solo las que responden y van a lo más maxLagSeconds atrás reciben lecturas,
+ * por turnos. Si no se puede conectar a una se marca caída en ese momento y
+ * se prueba la siguiente, sin esperar a la próxima revisión; si solo tiene el
+ * pool ocupado se pasa a la siguiente sin tocar su estado. Cuando ninguna
+ * sirve getConnection() regresa null y DatabaseManager usa el primario.
+ *
+ * SHOW REPLICA STATUS necesita el permiso REPLICATION CLIENT; sin él la
+ * revisión falla y la réplica nunca recibe lecturas.
+ */
+class ReplicaRouter {
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRouter.class);
+
+    // Segundos que se le dan a la consulta de retraso antes de dar la réplica por caída
+    private static final int CHECK_TIMEOUT_SECONDS = 3;
+
+    static final class Replica {
+        final String name;
+        final HikariDataSource dataSource;
+        volatile boolean healthy = false;
+        // Segundos de retraso en la última revisión (-1 = desconocido)
+        volatile long lagSeconds = -1;
+        final LongAdder reads = new LongAdder();
+
+        Replica(String name, HikariDataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+
+    private final List<Replica> replicas;
+    private final long maxLagSeconds;
+    private final String lagQuery;
+    private final String lagColumn;
+    private final long checkMillis;
+
+    private final AtomicInteger next = new AtomicInteger();
+    private ScheduledExecutorService checkExecutor;
+
+    ReplicaRouter(List<Replica> replicas, long maxLagSeconds, String lagQuery, String lagColumn, long checkMillis) {
+        this.replicas = replicas;
+        this.maxLagSeconds = maxLagSeconds;
+        this.lagQuery = lagQuery;
+        this.lagColumn = lagColumn;
+        this.checkMillis = checkMillis;
+    }
+
+    void setMetricsRegistry(MetricsRegistry registry) {
+        for (Replica replica : replicas) {
+            String labels = MetricsRegistry.labels("replica", replica.name);
+            registry.gauge("cryptotracker_db_replica_healthy", "1 si la réplica recibe lecturas",
+                    labels, () -> usable(replica) ? 1 : 0);
+            registry.gauge("cryptotracker_db_replica_lag_seconds",
+                    "Retraso de la réplica en la última revisión (-1 = desconocido)",
+                    labels, () -> replica.lagSeconds);
+            registry.counter("cryptotracker_db_reads_total", "Lecturas por destino",
+                    MetricsRegistry.labels("target", replica.name), replica.reads::sum);
+        }
+    }
+
+    void start() {
+        // Primera revisión antes de recibir peticiones: hasta entonces todas cuentan como caídas
+        check();
+
+        checkExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-replica-check");
+            t.setDaemon(true);
+            return t;
+        });
+        checkExecutor.scheduleWithFixedDelay(this::check, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Conexión de una réplica que sirve, o null si ninguna. */
+    Connection getConnection() {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (!usable(replica)) {
+                continue;
+            }
+            try {
+                Connection conn = replica.dataSource.getConnection();
+                replica.reads.increment();
+                return conn;
+            } catch (SQLException e) {
+                if (!DatabaseManager.isPoolBusy(e)) {
+                    markDown(replica, e.getMessage());
+                }
+            }
+        }
+        return null;
+    }
+
+
+    int getReplicaCount() {
+        return replicas.size();
+    }
+
+    int getHealthyCount() {
+        int healthy = 0;
+        for (Replica replica : replicas) {
+            if (usable(replica)) {
+                healthy++;
+            }
+        }
+        return healthy;
+    }
+
+    void close() {
+        if (checkExecutor != null) {
+            checkExecutor.shutdownNow();
+        }
+        for (Replica replica : replicas) {
+            replica.dataSource.close();
+        }
+    }
+
+    private boolean usable(Replica replica) {
+        return replica.healthy && replica.lagSeconds >= 0 && replica.lagSeconds <= maxLagSeconds;
+    }
+
+    private void check() {
+        for (Replica replica : replicas) {
+            try (Connection conn = replica.dataSource.getConnection()) {
+                long lag = readLag(conn);
+                boolean wasUsable = usable(replica);
+                replica.lagSeconds = lag;
+                replica.healthy = true;
+
+                if (!wasUsable && usable(replica)) {
+                    log.info("Réplica {} recibe lecturas (retraso {} s)", replica.name, lag);
+                } else if (wasUsable && !usable(replica)) {
+                    log.warn("Réplica {} sin lecturas: retraso {} s (máximo {} s)",
+                             replica.name, lag < 0 ? "desconocido" : lag, maxLagSeconds);
+                }
+            } catch (SQLException e) {
+                markDown(replica, e.getMessage());
+            } catch (RuntimeException e) {
+                // Que una réplica rara no detenga las revisiones programadas
+                log.error("Error revisando la réplica {}: {}", replica.name, e.getMessage(), e);
+                markDown(replica, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Retraso en segundos según lagQuery, o -1 si la réplica no está
+     * replicando (sin filas o columna nula). Sin lagQuery se toma como 0, para
+     * bases que no reportan replicación (p. ej. dos bases embebidas en pruebas).
+     */
+    private long readLag(Connection conn) throws SQLException {
+        if (lagQuery.isBlank()) {
+            return conn.isValid(CHECK_TIMEOUT_SECONDS) ? 0 : -1;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.setQueryTimeout(CHECK_TIMEOUT_SECONDS);
+            try (ResultSet rs = stmt.executeQuery(lagQuery)) {
+                if (!rs.next()) {
+                    return -1;
+                }
+                long lag = rs.getLong(lagColumn);
+                return rs.wasNull() ? -1 : lag;
+            }
+        }
+    }
+
+    private void markDown(Replica replica, String reason) {
+        if (replica.healthy) {
+            log.warn("Réplica {} caída, lecturas a las demás o al primario: {}", replica.name, reason);
+        }
+        replica.healthy = false;
+        replica.lagSeconds = -1;
+    }
+}
@@ -0,0 +1,54 @@
+package com.cryptotracker.database;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Niveles de agregados de prices, del más fino al más grueso. Cada uno vive
+ * en su propia tabla con una fila por cripto y bucket (alineado desde el
+ * epoch, como CandleAggregator) y tiene su propia retención.
+ */
+public enum RollupTier {
+    MINUTE("1m", 60_000L, "prices_1m", 24 * 7),
+    FIVE_MINUTES("5m", 5 * 60_000L, "prices_5m", 24 * 30),
+    HOUR("1h", 3600_000L, "prices_1h", 24 * 365);
+
+    private final String label;
+    private final long bucketMillis;
+    private final String table;
+    private final int defaultRetentionHours;
+
+    RollupTier(String label, long bucketMillis, String table, int defaultRetentionHours) {
+        this.label = label;
+        this.bucketMillis = bucketMillis;
+        this.table = table;
+        this.defaultRetentionHours = defaultRetentionHours;
+    }
+
+    public String label() {
+        return label;
+    }
+
+    public long bucketMillis() {
+        return bucketMillis;
+    }
+
+    public String table() {
+        return table;
+    }
+
+    public long bucketStart(long time) {
+        return Math.floorDiv(time, bucketMillis) * bucketMillis;
+    }
+
+    /** Retención de cada nivel: rollup.&lt;label&gt;.retention.hours (p. ej. rollup.5m.retention.hours). */
+    public static Map<RollupTier, Integer> retentionHours(Properties config) {
+        Map<RollupTier, Integer> retention = new EnumMap<>(RollupTier.class);
+        for (RollupTier tier : values()) {
+            retention.put(tier, Integer.parseInt(config.getProperty(
+                    "rollup." + tier.label + ".retention.hours", String.valueOf(tier.defaultRetentionHours))));
+        }
+        return retention;
+    }
+}
@@ -0,0 +1,127 @@
+package com.cryptotracker.database;
+
+import com.cryptotracker.scraper.PriceTick;
+
+import java.sql.*;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Suma un lote de ticks a las tablas de agregados de cada RollupTier.
+ *
+ * El lote se agrupa primero en memoria (una fila por cripto y bucket) y cada
+ * nivel se manda con un solo executeBatch de INSERT ... ON DUPLICATE KEY
+ * UPDATE, que con rewriteBatchedStatements es un INSERT de varias filas. El
+ * UPDATE combina con lo que ya había en el bucket: máximo, mínimo, suma y
+ * conteo se acumulan, y apertura y cierre se quedan con el tick más viejo y
+ * el más nuevo según su tiempo, no según el orden de llegada.
+ *
+ * No maneja la transacción: TickWriter lo llama con la misma conexión que
+ * inserta los ticks en prices, antes del commit.
+ */
+class RollupWriter {
+
+    // Acumulado de un bucket dentro del lote
+    private static final class Bucket {
+        final int cryptoId;
+        final long start;
+        double open, high, low, close, sum;
+        long openTime, closeTime;
+        int count;
+
+        // Arranca con el primer tick como apertura y cierre; add() lo suma al conteo
+        Bucket(int cryptoId, long start, PriceTick tick) {
+            this.cryptoId = cryptoId;
+            this.start = start;
+            this.open = tick.price();
+            this.openTime = tick.time();
+            this.high = tick.price();
+            this.low = tick.price();
+            this.close = tick.price();
+            this.closeTime = tick.time();
+        }
+
+        void add(PriceTick tick) {
+            double price = tick.price();
+            if (tick.time() < openTime) {
+                open = price;
+                openTime = tick.time();
+            }
+            if (tick.time() >= closeTime) {
+                close = price;
+                closeTime = tick.time();
+            }
+            high = Math.max(high, price);
+            low = Math.min(low, price);
+            sum += price;
+            count++;
+        }
+    }
+
+    private record BucketKey(int cryptoId, long start) {
+    }
+
+    // En el UPDATE cada asignación ve las anteriores: el precio va antes que su tiempo
+    private static final String UPSERT_SQL = """
+        INSERT INTO %s (crypto_id, bucket_time, open_price, high_price, low_price, close_price,
+                        price_sum, tick_count, open_time, close_time)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+        ON DUPLICATE KEY UPDATE
+            open_price = CASE WHEN VALUES(open_time) < open_time THEN VALUES(open_price) ELSE open_price END,
+            open_time = LEAST(open_time, VALUES(open_time)),
+            close_price = CASE WHEN VALUES(close_time) >= close_time THEN VALUES(close_price) ELSE close_price END,
+            close_time = GREATEST(close_time, VALUES(close_time)),
+            high_price = GREATEST(high_price, VALUES(high_price)),
+            low_price = LEAST(low_price, VALUES(low_price)),
+            price_sum = price_sum + VALUES(price_sum),
+            tick_count = tick_count + VALUES(tick_count)
+    """;
+
+    void write(Connection conn, List<PriceTick> ticks) throws SQLException {
+        for (RollupTier tier : RollupTier.values()) {
+            Map<BucketKey, Bucket> buckets = new LinkedHashMap<>();
+            for (PriceTick tick : ticks) {
+                long start = tier.bucketStart(tick.time());
+                Bucket bucket = buckets.computeIfAbsent(new BucketKey(tick.cryptoId(), start),
+                        key -> new Bucket(key.cryptoId(), key.start(), tick));
+                bucket.add(tick);
+            }
+
+            try (PreparedStatement stmt = conn.prepareStatement(UPSERT_SQL.formatted(tier.table()))) {
+                for (Bucket bucket : buckets.values()) {
+                    stmt.setInt(1, bucket.cryptoId);
+                    stmt.setTimestamp(2, new Timestamp(bucket.start));
+                    stmt.setDouble(3, bucket.open);
+                    stmt.setDouble(4, bucket.high);
+                    stmt.setDouble(5, bucket.low);
+                    stmt.setDouble(6, bucket.close);
+                    stmt.setDouble(7, bucket.sum);
+                    stmt.setInt(8, bucket.count);
+                    stmt.setTimestamp(9, new Timestamp(bucket.openTime));
+                    stmt.setTimestamp(10, new Timestamp(bucket.closeTime));
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+        }
+    }
+
+    /** true si existen las tablas de todos los niveles (database.sql las crea). */
+    static boolean tablesExist(Connection conn) throws SQLException {
+        String sql = """
+            SELECT COUNT(*)
+            FROM information_schema.TABLES
+            WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME IN (?, ?, ?)
+        """;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            RollupTier[] tiers = RollupTier.values();
+            for (int i = 0; i < tiers.length; i++) {
+                stmt.setString(i + 1, tiers[i].table());
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) == tiers.length;
+            }
+        }
+    }
+}
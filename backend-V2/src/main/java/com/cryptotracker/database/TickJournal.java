@@ -0,0 +1,283 @@
+package com.cryptotracker.database;
+
+import com.cryptotracker.metrics.Histogram;
+import com.cryptotracker.scraper.PriceTick;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Bitácora local de ticks en un archivo mapeado en memoria, usada como anillo.
+ *
+ * Formato: un encabezado con la generación, la capacidad en registros y
+ * cuántos registros ya están en la BD (ack), seguido de registros de tamaño fijo crypto_id, price_time, price
+ * y un CRC32C de los tres más la generación y el número del registro. ack y
+ * end cuentan registros desde que se creó el archivo y el registro n va en el
+ * lugar n % capacidad, así que lo confirmado se reutiliza aunque el escritor
+ * nunca alcance el final. Al abrir se recorre desde ack hasta el primer
+ * registro con CRC inválido, que es el final: una escritura a medias o un
+ * registro de la vuelta anterior (otro número) no pasan el CRC.
+ *
+ * La capacidad con que se escribió el archivo manda al abrirlo, porque el
+ * lugar de cada registro depende de ella. Si la configurada es otra, los
+ * ticks pendientes se releen con la capacidad vieja y se reescriben en una
+ * generación nueva con la configurada; los que no quepan se descartan con un
+ * aviso. Un archivo de la versión 1 del formato de anillo (VERSION 2, sin
+ * capacidad en el encabezado) toma la que da su tamaño.
+ *
+ * Agregar no espera al disco: un hilo fuerza las páginas sucias cada
+ * syncMillis, así que una caída del sistema pierde a lo más ese intervalo.
+ */
+public class TickJournal {
+    private static final Logger log = LoggerFactory.getLogger(TickJournal.class);
+
+    private static final int MAGIC = 0x43544A31; // "CTJ1"
+    private static final int VERSION = 3;
+    // Formato anterior: igual pero la capacidad sale del tamaño del archivo
+    private static final int VERSION_WITHOUT_CAPACITY = 2;
+
+    // Encabezado: magic, versión, generación, capacidad, ack
+    private static final int HEADER_SIZE = 64;
+    private static final int GENERATION_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 12;
+    private static final int ACK_OFFSET = 16;
+
+    // Registro: crypto_id (4), price_time (8), price (8), crc (4)
+    static final int RECORD_SIZE = 24;
+
+    private final Path path;
+    private final int configuredCapacity;
+    private final long syncMillis;
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private ScheduledExecutorService syncExecutor;
+    private final CRC32C crc = new CRC32C();
+
+    private int capacity;
+    private int generation;
+    private long ack;
+    private long end;
+    private boolean dirty = false;
+
+    // Duración de cada fsync (null hasta que se configure)
+    private Histogram syncTime;
+
+    public TickJournal(Path path, int capacity, long syncMillis) {
+        this.path = path;
+        this.configuredCapacity = capacity;
+        this.syncMillis = syncMillis;
+    }
+
+    void setSyncHistogram(Histogram syncTime) {
+        this.syncTime = syncTime;
+    }
+
+    public synchronized void open() throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long fileSize = channel.size();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(fileSize, HEADER_SIZE));
+
+        int magic = buffer.getInt(0);
+        int version = buffer.getInt(4);
+        if (magic == MAGIC && (version == VERSION || version == VERSION_WITHOUT_CAPACITY)) {
+            capacity = version == VERSION
+                    ? buffer.getInt(CAPACITY_OFFSET)
+                    : (int) ((fileSize - HEADER_SIZE) / RECORD_SIZE);
+            generation = buffer.getInt(GENERATION_OFFSET);
+            ack = buffer.getLong(ACK_OFFSET);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+
+            // El final es el primer registro que no pasa el CRC de esta generación
+            end = ack;
+            while (end - ack < maxRecords() && readRecord(end) != null) {
+                end++;
+            }
+
+            if (capacity != configuredCapacity) {
+                resize();
+            } else if (version != VERSION) {
+                buffer.putInt(CAPACITY_OFFSET, capacity);
+                buffer.putInt(4, VERSION);
+                buffer.force();
+            }
+        } else {
+            // Otra generación: lo que hubiera en el archivo ya no pasa el CRC
+            reset(magic == MAGIC ? buffer.getInt(GENERATION_OFFSET) + 1 : 1, configuredCapacity);
+        }
+
+        syncExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "tick-journal-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        syncExecutor.scheduleWithFixedDelay(this::sync, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+
+        log.info("Bitácora de ticks abierta en {} ({} ticks pendientes de guardar)", path, pending());
+    }
+
+    public synchronized void close() {
+        if (syncExecutor != null) {
+            syncExecutor.shutdownNow();
+        }
+        if (buffer != null) {
+            sync();
+            buffer = null;
+        }
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            log.error("Error cerrando la bitácora de ticks: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Agrega los ticks en orden mientras haya lugar.
+     *
+     * @return cuántos se agregaron; los demás no caben hasta que se confirmen
+     *         otros tantos
+     */
+    public synchronized int append(List<PriceTick> ticks) {
+        int appended = 0;
+        for (PriceTick tick : ticks) {
+            if (end - ack >= maxRecords()) {
+                break;
+            }
+            writeRecord(end, tick);
+            end++;
+            appended++;
+        }
+        if (appended > 0) {
+            dirty = true;
+        }
+        return appended;
+    }
+
+    /** Hasta max ticks que aún no están en la BD, empezando por el más viejo. */
+    public synchronized List<PriceTick> readPending(int max) {
+        int n = (int) Math.min(max, end - ack);
+        List<PriceTick> ticks = new ArrayList<>(n);
+        for (long i = ack; i < ack + n; i++) {
+            ticks.add(readRecord(i));
+        }
+        return ticks;
+    }
+
+    /** Marca como guardados en la BD los siguientes count ticks pendientes; su lugar queda libre. */
+    public synchronized void acknowledge(int count) {
+        ack = Math.min(end, ack + count);
+        buffer.putLong(ACK_OFFSET, ack);
+        dirty = true;
+    }
+
+    public synchronized long pending() {
+        return end - ack;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+
+    // Reescribe los pendientes con la capacidad configurada en una generación nueva
+    private void resize() throws IOException {
+        List<PriceTick> unsaved = readPending((int) Math.min(Integer.MAX_VALUE, end - ack));
+        int previous = capacity;
+        reset(generation + 1, configuredCapacity);
+        int kept = append(unsaved);
+        buffer.force();
+        dirty = false;
+        if (kept < unsaved.size()) {
+            log.warn("La bitácora de ticks pasó de {} a {} registros: se descartan {} ticks pendientes que no caben",
+                    previous, capacity, unsaved.size() - kept);
+        } else {
+            log.info("La bitácora de ticks pasó de {} a {} registros", previous, capacity);
+        }
+    }
+
+    private void reset(int newGeneration, int newCapacity) throws IOException {
+        capacity = newCapacity;
+        generation = newGeneration;
+        ack = 0;
+        end = 0;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(GENERATION_OFFSET, generation);
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.putLong(ACK_OFFSET, 0);
+        buffer.force();
+    }
+
+    private synchronized void sync() {
+        if (!dirty || buffer == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        buffer.force();
+        dirty = false;
+        if (syncTime != null) {
+            syncTime.observeSince(start);
+        }
+    }
+
+    private long maxRecords() {
+        return capacity;
+    }
+
+    private int position(long index) {
+        return (int) (HEADER_SIZE + (index % maxRecords()) * RECORD_SIZE);
+    }
+
+    private void writeRecord(long index, PriceTick tick) {
+        int pos = position(index);
+        buffer.putInt(pos, tick.cryptoId());
+        buffer.putLong(pos + 4, tick.time());
+        buffer.putDouble(pos + 12, tick.price());
+        buffer.putInt(pos + 20, checksum(pos, index));
+    }
+
+    private PriceTick readRecord(long index) {
+        int pos = position(index);
+        if (buffer.getInt(pos + 20) != checksum(pos, index)) {
+            return null;
+        }
+        return new PriceTick(buffer.getInt(pos), buffer.getDouble(pos + 12), buffer.getLong(pos + 4));
+    }
+
+    // CRC de los 20 bytes del registro, la generación y el número de registro
+    private int checksum(int pos, long index) {
+        crc.reset();
+        update(generation);
+        update(index);
+        crc.update(buffer.slice(pos, 20));
+        return (int) crc.getValue();
+    }
+
+    private void update(long value) {
+        for (int shift = 0; shift < 64; shift += 8) {
+            crc.update((int) (value >>> shift));
+        }
+    }
+}
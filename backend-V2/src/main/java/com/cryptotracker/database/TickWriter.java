@@ -0,0 +1,460 @@
+package com.cryptotracker.database;
+
+import com.cryptotracker.metrics.Histogram;
+import com.cryptotracker.metrics.MetricsRegistry;
+import com.cryptotracker.scraper.PriceFeed;
+import com.cryptotracker.scraper.PriceTick;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Escritura diferida de ticks a la tabla prices.
+ *
+ * El scraper solo encola los ticks y sigue con el siguiente fetch; un hilo
+ * propio los junta y los guarda cuando hay tick.writer.batch.size pendientes
+ * o cuando el más viejo lleva tick.writer.flush.ms esperando. Cada lote es un
+ * executeBatch que el driver reescribe como un INSERT de varias filas
+ * (rewriteBatchedStatements) en una sola transacción.
+ *
+ * Los ticks se publican en el PriceFeed después del commit, igual que antes:
+ * lo que ven los listeners del líder ya está en la BD que leen los seguidores.
+ *
+ * Con la bitácora activa (journal.enabled) cada tick también se agrega a un
+ * TickJournal antes de encolarlo, en el mismo orden. Si la BD no responde o la
+ * cola se llena, el escritor deja la cola y guarda desde la bitácora todo lo
+ * pendiente, reintentando sin descartar nada, hasta alcanzar el final; ahí
+ * vuelve a la cola. Así el scraping no depende de que la BD esté arriba.
+ *
+ * Con rollup.enabled cada lote también actualiza las tablas de agregados de
+ * RollupTier en la misma transacción, así un tick está en prices y en sus
+ * agregados o en ninguno. Si las tablas no existen se avisa y se sigue sin
+ * ellas.
+ *
+ * El ack de la bitácora llega al disco hasta el siguiente fsync, así que un
+ * lote ya confirmado en la BD puede volver a mandarse desde ella. Por eso un
+ * lote de la bitácora primero descarta los ticks que ya están en prices y solo
+ * inserta y suma a los agregados los que faltan; la llave única
+ * (crypto_id, price_time) y el ON DUPLICATE KEY evitan la fila repetida aunque
+ * algo se escape.
+ */
+public class TickWriter {
+    private static final Logger log = LoggerFactory.getLogger(TickWriter.class);
+
+    // Intentos de un lote antes de descartarlo
+    private static final int MAX_ATTEMPTS = 3;
+
+    // Espera máxima entre reintentos al guardar desde la bitácora
+    private static final long MAX_RETRY_MILLIS = 30000;
+
+    private final DatabaseManager dbManager;
+    private final PriceFeed priceFeed;
+    private final BlockingQueue<PriceTick> queue;
+    private final int batchSize;
+    private final long flushMillis;
+
+    // null si la bitácora está apagada o no se pudo abrir
+    private TickJournal journal;
+    // true mientras el escritor guarda desde la bitácora en lugar de la cola
+    private volatile boolean replaying = false;
+    // Ordena bitácora y cola en enqueue() contra los cambios de modo del escritor
+    private final Object enqueueLock = new Object();
+
+    // null si los agregados están apagados o sus tablas no existen
+    private RollupWriter rollups;
+    private boolean rollupTablesChecked = false;
+
+    private volatile boolean running = false;
+    private Thread writerThread;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    // Duración de cada lote (null hasta que se configure el registro)
+    private Histogram flushTime;
+
+    public TickWriter(DatabaseManager dbManager, PriceFeed priceFeed, Properties config) {
+        this.dbManager = dbManager;
+        this.priceFeed = priceFeed;
+        this.queue = new ArrayBlockingQueue<>(
+            Integer.parseInt(config.getProperty("tick.writer.queue.capacity", "10000")));
+        this.batchSize = Integer.parseInt(config.getProperty("tick.writer.batch.size", "500"));
+        this.flushMillis = Long.parseLong(config.getProperty("tick.writer.flush.ms", "1000"));
+
+        if (Boolean.parseBoolean(config.getProperty("journal.enabled", "true"))) {
+            this.journal = new TickJournal(
+                Path.of(config.getProperty("journal.path", "data/ticks.journal")),
+                Integer.parseInt(config.getProperty("journal.max.records", "1000000")),
+                Long.parseLong(config.getProperty("journal.sync.ms", "1000")));
+        }
+        if (Boolean.parseBoolean(config.getProperty("rollup.enabled", "true"))) {
+            this.rollups = new RollupWriter();
+        }
+    }
+
+    public void setMetricsRegistry(MetricsRegistry registry) {
+        this.flushTime = registry.histogram("cryptotracker_tick_writer_flush_seconds",
+                "Duración de cada lote de INSERT (incluye el commit)", "");
+        registry.gauge("cryptotracker_tick_writer_queue_depth", "Ticks esperando a guardarse en la BD",
+                "", queue::size);
+        registry.counter("cryptotracker_tick_writer_rows_total", "Ticks guardados o descartados por el escritor",
+                MetricsRegistry.labels("result", "written"), written::sum);
+        registry.counter("cryptotracker_tick_writer_rows_total", "Ticks guardados o descartados por el escritor",
+                MetricsRegistry.labels("result", "dropped"), dropped::sum);
+
+        if (journal != null) {
+            journal.setSyncHistogram(registry.histogram("cryptotracker_tick_journal_sync_seconds",
+                    "Duración de cada fsync de la bitácora de ticks", ""));
+            registry.gauge("cryptotracker_tick_journal_pending", "Ticks de la bitácora que aún no están en la BD",
+                    "", () -> journal != null ? journal.pending() : 0);
+            registry.gauge("cryptotracker_tick_journal_replaying", "1 mientras se guarda desde la bitácora",
+                    "", () -> replaying ? 1 : 0);
+        }
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+
+        if (journal != null) {
+            try {
+                journal.open();
+                // Lo que quedó de una ejecución anterior se guarda primero; si
+                // algo sigue en la cola, también está en la bitácora
+                queue.clear();
+                replaying = journal.pending() > 0;
+            } catch (IOException e) {
+                log.error("No se pudo abrir la bitácora {}; se sigue sin ella: {}",
+                          journal.getPath(), e.getMessage(), e);
+                journal = null;
+            }
+        }
+
+        writerThread = new Thread(this::writeLoop, "tick-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        log.info("Escritor de ticks iniciado (lote {}, cada {} ms, cola {})",
+                 batchSize, flushMillis, queue.remainingCapacity() + queue.size());
+    }
+
+    /** Detiene el escritor después de guardar lo que quedó en la cola. */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+
+        try {
+            writerThread.join(flushMillis + 15000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            log.warn("El escritor de ticks no terminó a tiempo; {} ticks pendientes", queue.size());
+            writerThread.interrupt();
+            try {
+                writerThread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (journal != null) {
+            // Lo que no se guardó sigue en la bitácora para el próximo start()
+            journal.close();
+        }
+        log.info("Escritor de ticks detenido");
+    }
+
+    /**
+     * Encola ticks sin bloquear. Si la cola está llena los que no caben se
+     * descartan; con bitácora solo se descartan si tampoco caben en ella.
+     *
+     * @return cuántos ticks se aceptaron
+     */
+    public int enqueue(List<PriceTick> ticks) {
+        if (journal != null) {
+            int accepted;
+            synchronized (enqueueLock) {
+                accepted = journal.append(ticks);
+                // La cola repite la bitácora en el mismo orden; si algo no cabe, el
+                // escritor sigue desde la bitácora
+                for (int i = 0; i < accepted && !replaying; i++) {
+                    if (!queue.offer(ticks.get(i))) {
+                        switchToJournal();
+                    }
+                }
+            }
+            if (accepted < ticks.size()) {
+                dropped.add(ticks.size() - accepted);
+                log.warn("Bitácora llena: {} ticks descartados", ticks.size() - accepted);
+            }
+            return accepted;
+        }
+
+        int accepted = 0;
+        for (PriceTick tick : ticks) {
+            if (!queue.offer(tick)) {
+                break;
+            }
+            accepted++;
+        }
+
+        if (accepted < ticks.size()) {
+            dropped.add(ticks.size() - accepted);
+            log.warn("Cola de escritura llena: {} ticks descartados", ticks.size() - accepted);
+        }
+        return accepted;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /** true si los ticks aceptados sobreviven a una caída de la BD (bitácora abierta). */
+    public boolean isDurable() {
+        return journal != null;
+    }
+
+    private void writeLoop() {
+        List<PriceTick> batch = new ArrayList<>(batchSize);
+        long batchStart = 0;
+        int attempts = 0;
+
+        while (running || !queue.isEmpty() || !batch.isEmpty() || replaying) {
+            try {
+                if (replaying) {
+                    // Lo que estaba en el lote también está en la bitácora
+                    batch.clear();
+                    attempts = 0;
+                    if (!replayJournal()) {
+                        return;
+                    }
+                    continue;
+                }
+
+                if (batch.isEmpty()) {
+                    PriceTick first = queue.poll(flushMillis, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    batchStart = System.nanoTime();
+                }
+
+                queue.drainTo(batch, batchSize - batch.size());
+
+                // Esperar más ticks mientras el lote no esté lleno ni venza el plazo
+                long remaining = flushMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - batchStart);
+                if (running && batch.size() < batchSize && remaining > 0) {
+                    PriceTick next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                        continue;
+                    }
+                }
+
+                if (flush(batch, false)) {
+                    if (journal != null) {
+                        journal.acknowledge(batch.size());
+                    }
+                    batch.clear();
+                    attempts = 0;
+                } else if (journal != null) {
+                    log.warn("La BD no responde; {} ticks se guardarán desde la bitácora", journal.pending());
+                    synchronized (enqueueLock) {
+                        switchToJournal();
+                    }
+                } else if (++attempts >= MAX_ATTEMPTS) {
+                    log.error("Se descartan {} ticks después de {} intentos", batch.size(), attempts);
+                    dropped.add(batch.size());
+                    batch.clear();
+                    attempts = 0;
+                } else {
+                    // El lote se queda al frente y se reintenta; la cola sigue aceptando ticks
+                    Thread.sleep(flushMillis);
+                }
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Escritor de ticks interrumpido; {} ticks sin guardar", batch.size() + queue.size());
+                return;
+            }
+        }
+    }
+
+    // Con enqueueLock tomado: lo que está en la cola también está en la bitácora
+    private void switchToJournal() {
+        replaying = true;
+        queue.clear();
+    }
+
+    /**
+     * Guarda la bitácora pendiente por lotes hasta alcanzar su final y regresa
+     * a la cola. Un lote que falla se reintenta; al detener el escritor lo que
+     * falte queda en la bitácora para el siguiente start().
+     *
+     * @return false si se detuvo el escritor antes de terminar
+     */
+    private boolean replayJournal() throws InterruptedException {
+        log.info("Guardando {} ticks pendientes de la bitácora", journal.pending());
+        long saved = 0;
+        long retryMillis = flushMillis;
+
+        while (running) {
+            synchronized (enqueueLock) {
+                // Nada entra a la bitácora entre ver que se alcanzó el final y
+                // volver a la cola
+                if (journal.pending() == 0) {
+                    replaying = false;
+                    log.info("Bitácora al día: {} ticks guardados", saved);
+                    return true;
+                }
+            }
+
+            List<PriceTick> batch = journal.readPending(batchSize);
+            if (flush(batch, true)) {
+                journal.acknowledge(batch.size());
+                saved += batch.size();
+                retryMillis = flushMillis;
+            } else if (running) {
+                // Mientras la BD siga caída los intentos se espacian
+                Thread.sleep(retryMillis);
+                retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+            }
+        }
+
+        log.info("Escritor detenido con {} ticks en la bitácora", journal.pending());
+        return false;
+    }
+
+    /**
+     * Guarda el lote en una transacción.
+     *
+     * @param fromJournal true si el lote sale de la bitácora y pudo haberse
+     *                    guardado ya: solo se insertan los ticks que falten
+     */
+    private boolean flush(List<PriceTick> batch, boolean fromJournal) {
+        String sql = """
+            INSERT INTO prices (crypto_id, price, price_time) VALUES (?, ?, ?)
+            ON DUPLICATE KEY UPDATE price = price
+        """;
+        long start = System.nanoTime();
+
+        try (Connection conn = dbManager.getConnection()) {
+            checkRollupTables(conn);
+            conn.setAutoCommit(false); // Un lote, una transacción
+
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                List<PriceTick> missing = fromJournal ? withoutStored(conn, batch) : batch;
+                for (PriceTick tick : missing) {
+                    stmt.setInt(1, tick.cryptoId());
+                    stmt.setDouble(2, tick.price());
+                    stmt.setTimestamp(3, new Timestamp(tick.time()));
+                    stmt.addBatch();
+                }
+                if (!missing.isEmpty()) {
+                    stmt.executeBatch();
+                }
+                if (rollups != null && !missing.isEmpty()) {
+                    rollups.write(conn, missing);
+                }
+                conn.commit();
+
+                if (missing.size() < batch.size()) {
+                    log.info("{} de {} ticks de la bitácora ya estaban en la BD", batch.size() - missing.size(), batch.size());
+                }
+
+            } catch (SQLException e) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    log.error("Error al revertir transacción: {}", ex.getMessage());
+                }
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+
+        } catch (SQLException e) {
+            log.error("Error guardando {} ticks: {}", batch.size(), e.getMessage(), e);
+            return false;
+        }
+
+        if (flushTime != null) {
+            flushTime.observeSince(start);
+        }
+        written.add(batch.size());
+        log.debug("Lote de {} ticks guardado", batch.size());
+
+        // Publicar solo lo que ya quedó confirmado en la BD
+        priceFeed.publish(new ArrayList<>(batch));
+        return true;
+    }
+
+    // Los ticks del lote que aún no están en prices, buscados por el rango de tiempo del lote
+    private static List<PriceTick> withoutStored(Connection conn, List<PriceTick> batch) throws SQLException {
+        if (batch.isEmpty()) {
+            return batch;
+        }
+        long from = Long.MAX_VALUE;
+        long to = Long.MIN_VALUE;
+        for (PriceTick tick : batch) {
+            from = Math.min(from, tick.time());
+            to = Math.max(to, tick.time());
+        }
+
+        String sql = """
+            SELECT crypto_id, price_time
+            FROM prices
+            WHERE price_time BETWEEN ? AND ?
+        """;
+        Set<String> stored = new HashSet<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setTimestamp(1, new Timestamp(from));
+            stmt.setTimestamp(2, new Timestamp(to));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    stored.add(rs.getInt("crypto_id") + ":" + rs.getTimestamp("price_time").getTime());
+                }
+            }
+        }
+        if (stored.isEmpty()) {
+            return batch;
+        }
+
+        List<PriceTick> missing = new ArrayList<>(batch.size());
+        for (PriceTick tick : batch) {
+            if (!stored.contains(tick.cryptoId() + ":" + tick.time())) {
+                missing.add(tick);
+            }
+        }
+        return missing;
+    }
+
+    // Una sola vez, con la primera conexión que se logra: sin las tablas cada lote fallaría
+    private void checkRollupTables(Connection conn) throws SQLException {
+        if (rollups == null || rollupTablesChecked) {
+            return;
+        }
+        if (!RollupWriter.tablesExist(conn)) {
+            log.warn("No existen las tablas de agregados (prices_1m, prices_5m, prices_1h); se guardan solo ticks");
+            rollups = null;
+        }
+        rollupTablesChecked = true;
+    }
+}
@@ -0,0 +1,69 @@
+package com.cryptotracker.metrics;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de duraciones con buckets fijos.
+ *
+ * Cada bucket es un LongAdder, así que registrar una muestra no toma locks y
+ * los hilos que registran al mismo tiempo no pelean por la misma línea de
+ * cache. Los conteos se guardan por bucket y se acumulan al exportar.
+ */
+public class Histogram {
+
+    // Límites superiores en segundos, de 0.5 ms a 10 s
+    static final double[] BOUNDS_SECONDS = {
+        0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+    private static final long[] BOUNDS_NANOS = new long[BOUNDS_SECONDS.length];
+    // Valor de la etiqueta le sin notación científica ("0.0005", "1", "+Inf")
+    private static final String[] BOUNDS_LABELS = new String[BOUNDS_SECONDS.length + 1];
+
+    static {
+        for (int i = 0; i < BOUNDS_SECONDS.length; i++) {
+            BOUNDS_NANOS[i] = (long) (BOUNDS_SECONDS[i] * 1_000_000_000L);
+            BOUNDS_LABELS[i] = BigDecimal.valueOf(BOUNDS_SECONDS[i]).stripTrailingZeros().toPlainString();
+        }
+        BOUNDS_LABELS[BOUNDS_SECONDS.length] = "+Inf";
+    }
+
+    // Un bucket extra para +Inf
+    private final LongAdder[] buckets = new LongAdder[BOUNDS_NANOS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    Histogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void observeNanos(long nanos) {
+        int i = 0;
+        while (i < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[i]) {
+            i++;
+        }
+        buckets[i].increment();
+        sumNanos.add(nanos);
+    }
+
+    /** Registra el tiempo transcurrido desde {@code startNanos} (System.nanoTime()). */
+    public void observeSince(long startNanos) {
+        observeNanos(System.nanoTime() - startNanos);
+    }
+
+    void writeTo(StringBuilder out, String name, String labels) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            cumulative += buckets[i].sum();
+            out.append(name).append("_bucket{").append(prefix).append("le=\"").append(BOUNDS_LABELS[i]).append("\"} ")
+               .append(cumulative).append('\n');
+        }
+        String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(suffix).append(' ')
+           .append(sumNanos.sum() / 1e9).append('\n');
+        out.append(name).append("_count").append(suffix).append(' ')
+           .append(cumulative).append('\n');
+    }
+}
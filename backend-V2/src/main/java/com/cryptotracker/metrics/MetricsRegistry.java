@@ -0,0 +1,118 @@
+package com.cryptotracker.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Registro de métricas que se exporta en formato de texto de Prometheus.
+ *
+ * Contadores (LongAdder), histogramas de duración y gauges que se leen al
+ * exportar. Cada métrica se identifica por nombre más etiquetas ya
+ * formateadas (ver {@link #labels(String...)}); quien registra en el camino
+ * caliente debe guardar la referencia que regresan counter/histogram en
+ * lugar de buscarla en cada petición.
+ */
+public class MetricsRegistry {
+
+    private enum Type { COUNTER, GAUGE, HISTOGRAM }
+
+    private static final class Family {
+        final Type type;
+        final String help;
+        final Map<String, Object> series = new ConcurrentSkipListMap<>();
+
+        Family(Type type, String help) {
+            this.type = type;
+            this.help = help;
+        }
+    }
+
+    private final Map<String, Family> families = new ConcurrentHashMap<>();
+
+    public LongAdder counter(String name, String help, String labels) {
+        return (LongAdder) family(name, Type.COUNTER, help).series
+                .computeIfAbsent(labels, l -> new LongAdder());
+    }
+
+    /** Contador que ya lleva otro componente y solo se lee al exportar. */
+    public void counter(String name, String help, String labels, DoubleSupplier value) {
+        family(name, Type.COUNTER, help).series.put(labels, value);
+    }
+
+    public Histogram histogram(String name, String help, String labels) {
+        return (Histogram) family(name, Type.HISTOGRAM, help).series
+                .computeIfAbsent(labels, l -> new Histogram());
+    }
+
+    /** Gauge que se calcula al exportar; registrar de nuevo reemplaza al anterior. */
+    public void gauge(String name, String help, String labels, DoubleSupplier value) {
+        family(name, Type.GAUGE, help).series.put(labels, value);
+    }
+
+    private Family family(String name, Type type, String help) {
+        Family family = families.computeIfAbsent(name, n -> new Family(type, help));
+        if (family.type != type) {
+            throw new IllegalArgumentException("La métrica " + name + " ya está registrada como " + family.type);
+        }
+        return family;
+    }
+
+    /**
+     * Formatea pares nombre/valor como etiquetas de Prometheus:
+     * labels("context", "/prices/current") -> context="/prices/current"
+     */
+    public static String labels(String... pairs) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i + 1 < pairs.length; i += 2) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(pairs[i]).append("=\"")
+              .append(pairs[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+              .append('"');
+        }
+        return sb.toString();
+    }
+
+    /** Texto para /metrics (text/plain; version=0.0.4). */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(8192);
+        Map<String, Family> ordered = new TreeMap<>(families);
+        for (Map.Entry<String, Family> entry : ordered.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ')
+               .append(family.type.name().toLowerCase()).append('\n');
+
+            for (Map.Entry<String, Object> series : family.series.entrySet()) {
+                String labels = series.getKey();
+                Object metric = series.getValue();
+                if (metric instanceof Histogram histogram) {
+                    histogram.writeTo(out, name, labels);
+                    continue;
+                }
+
+                double value = metric instanceof LongAdder adder
+                        ? adder.sum()
+                        : ((DoubleSupplier) metric).getAsDouble();
+                out.append(name);
+                if (!labels.isEmpty()) {
+                    out.append('{').append(labels).append('}');
+                }
+                out.append(' ');
+                if (value == Math.rint(value) && !Double.isInfinite(value)) {
+                    out.append((long) value);
+                } else {
+                    out.append(value);
+                }
+                out.append('\n');
+            }
+        }
+        return out.toString();
+    }
+}
@@ -1,6 +1,9 @@
 package com.cryptotracker.scraper;
 
 import com.cryptotracker.database.DatabaseManager;
+import com.cryptotracker.database.TickWriter;
+import com.cryptotracker.metrics.Histogram;
+import com.cryptotracker.metrics.MetricsRegistry;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.http.client.config.RequestConfig;
@@ -9,13 +12,16 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.sql.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 
 public class CoinGeckoScraper {
+    private static final Logger log = LoggerFactory.getLogger(CoinGeckoScraper.class);
+    
     
     private static final String COINGECKO_API_URL = "https://api.coingecko.com/api/v3/simple/price";
     
@@ -38,14 +44,21 @@ public class CoinGeckoScraper {
     }};
     
     private final DatabaseManager dbManager;
+    private final TickWriter tickWriter;
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm:ss");
     
     // Cliente HTTP reutilizable con timeouts
     private final CloseableHttpClient httpClient;
     
-    public CoinGeckoScraper(DatabaseManager dbManager) {
+    // Duración de cada fase del scraping (null hasta que se configure el registro)
+    private Histogram fetchTime;
+    private Histogram parseTime;
+    private Histogram persistTime;
+    
+    public CoinGeckoScraper(DatabaseManager dbManager, TickWriter tickWriter) {
         this.dbManager = dbManager;
+        this.tickWriter = tickWriter;
         
         // Configurar cliente HTTP con timeouts
         RequestConfig config = RequestConfig.custom()
@@ -59,9 +72,17 @@ public class CoinGeckoScraper {
             .build();
     }
     
+    public void setMetricsRegistry(MetricsRegistry registry) {
+        String name = "cryptotracker_scraper_phase_seconds";
+        String help = "Duración de las fases del scraping de CoinGecko";
+        this.fetchTime = registry.histogram(name, help, MetricsRegistry.labels("phase", "fetch"));
+        this.parseTime = registry.histogram(name, help, MetricsRegistry.labels("phase", "parse"));
+        this.persistTime = registry.histogram(name, help, MetricsRegistry.labels("phase", "persist"));
+    }
+    
     public void fetchAndSavePrices() throws Exception {
         String horaActual = LocalDateTime.now().format(formatter);
-        System.out.println("\n[" + horaActual + "] INICIANDO SCRAPING");
+        log.info("[{}] INICIANDO SCRAPING", horaActual);
         
         Map<String, Double> precios = null;
         int intentos = 0;
@@ -73,7 +94,7 @@ public class CoinGeckoScraper {
             try {
                 precios = obtenerPreciosCoinGecko();
             } catch (Exception e) {
-                System.err.println("[" + horaActual + "] Intento " + intentos + " falló: " + e.getMessage());
+                log.warn("[{}] Intento {} falló: {}", horaActual, intentos, e.getMessage());
                 if (intentos < maxIntentos) {
                     Thread.sleep(2000); // Esperar 2 segundos antes de reintentar
                 } else {
@@ -83,13 +104,18 @@ public class CoinGeckoScraper {
         }
         
         if (precios != null && !precios.isEmpty()) {
-            int guardados = guardarPreciosEnBD(precios);
-            System.out.println("[" + horaActual + "] Scraping completado: " + guardados + " precios actualizados");
+            // persist mide solo la entrega al escritor; el INSERT va en su propio hilo
+            long persistStart = System.nanoTime();
+            int encolados = encolarPrecios(precios);
+            if (persistTime != null) {
+                persistTime.observeSince(persistStart);
+            }
+            log.info("[{}] Scraping completado: {} precios encolados", horaActual, encolados);
         } else {
             throw new Exception("No se pudieron obtener precios después de " + maxIntentos + " intentos");
         }
         
-        System.out.println("[" + horaActual + "] FIN SCRAPING\n");
+        log.debug("[{}] FIN SCRAPING", horaActual);
     }
     
     private Map<String, Double> obtenerPreciosCoinGecko() throws Exception {
@@ -99,20 +125,26 @@ public class CoinGeckoScraper {
         String ids = String.join(",", COINGECKO_MAP.keySet());
         String url = COINGECKO_API_URL + "?ids=" + ids + "&vs_currencies=usd";
         
-        System.out.println("Consultando API CoinGecko...");
+        log.debug("Consultando API CoinGecko...");
         
         HttpGet request = new HttpGet(url);
         request.setHeader("Accept", "application/json");
         
+        long fetchStart = System.nanoTime();
         try (CloseableHttpResponse response = httpClient.execute(request)) {
             int statusCode = response.getStatusLine().getStatusCode();
-            System.out.println("Response status: " + statusCode);
+            log.debug("Response status: {}", statusCode);
             
             if (statusCode == 200) {
                 String jsonResponse = EntityUtils.toString(response.getEntity());
+                if (fetchTime != null) {
+                    fetchTime.observeSince(fetchStart);
+                }
+                
+                long parseStart = System.nanoTime();
                 JsonNode root = objectMapper.readTree(jsonResponse);
                 
-                System.out.println("\nPrecios obtenidos:");
+                log.debug("Precios obtenidos:");
                 
                 // Procesar cada cripto
                 for (Map.Entry<String, String> entry : COINGECKO_MAP.entrySet()) {
@@ -123,11 +155,14 @@ public class CoinGeckoScraper {
                     if (cryptoNode != null && cryptoNode.has("usd")) {
                         double price = cryptoNode.get("usd").asDouble();
                         precios.put(symbol, price);
-                        System.out.println("  " + symbol + ": $" + String.format("%.2f", price));
+                        log.debug("{}: ${}", symbol, price);
                     } else {
-                        System.out.println("  " + symbol + ": No disponible");
+                        log.debug("{}: No disponible", symbol);
                     }
                 }
+                if (parseTime != null) {
+                    parseTime.observeSince(parseStart);
+                }
             } else if (statusCode == 429) {
                 throw new Exception("Rate limit alcanzado. Esperando antes de reintentar...");
             } else {
@@ -135,70 +170,40 @@ public class CoinGeckoScraper {
             }
         }
         
-        System.out.println("Total precios obtenidos: " + precios.size());
+        log.debug("Total precios obtenidos: {}", precios.size());
         return precios;
     }
     
-    private int guardarPreciosEnBD(Map<String, Double> precios) throws SQLException {
-        String sql = "INSERT INTO prices (crypto_id, price, price_time) VALUES (?, ?, ?)";
+    private int encolarPrecios(Map<String, Double> precios) throws Exception {
+        long now = System.currentTimeMillis();
+        List<PriceTick> ticks = new ArrayList<>();
         
-        Connection conn = null;
-        PreparedStatement stmt = null;
+        Map<String, Integer> cryptoIds = dbManager.getCryptoIds();
         
-        try {
-            conn = dbManager.getConnection();
-            conn.setAutoCommit(false); // Usar transacción
-            
-            stmt = conn.prepareStatement(sql);
-            
-            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
-            int count = 0;
-            
-            Map<String, Integer> cryptoIds = dbManager.getCryptoIds();
-            
-            System.out.println("\nGuardando en base de datos:");
-            
-            for (Map.Entry<String, Double> entry : precios.entrySet()) {
-                String symbol = entry.getKey();
-                Double price = entry.getValue();
-                
-                Integer cryptoId = cryptoIds.get(symbol);
-                if (cryptoId != null) {
-                    stmt.setInt(1, cryptoId);
-                    stmt.setDouble(2, price);
-                    stmt.setTimestamp(3, now);
-                    stmt.addBatch();
-                    count++;
-                    System.out.println("  " + symbol + " (ID: " + cryptoId + ") - Precio: $" + price);
-                } else {
-                    System.out.println("  " + symbol + " - ID no encontrado en BD");
-                }
-            }
-            
-            if (count > 0) {
-                stmt.executeBatch();
-                conn.commit(); // Confirmar transacción
-                System.out.println("Transacción completada exitosamente");
-            }
-            
-            return count;
+        log.debug("Encolando para la base de datos:");
+        
+        for (Map.Entry<String, Double> entry : precios.entrySet()) {
+            String symbol = entry.getKey();
+            Double price = entry.getValue();
             
-        } catch (SQLException e) {
-            if (conn != null) {
-                try {
-                    conn.rollback(); // Revertir en caso de error
-                    System.err.println("Transacción revertida debido a error");
-                } catch (SQLException ex) {
-                    System.err.println("Error al revertir transacción: " + ex.getMessage());
-                }
-            }
-            throw e;
-        } finally {
-            if (stmt != null) stmt.close();
-            if (conn != null) {
-                conn.setAutoCommit(true);
-                conn.close();
+            Integer cryptoId = cryptoIds.get(symbol);
+            if (cryptoId != null) {
+                ticks.add(new PriceTick(cryptoId, price, now));
+                log.debug("{} (ID: {}) - Precio: ${}", symbol, cryptoId, price);
+            } else {
+                log.warn("{} - ID no encontrado en BD", symbol);
             }
         }
+        
+        if (ticks.isEmpty()) {
+            return 0;
+        }
+        
+        // El escritor los guarda en lote y los publica en el PriceFeed tras el commit
+        int encolados = tickWriter.enqueue(ticks);
+        if (encolados == 0) {
+            throw new Exception("Cola de escritura llena (" + tickWriter.getQueueDepth() + " ticks pendientes)");
+        }
+        return encolados;
     }
 }
\ No newline at end of file
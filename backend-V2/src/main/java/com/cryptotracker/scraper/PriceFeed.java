@@ -0,0 +1,130 @@
+package com.cryptotracker.scraper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Punto único de publicación de precios nuevos.
+ *
+ * El scraper publica cada tick después de guardarlo y los nodos seguidores
+ * publican lo que leen de la BD con PriceSyncTask. Los ticks que ya se
+ * publicaron (mismo crypto y price_time menor o igual) se descartan, así
+ * ambas fuentes pueden convivir en el líder sin duplicar datos.
+ *
+ * Un tick más viejo que el último publicado de su cripto puede ser nuevo de
+ * todos modos: un nodo que dejó de ser líder guarda su bitácora después de que
+ * el nuevo líder ya publicó ticks más recientes. Esos se pasan al Backfill
+ * (la serie en memoria), que inserta los que de verdad faltaban, y solo de
+ * esos se avisa a los listeners con onLatePrices().
+ */
+public class PriceFeed {
+
+    private static final Logger log = LoggerFactory.getLogger(PriceFeed.class);
+
+    public interface PriceListener {
+        void onPrices(List<PriceTick> ticks);
+
+        /** Se llama cuando ya se publicó todo el historial desde el instante indicado. */
+        default void onHistoryLoaded(long since) {
+        }
+
+        /**
+         * Ticks que llegaron después de otros más nuevos de su cripto y ya se
+         * insertaron en la serie en memoria. No son precios actuales.
+         */
+        default void onLatePrices(List<PriceTick> ticks) {
+        }
+    }
+
+    /** Guarda en su lugar los ticks atrasados que falten y regresa solo esos. */
+    public interface Backfill {
+        List<PriceTick> fill(List<PriceTick> ticks);
+    }
+
+    private final List<PriceListener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<Integer, Long> lastTimes = new HashMap<>();
+    private volatile long lastTimestamp = 0;
+    private volatile Backfill backfill;
+
+    public void addListener(PriceListener listener) {
+        listeners.add(listener);
+    }
+
+    public void setBackfill(Backfill backfill) {
+        this.backfill = backfill;
+    }
+
+    public synchronized void publish(List<PriceTick> ticks) {
+        List<PriceTick> nuevos = new ArrayList<>(ticks.size());
+        List<PriceTick> atrasados = new ArrayList<>();
+        long maxTime = lastTimestamp;
+
+        for (PriceTick tick : ticks) {
+            Long last = lastTimes.get(tick.cryptoId());
+            if (last == null || tick.time() > last) {
+                lastTimes.put(tick.cryptoId(), tick.time());
+                nuevos.add(tick);
+                maxTime = Math.max(maxTime, tick.time());
+            } else if (tick.time() < last) {
+                atrasados.add(tick);
+            }
+        }
+
+        if (!atrasados.isEmpty()) {
+            publishLate(atrasados);
+        }
+        if (nuevos.isEmpty()) {
+            return;
+        }
+        lastTimestamp = maxTime;
+
+        for (PriceListener listener : listeners) {
+            try {
+                listener.onPrices(nuevos);
+            } catch (RuntimeException e) {
+                log.error("Error en listener de precios: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void publishLate(List<PriceTick> atrasados) {
+        Backfill target = backfill;
+        if (target == null) {
+            return;
+        }
+        List<PriceTick> agregados = target.fill(atrasados);
+        if (agregados.isEmpty()) {
+            return;
+        }
+        log.info("{} ticks atrasados agregados a la serie en memoria", agregados.size());
+
+        for (PriceListener listener : listeners) {
+            try {
+                listener.onLatePrices(agregados);
+            } catch (RuntimeException e) {
+                log.error("Error en listener de precios: {}", e.getMessage());
+            }
+        }
+    }
+
+    public void historyLoaded(long since) {
+        for (PriceListener listener : listeners) {
+            try {
+                listener.onHistoryLoaded(since);
+            } catch (RuntimeException e) {
+                log.error("Error en listener de precios: {}", e.getMessage());
+            }
+        }
+    }
+
+    /** price_time más reciente publicado (epoch millis), 0 si aún no hay datos. */
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+}
@@ -0,0 +1,13 @@
+package com.cryptotracker.scraper;
+
+/**
+ * Precio de una criptomoneda en un instante dado.
+ * Es la unidad que viaja desde el scraper (o la sincronización con la BD)
+ * hacia los componentes en memoria.
+ *
+ * @param cryptoId id de la tabla crypto
+ * @param price    precio en USD
+ * @param time     price_time en epoch millis
+ */
+public record PriceTick(int cryptoId, double price, long time) {
+}
@@ -1,6 +1,10 @@
 package com.cryptotracker.scraper;
 
 import com.cryptotracker.database.DatabaseManager;
+import com.cryptotracker.database.TickWriter;
+import com.cryptotracker.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -10,9 +14,12 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
 public class ScraperService {
+    private static final Logger log = LoggerFactory.getLogger(ScraperService.class);
+    
     private final DatabaseManager dbManager;
     private final Properties config;
     private final CoinGeckoScraper scraper;
+    private final TickWriter tickWriter;
     private ScheduledExecutorService scheduler;
     private boolean isRunning = false;
     private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
@@ -22,15 +29,28 @@ public class ScraperService {
     private int errorCount = 0;
     private LocalDateTime lastSuccessTime = null;
     
-    public ScraperService(DatabaseManager dbManager, Properties config) {
+    /**
+     * @param tickWriter escritor de ticks del nodo; vive mientras el servidor,
+     *                   no solo mientras este nodo es líder
+     */
+    public ScraperService(DatabaseManager dbManager, Properties config, TickWriter tickWriter) {
         this.dbManager = dbManager;
         this.config = config;
-        this.scraper = new CoinGeckoScraper(dbManager);
+        this.tickWriter = tickWriter;
+        this.scraper = new CoinGeckoScraper(dbManager, tickWriter);
+    }
+    
+    public void setMetricsRegistry(MetricsRegistry registry) {
+        scraper.setMetricsRegistry(registry);
+        registry.counter("cryptotracker_scraper_runs_total", "Ejecuciones del scraper por resultado",
+                MetricsRegistry.labels("result", "success"), () -> successCount);
+        registry.counter("cryptotracker_scraper_runs_total", "Ejecuciones del scraper por resultado",
+                MetricsRegistry.labels("result", "error"), () -> errorCount);
     }
     
     public synchronized void start() {
         if (isRunning) {
-            System.out.println("Scraper ya está en ejecución");
+            log.info("Scraper ya está en ejecución");
             return;
         }
         
@@ -43,8 +63,7 @@ public class ScraperService {
             t.setDaemon(true);
             // Importante: manejar excepciones no capturadas
             t.setUncaughtExceptionHandler((thread, ex) -> {
-                System.err.println("[ERROR FATAL] Excepción no capturada en scraper: " + ex.getMessage());
-                ex.printStackTrace();
+                log.error("[ERROR FATAL] Excepción no capturada en scraper: {}", ex.getMessage(), ex);
             });
             return t;
         });
@@ -57,9 +76,9 @@ public class ScraperService {
             config.getProperty("scraper.interval.seconds", "60")
         );
         
-        System.out.println("SCRAPER SERVICE INICIADO");
-        System.out.println("Intervalo configurado: " + intervalSeconds + " segundos");
-        System.out.println("Hora de inicio: " + LocalDateTime.now().format(formatter));
+        log.info("SCRAPER SERVICE INICIADO");
+        log.info("Intervalo configurado: {} segundos", intervalSeconds);
+        log.info("Hora de inicio: {}", LocalDateTime.now().format(formatter));
         
         // Ejecutar inmediatamente
         executeScraping();
@@ -89,18 +108,16 @@ public class ScraperService {
                             java.time.Duration.between(lastSuccessTime, LocalDateTime.now()).toMinutes();
                         
                         if (minutesSinceLastSuccess > 5) {
-                            System.err.println("[ALERTA] No hay scraping exitoso desde hace " + 
-                                            minutesSinceLastSuccess + " minutos!");
-                            System.err.println("Último éxito: " + lastSuccessTime.format(formatter));
-                            System.err.println("Errores consecutivos: " + errorCount);
+                            log.warn("[ALERTA] No hay scraping exitoso desde hace {} minutos!", minutesSinceLastSuccess);
+                            log.warn("Último éxito: {}", lastSuccessTime.format(formatter));
+                            log.warn("Errores consecutivos: {}", errorCount);
                         }
                     }
                     
                     // Log de estadísticas
-                    System.out.println("[MONITOR] Estadísticas - Éxitos: " + successCount + 
-                                     ", Errores: " + errorCount + 
-                                     ", Último éxito: " + 
-                                     (lastSuccessTime != null ? lastSuccessTime.format(formatter) : "Nunca"));
+                    log.info("[MONITOR] Estadísticas - Éxitos: {}, Errores: {}, Último éxito: {}",
+                             successCount, errorCount,
+                             lastSuccessTime != null ? lastSuccessTime.format(formatter) : "Nunca");
                     
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
@@ -118,10 +135,11 @@ public class ScraperService {
         String horaActual = startTime.format(formatter);
         
         try {
-            System.out.println("\n[" + horaActual + "] Iniciando scraping #" + (successCount + errorCount + 1));
+            log.debug("[{}] Iniciando scraping #{}", horaActual, successCount + errorCount + 1);
             
-            // Verificar conexión a BD antes de hacer scraping
-            if (!dbManager.testConnection()) {
+            // Verificar conexión a BD antes de hacer scraping; con la bitácora
+            // los ticks esperan ahí a que la BD regrese
+            if (!tickWriter.isDurable() && !dbManager.testConnection()) {
                 throw new Exception("No hay conexión a la base de datos");
             }
             
@@ -133,20 +151,19 @@ public class ScraperService {
             lastSuccessTime = LocalDateTime.now();
             
             long duration = java.time.Duration.between(startTime, LocalDateTime.now()).toMillis();
-            System.out.println("[" + horaActual + "] Scraping completado en " + duration + "ms");
+            log.info("[{}] Scraping completado en {}ms", horaActual, duration);
             
         } catch (Exception e) {
             errorCount++;
-            System.err.println("[" + horaActual + "] ERROR en scraping: " + e.getMessage());
-            e.printStackTrace();
+            log.error("[{}] ERROR en scraping: {}", horaActual, e.getMessage(), e);
             
             // Si hay muchos errores consecutivos, intentar reconectar BD
             if (errorCount > 5 && errorCount % 5 == 0) {
-                System.err.println("[" + horaActual + "] Intentando reconectar a la BD después de " + errorCount + " errores");
+                log.warn("[{}] Intentando reconectar a la BD después de {} errores", horaActual, errorCount);
                 try {
                     dbManager.reconnect();
                 } catch (Exception reconnectError) {
-                    System.err.println("Error al reconectar: " + reconnectError.getMessage());
+                    log.error("Error al reconectar: {}", reconnectError.getMessage());
                 }
             }
         }
@@ -159,9 +176,9 @@ public class ScraperService {
         
         isRunning = false;
         
-        System.out.println("DETENIENDO SCRAPER SERVICE");
-        System.out.println("Total ejecuciones exitosas: " + successCount);
-        System.out.println("Total errores: " + errorCount);
+        log.info("DETENIENDO SCRAPER SERVICE");
+        log.info("Total ejecuciones exitosas: {}", successCount);
+        log.info("Total errores: {}", errorCount);
         
         if (scheduler != null) {
             scheduler.shutdown();
@@ -175,7 +192,7 @@ public class ScraperService {
             }
         }
         
-        System.out.println("Scraper detenido");
+        log.info("Scraper detenido");
     }
     
     // Métodos para monitoreo externo
@@ -195,6 +212,7 @@ public class ScraperService {
         stats.put("successCount", successCount);
         stats.put("errorCount", errorCount);
         stats.put("lastSuccess", lastSuccessTime != null ? lastSuccessTime.format(formatter) : null);
+        stats.put("pendingWrites", tickWriter.getQueueDepth());
         stats.put("healthy", isHealthy());
         return stats;
     }
@@ -0,0 +1,64 @@
+package com.cryptotracker.server;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Control de admisión: deja pasar la petición solo si el
+ * {@link ConcurrencyLimiter} tiene lugar; si no, responde 503 con
+ * Retry-After sin tocar la base de datos.
+ */
+public class AdmissionFilter extends Filter {
+
+    private static final byte[] OVERLOADED = "{\"status\":\"error\",\"message\":\"Servidor saturado, reintenta en unos segundos\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final ConcurrencyLimiter limiter;
+    private final int retryAfterSeconds;
+
+    public AdmissionFilter(ConcurrencyLimiter limiter, int retryAfterSeconds) {
+        this.limiter = limiter;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        boolean admitted;
+        try {
+            admitted = limiter.tryAcquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        }
+
+        if (!admitted) {
+            exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add("Retry-After", String.valueOf(retryAfterSeconds));
+            exchange.sendResponseHeaders(503, OVERLOADED.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(OVERLOADED);
+            }
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            chain.doFilter(exchange);
+            // Los 4xx son errores del cliente: solo las fallas del servidor bajan el límite
+            failed = exchange.getResponseCode() >= 500;
+        } finally {
+            limiter.release(System.nanoTime() - start, failed);
+        }
+    }
+
+    @Override
+    public String description() {
+        return "Control de admisión con límite adaptativo";
+    }
+}
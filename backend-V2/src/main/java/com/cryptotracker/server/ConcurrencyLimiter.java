@@ -0,0 +1,119 @@
+package com.cryptotracker.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Límite adaptativo de peticiones en curso (AIMD).
+ *
+ * Mientras las peticiones terminen por debajo de la latencia objetivo el
+ * límite sube de a poco (+1 por cada "límite" peticiones); cuando una tarda
+ * más o falla baja de golpe (x0.9). Las que no caben esperan en una fila
+ * acotada un tiempo corto y si no entran se rechazan de inmediato, así la
+ * latencia de las que sí se atienden se mantiene estable bajo sobrecarga.
+ *
+ * Usa ReentrantLock y no synchronized para no fijar hilos virtuales mientras
+ * esperan.
+ */
+public class ConcurrencyLimiter {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueued;
+    private final long queueTimeoutNanos;
+    private final long latencyTargetNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    private double limit;
+    private int inFlight = 0;
+    private int queued = 0;
+
+    private final LongAdder rejected = new LongAdder();
+
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit,
+                              int maxQueued, long queueTimeoutMillis, long latencyTargetMillis) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueued = maxQueued;
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+        this.latencyTargetNanos = TimeUnit.MILLISECONDS.toNanos(latencyTargetMillis);
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Reserva un lugar. Regresa false si la fila está llena o se agotó la
+     * espera; en ese caso no hay que llamar a {@link #release}.
+     */
+    public boolean tryAcquire() throws InterruptedException {
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return true;
+            }
+            if (queued >= maxQueued) {
+                rejected.increment();
+                return false;
+            }
+
+            queued++;
+            try {
+                long remaining = queueTimeoutNanos;
+                while (inFlight >= (int) limit) {
+                    if (remaining <= 0) {
+                        rejected.increment();
+                        return false;
+                    }
+                    remaining = released.awaitNanos(remaining);
+                }
+                inFlight++;
+                return true;
+            } finally {
+                queued--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Libera el lugar y ajusta el límite con la duración de la petición.
+     *
+     * @param failed true si terminó en error del servidor
+     */
+    public void release(long durationNanos, boolean failed) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (failed || durationNanos > latencyTargetNanos) {
+                limit = Math.max(minLimit, limit * 0.9);
+            } else if (inFlight + 1 >= (int) limit) {
+                // Solo crece si de verdad se estaba usando todo el límite
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            released.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public int getQueued() {
+        return queued;
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+}
@@ -1,26 +1,52 @@
 package com.cryptotracker.server;
 
+import com.cryptotracker.cache.LatestPriceCache;
 import com.cryptotracker.database.DatabaseManager;
 import com.cryptotracker.database.DataCleanupTask;
+import com.cryptotracker.database.RollupTier;
+import com.cryptotracker.database.PriceSyncTask;
+import com.cryptotracker.database.TickWriter;
+import com.cryptotracker.metrics.MetricsRegistry;
+import com.cryptotracker.scraper.PriceFeed;
 import com.cryptotracker.scraper.ScraperService;
+import com.cryptotracker.timeseries.IndicatorEngine;
+import com.cryptotracker.timeseries.RegressionEngine;
+import com.cryptotracker.timeseries.TimeSeriesStore;
 import com.cryptotracker.zookeeper.LeaderElection;
+import ch.qos.logback.classic.LoggerContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetAddress;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.Properties;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 public class CryptoTrackerServer {
+    private static final Logger log = LoggerFactory.getLogger(CryptoTrackerServer.class);
+    
     private static Properties config;
     private static WebServer webServer;
     private static DatabaseManager dbManager;
     private static LeaderElection leaderElection;
     private static ScraperService scraperService;
+    private static TickWriter tickWriter;
     private static ScheduledExecutorService cleanupExecutor;
+    private static ScheduledExecutorService syncExecutor;
+    private static PriceFeed priceFeed;
+    private static LatestPriceCache latestPriceCache;
+    private static TimeSeriesStore timeSeriesStore;
+    private static RegressionEngine regressionEngine;
+    private static IndicatorEngine indicatorEngine;
+    private static ResponseCache responseCache;
+    private static PriceStreamBroadcaster priceStream;
+    private static PriceSyncTask priceSyncTask;
+    private static final MetricsRegistry metrics = new MetricsRegistry();
 
     static int port = 8080; // Puerto por defecto
     
@@ -37,6 +63,9 @@ public class CryptoTrackerServer {
             // Inicializar base de datos
             initializeDatabase();
             
+            // Inicializar datos en memoria
+            initializePriceFeed();
+            
             // Inicializar servicio de scraping
             initializeScraperService();
             
@@ -49,17 +78,19 @@ public class CryptoTrackerServer {
             // Programar limpieza de datos antiguos
             scheduleDataCleanup();
             
-            System.out.println("\nServidor iniciado correctamente");
-            System.out.println("Puerto: " + config.getProperty("server.port"));
-            System.out.println("ZooKeeper: " + config.getProperty("zookeeper.hosts"));
-            System.out.println("\nPresiona Ctrl+C para detener...\n");
+            // Programar sincronización de precios desde la BD
+            schedulePriceSync();
+            
+            log.info("Servidor iniciado correctamente");
+            log.info("Puerto: {}", config.getProperty("server.port"));
+            log.info("ZooKeeper: {}", config.getProperty("zookeeper.hosts"));
+            log.info("Presiona Ctrl+C para detener...");
             
             // Mantener el servidor en ejecución
             Thread.currentThread().join();
             
         } catch (Exception e) {
-            System.err.println("Error fatal al iniciar servidor: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Error fatal al iniciar servidor: {}", e.getMessage(), e);
             System.exit(1);
         }
     }
@@ -87,13 +118,77 @@ public class CryptoTrackerServer {
     
     private static void initializeDatabase() throws Exception {
         dbManager = new DatabaseManager(config);
+        dbManager.setMetricsRegistry(metrics);
         dbManager.initialize();
-        System.out.println("Base de datos inicializada");
+        log.info("Base de datos inicializada");
+    }
+    
+    private static void initializePriceFeed() {
+        priceFeed = new PriceFeed();
+        
+        latestPriceCache = new LatestPriceCache(dbManager);
+        priceFeed.addListener(latestPriceCache);
+        
+        int retentionHours = Integer.parseInt(config.getProperty("data.retention.hours", "36"));
+        int intervalSeconds = Integer.parseInt(config.getProperty("scraper.interval.seconds", "60"));
+        
+        timeSeriesStore = new TimeSeriesStore(retentionHours, intervalSeconds);
+        priceFeed.addListener(timeSeriesStore);
+        // Los ticks que llegan tarde (bitácora de un ex líder) se insertan aquí
+        priceFeed.setBackfill(timeSeriesStore);
+        
+        // La regresión usa siempre la ventana de 24 horas
+        regressionEngine = new RegressionEngine(24);
+        priceFeed.addListener(regressionEngine);
+        
+        // Ventanas (en ticks) que se calculan en cada tick; las demás se calculan al pedirlas
+        int[] indicatorWindows = Arrays.stream(config.getProperty("indicators.windows", "20,50").split(","))
+            .map(String::trim)
+            .filter(w -> !w.isEmpty())
+            .mapToInt(Integer::parseInt)
+            .toArray();
+        indicatorEngine = new IndicatorEngine(indicatorWindows, retentionHours, intervalSeconds);
+        priceFeed.addListener(indicatorEngine);
+        
+        int maxCacheEntries = Integer.parseInt(config.getProperty("cache.max.entries", "1000"));
+        responseCache = new ResponseCache(maxCacheEntries, intervalSeconds);
+        priceFeed.addListener(responseCache);
+        
+        // Después del LatestPriceCache para que cada evento lleve el tick nuevo
+        priceStream = new PriceStreamBroadcaster(
+            latestPriceCache,
+            Integer.parseInt(config.getProperty("sse.max.subscribers", "20000")),
+            // Sin hilos virtuales (Java 17) cada suscriptor ocupa un hilo del sistema
+            Integer.parseInt(config.getProperty("sse.max.subscribers.platform", "200")),
+            Integer.parseInt(config.getProperty("sse.buffer.events", "8")),
+            Integer.parseInt(config.getProperty("sse.heartbeat.seconds", "15"))
+        );
+        priceFeed.addListener(priceStream);
+        
+        metrics.gauge("cryptotracker_sse_subscribers", "Clientes conectados a /prices/stream", "",
+            priceStream::getSubscriberCount);
+        metrics.counter("cryptotracker_sse_evicted_total", "Clientes SSE desconectados por ir lentos", "",
+            priceStream::getEvictedCount);
+        metrics.counter("cryptotracker_sse_events_total", "Eventos SSE encolados a clientes", "",
+            priceStream::getEventsSent);
+        
+        // Carga inicial antes de que el scraper publique ticks nuevos
+        priceSyncTask = new PriceSyncTask(dbManager, priceFeed, retentionHours);
+        priceSyncTask.run();
+        
+        log.info("Cache de precios en memoria inicializado");
     }
     
     private static void initializeScraperService() {
-        scraperService = new ScraperService(dbManager, config);
-        System.out.println("Servicio de scraping inicializado");
+        // El escritor corre en todos los nodos: al arrancar guarda lo que quedó
+        // en la bitácora local aunque este nodo ya no vaya a ser líder
+        tickWriter = new TickWriter(dbManager, priceFeed, config);
+        tickWriter.setMetricsRegistry(metrics);
+        tickWriter.start();
+        
+        scraperService = new ScraperService(dbManager, config, tickWriter);
+        scraperService.setMetricsRegistry(metrics);
+        log.info("Servicio de scraping inicializado");
     }
     
     private static void startWebServer() throws Exception {
@@ -101,11 +196,59 @@ public class CryptoTrackerServer {
         
         // Configurar el DatabaseManager
         webServer.setDatabaseManager(dbManager);
+        webServer.setLatestPriceCache(latestPriceCache);
+        webServer.setResponseCache(responseCache);
+        webServer.setPriceStream(priceStream);
+        webServer.setMetricsRegistry(metrics);
+        
+        if (Boolean.parseBoolean(config.getProperty("ratelimit.enabled", "true"))) {
+            TokenBucketLimiter rateLimiter = new TokenBucketLimiter(
+                Integer.parseInt(config.getProperty("ratelimit.max.clients", "100000")));
+            webServer.setRateLimiting(rateLimiter, config);
+            
+            metrics.gauge("cryptotracker_ratelimit_clients", "Clientes con bucket de rate limit activo", "",
+                rateLimiter::getClientCount);
+            metrics.counter("cryptotracker_ratelimit_limited_total", "Peticiones rechazadas con 429", "",
+                rateLimiter::getLimitedCount);
+        }
+        
+        if (Boolean.parseBoolean(config.getProperty("admission.enabled", "true"))) {
+            ConcurrencyLimiter limiter = new ConcurrencyLimiter(
+                Integer.parseInt(config.getProperty("admission.limit.initial", "64")),
+                Integer.parseInt(config.getProperty("admission.limit.min", "8")),
+                Integer.parseInt(config.getProperty("admission.limit.max", "512")),
+                Integer.parseInt(config.getProperty("admission.queue.size", "128")),
+                Long.parseLong(config.getProperty("admission.queue.timeout.ms", "100")),
+                Long.parseLong(config.getProperty("admission.latency.target.ms", "500"))
+            );
+            webServer.setAdmissionControl(limiter,
+                Integer.parseInt(config.getProperty("admission.retry.after.seconds", "1")));
+            
+            metrics.gauge("cryptotracker_admission_limit", "Límite actual de peticiones en curso", "",
+                limiter::getLimit);
+            metrics.gauge("cryptotracker_admission_in_flight", "Peticiones admitidas en curso", "",
+                limiter::getInFlight);
+            metrics.gauge("cryptotracker_admission_queued", "Peticiones esperando lugar", "",
+                limiter::getQueued);
+            metrics.counter("cryptotracker_admission_rejected_total", "Peticiones rechazadas con 503", "",
+                limiter::getRejectedCount);
+        }
+        webServer.setExecutionMode(
+            config.getProperty("server.executor", "virtual"),
+            Integer.parseInt(config.getProperty("server.threads", "10"))
+        );
+        webServer.setTimeSeriesStore(timeSeriesStore,
+            Integer.parseInt(config.getProperty("data.retention.hours", "36")));
+        if (Boolean.parseBoolean(config.getProperty("rollup.enabled", "true"))) {
+            webServer.setRollupRetention(RollupTier.retentionHours(config));
+        }
+        webServer.setRegressionEngine(regressionEngine);
+        webServer.setIndicatorEngine(indicatorEngine);
         
         // Iniciar servidor
         webServer.startServer();
         
-        System.out.println("Servidor iniciado en puerto " + port);
+        log.info("Servidor iniciado en puerto {}", port);
     }
     
     private static void startLeaderElection() throws Exception {
@@ -116,21 +259,21 @@ public class CryptoTrackerServer {
         leaderElection = new LeaderElection(zkHosts, nodeId, new LeaderElection.LeadershipListener() {
             @Override
             public void onBecomeLeader() {
-                System.out.println("\nEste nodo es ahora el líder - Iniciando scraper");
+                log.info("Este nodo es ahora el líder - Iniciando scraper");
                 webServer.setLeaderStatus(true);
                 scraperService.start();
             }
             
             @Override
             public void onLoseLeadership() {
-                System.out.println("\nEste nodo no es lider - Deteniendo scraper");
+                log.info("Este nodo no es lider - Deteniendo scraper");
                 webServer.setLeaderStatus(false);
                 scraperService.stop();
             }
         });
         
         leaderElection.start();
-        System.out.println("Leader Election iniciado - Nodo ID: " + nodeId);
+        log.info("Leader Election iniciado - Nodo ID: {}", nodeId);
     }
     
     private static void scheduleDataCleanup() {
@@ -140,28 +283,54 @@ public class CryptoTrackerServer {
         int cleanupInterval = Integer.parseInt(config.getProperty("data.cleanup.interval.hours", "1"));
         
         cleanupExecutor.scheduleAtFixedRate(
-            new DataCleanupTask(dbManager, retentionHours),
+            new DataCleanupTask(dbManager, retentionHours, config),
             0, // Ejecutar inmediatamente la primera vez
             cleanupInterval,
             TimeUnit.HOURS
         );
         
-        System.out.println("✓ Limpieza automática configurada (retención: " + retentionHours + " horas)");
+        log.info("✓ Limpieza automática configurada (retención: {} horas)", retentionHours);
+    }
+    
+    private static void schedulePriceSync() {
+        syncExecutor = Executors.newSingleThreadScheduledExecutor();
+        
+        int intervalSeconds = Integer.parseInt(config.getProperty("scraper.interval.seconds", "60"));
+        
+        // En el líder casi nunca trae filas (el scraper ya las publicó),
+        // en los seguidores mantiene al día los datos en memoria
+        syncExecutor.scheduleWithFixedDelay(
+            priceSyncTask,
+            intervalSeconds,
+            intervalSeconds,
+            TimeUnit.SECONDS
+        );
+        
+        log.info("✓ Sincronización de precios configurada (cada {} segundos)", intervalSeconds);
     }
     
     // Shutdown hook para limpieza
     static {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            System.out.println("\nDeteniendo servidor...");
+            log.info("Deteniendo servidor...");
             
             if (scraperService != null) {
                 scraperService.stop();
             }
             
+            // Después del scraper, para guardar también lo del último scraping
+            if (tickWriter != null) {
+                tickWriter.stop();
+            }
+            
             if (cleanupExecutor != null) {
                 cleanupExecutor.shutdownNow();
             }
             
+            if (syncExecutor != null) {
+                syncExecutor.shutdownNow();
+            }
+            
             if (leaderElection != null) {
                 leaderElection.close();
             }
@@ -170,12 +339,16 @@ public class CryptoTrackerServer {
                 try {
                     dbManager.close();
                 } catch (SQLException e) {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
+                    log.error("Error cerrando la base de datos", e);
                 }
             }
             
-            System.out.println("Servidor detenido correctamente.");
+            log.info("Servidor detenido correctamente.");
+            
+            // Vaciar la cola del appender asíncrono antes de que termine la JVM
+            if (LoggerFactory.getILoggerFactory() instanceof LoggerContext context) {
+                context.stop();
+            }
         }));
     }
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+package com.cryptotracker.server;
+
+import com.cryptotracker.metrics.Histogram;
+import com.cryptotracker.metrics.MetricsRegistry;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Filtro por contexto que mide peticiones, códigos de respuesta, duración y
+ * bytes escritos. Las métricas del contexto se resuelven una sola vez al
+ * crear el filtro; por petición solo quedan incrementos de LongAdder.
+ */
+public class HttpMetricsFilter extends Filter {
+
+    private final MetricsRegistry registry;
+    private final String context;
+    private final Histogram duration;
+    private final LongAdder bytesWritten;
+    private final LongAdder inFlight;
+    private final Map<Integer, LongAdder> requestsByStatus = new ConcurrentHashMap<>();
+
+    public HttpMetricsFilter(MetricsRegistry registry, String context) {
+        this.registry = registry;
+        this.context = context;
+        String labels = MetricsRegistry.labels("context", context);
+        this.duration = registry.histogram("cryptotracker_http_request_duration_seconds",
+                "Tiempo desde que llega la petición hasta que el handler regresa", labels);
+        this.bytesWritten = registry.counter("cryptotracker_http_response_bytes_total",
+                "Bytes escritos en el cuerpo de las respuestas", labels);
+        this.inFlight = new LongAdder();
+        registry.gauge("cryptotracker_http_requests_in_flight",
+                "Peticiones que se están atendiendo", labels, inFlight::sum);
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        long start = System.nanoTime();
+        inFlight.increment();
+        exchange.setStreams(null, new CountingOutputStream(exchange.getResponseBody(), bytesWritten));
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            inFlight.decrement();
+            duration.observeSince(start);
+            // -1 si el handler cerró el exchange sin responder
+            requestsFor(exchange.getResponseCode()).increment();
+        }
+    }
+
+    private LongAdder requestsFor(int status) {
+        LongAdder counter = requestsByStatus.get(status);
+        if (counter == null) {
+            counter = requestsByStatus.computeIfAbsent(status, code -> registry.counter(
+                    "cryptotracker_http_requests_total", "Peticiones atendidas por código de respuesta",
+                    MetricsRegistry.labels("context", context, "code", String.valueOf(code))));
+        }
+        return counter;
+    }
+
+    @Override
+    public String description() {
+        return "Métricas HTTP de " + context;
+    }
+
+    // Cuenta los bytes conforme se escriben; en SSE la conexión sigue viva
+    // después de que el handler regresa
+    private static class CountingOutputStream extends FilterOutputStream {
+        private final LongAdder counter;
+
+        CountingOutputStream(OutputStream out, LongAdder counter) {
+            super(out);
+            this.counter = counter;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            counter.increment();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            counter.add(len);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.cryptotracker.server;
+
+import com.cryptotracker.cache.LatestPriceCache;
+import com.cryptotracker.scraper.PriceFeed;
+import com.cryptotracker.scraper.PriceTick;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Envía los precios a los clientes conectados a /prices/stream con
+ * Server-Sent Events.
+ *
+ * Cada tick se codifica una sola vez y se encola en el buffer acotado de
+ * cada suscriptor. Un hilo por suscriptor (virtual cuando hay Java 21) saca
+ * eventos de su cola y los escribe; si el cliente no lee y su cola se llena
+ * se le desconecta para no frenar a los demás. Sin hilos virtuales cada
+ * suscriptor es un hilo del sistema, así que el tope de suscriptores baja a
+ * maxPlatformSubscribers. Sin eventos se manda un
+ * comentario de heartbeat para que proxies y balanceadores no cierren la
+ * conexión.
+ */
+public class PriceStreamBroadcaster implements PriceFeed.PriceListener {
+
+    private static final Logger log = LoggerFactory.getLogger(PriceStreamBroadcaster.class);
+
+    private static final byte[] HEARTBEAT = ": ping\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final LatestPriceCache latestPriceCache;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final int maxVirtualSubscribers;
+    private final int maxPlatformSubscribers;
+    // Tope vigente, según el executor que se pase a start()
+    private volatile int maxSubscribers;
+    private final int bufferEvents;
+    private final long heartbeatMillis;
+    private ExecutorService executor;
+
+    // Contadores para monitoreo
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong eventsSent = new AtomicLong();
+
+    private volatile byte[] lastEvent;
+
+    public PriceStreamBroadcaster(LatestPriceCache latestPriceCache, int maxVirtualSubscribers,
+                                  int maxPlatformSubscribers, int bufferEvents, int heartbeatSeconds) {
+        this.latestPriceCache = latestPriceCache;
+        this.maxVirtualSubscribers = maxVirtualSubscribers;
+        this.maxPlatformSubscribers = maxPlatformSubscribers;
+        this.maxSubscribers = maxPlatformSubscribers;
+        this.bufferEvents = bufferEvents;
+        this.heartbeatMillis = heartbeatSeconds * 1000L;
+    }
+
+    /** @param virtualThreads true si el executor corre cada suscriptor en un hilo virtual */
+    public void start(ExecutorService executor, boolean virtualThreads) {
+        this.executor = executor;
+        this.maxSubscribers = virtualThreads ? maxVirtualSubscribers : maxPlatformSubscribers;
+        log.info("Stream de precios con hasta {} suscriptores ({})", maxSubscribers,
+                 virtualThreads ? "hilos virtuales" : "un hilo del sistema por suscriptor");
+    }
+
+    @Override
+    public void onPrices(List<PriceTick> ticks) {
+        // El LatestPriceCache se registra antes en el PriceFeed, ya está actualizado
+        byte[] event = encodeSnapshot(ticks.get(ticks.size() - 1).time());
+        if (event == null) {
+            return;
+        }
+        lastEvent = event;
+
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.queue.offer(event)) {
+                // Cliente lento: su buffer está lleno
+                evictedCount.incrementAndGet();
+                subscriber.close();
+            }
+        }
+    }
+
+    private byte[] encodeSnapshot(long tickTime) {
+        List<Map<String, Object>> prices = latestPriceCache.getSnapshot();
+        if (prices.isEmpty()) {
+            return null;
+        }
+
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("status", "success");
+        payload.put("data", prices);
+        payload.put("count", prices.size());
+
+        try {
+            String event = "event: prices\nid: " + tickTime + "\ndata: "
+                + objectMapper.writeValueAsString(payload) + "\n\n";
+            return event.getBytes(StandardCharsets.UTF_8);
+        } catch (JsonProcessingException e) {
+            log.error("Error codificando evento de precios: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Registra la conexión como suscriptor. Regresa false si ya no hay
+     * lugar; en ese caso no se enviaron headers todavía.
+     */
+    public boolean subscribe(HttpExchange exchange) throws IOException {
+        if (executor == null || subscribers.size() >= maxSubscribers) {
+            return false;
+        }
+
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().add("Cache-Control", "no-cache");
+        exchange.getResponseHeaders().add("X-Accel-Buffering", "no");
+        exchange.sendResponseHeaders(200, 0);
+
+        Subscriber subscriber = new Subscriber(exchange, bufferEvents);
+        byte[] initial = lastEvent;
+        if (initial == null) {
+            initial = encodeSnapshot(System.currentTimeMillis());
+        }
+        if (initial != null) {
+            subscriber.queue.offer(initial);
+        }
+
+        subscribers.add(subscriber);
+        executor.execute(subscriber::run);
+        return true;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    public long getEventsSent() {
+        return eventsSent.get();
+    }
+
+    private class Subscriber {
+        private final HttpExchange exchange;
+        private final BlockingQueue<byte[]> queue;
+        private volatile Thread writer;
+        private volatile boolean closed = false;
+
+        Subscriber(HttpExchange exchange, int capacity) {
+            this.exchange = exchange;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void run() {
+            writer = Thread.currentThread();
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write("retry: 5000\n\n".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+
+                while (!closed) {
+                    byte[] event = queue.poll(heartbeatMillis, TimeUnit.MILLISECONDS);
+                    if (closed) {
+                        break;
+                    }
+                    out.write(event != null ? event : HEARTBEAT);
+                    out.flush();
+                    if (event != null) {
+                        eventsSent.incrementAndGet();
+                    }
+                }
+            } catch (IOException | InterruptedException e) {
+                // Cliente desconectado o expulsado
+            } finally {
+                closed = true;
+                subscribers.remove(this);
+                exchange.close();
+            }
+        }
+
+        void close() {
+            closed = true;
+            subscribers.remove(this);
+            Thread t = writer;
+            if (t != null) {
+                // Interrumpir cierra el canal aunque esté bloqueado escribiendo
+                t.interrupt();
+            }
+        }
+    }
+}
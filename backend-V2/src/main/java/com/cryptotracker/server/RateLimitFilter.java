@@ -0,0 +1,115 @@
+package com.cryptotracker.server;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Límite de peticiones por cliente para un contexto.
+ *
+ * El cliente es la API key (header X-API-Key) si viene una de las
+ * configuradas, con su propia cuota; si no, la IP. Cada endpoint cobra un
+ * costo distinto del mismo bucket. Al pasarse se responde 429 con Retry-After.
+ * Un handler puede completar el cobro ya dentro de la petición con
+ * chargeTotal(), p. ej. /batch cuando ya sabe qué consultas trae.
+ */
+public class RateLimitFilter extends Filter {
+
+    private static final byte[] TOO_MANY = "{\"status\":\"error\",\"message\":\"Demasiadas peticiones, reintenta más tarde\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final TokenBucketLimiter limiter;
+    private final int cost;
+    private final int tokensPerMinute;
+    private final int burst;
+    // API key -> tokens por minuto
+    private final Map<String, Integer> apiKeyQuotas;
+    private final boolean trustForwardedFor;
+
+    public RateLimitFilter(TokenBucketLimiter limiter, int cost, int tokensPerMinute, int burst,
+                           Map<String, Integer> apiKeyQuotas, boolean trustForwardedFor) {
+        this.limiter = limiter;
+        this.tokensPerMinute = tokensPerMinute;
+        this.burst = burst;
+        this.cost = Math.min(cost, burst);
+        this.apiKeyQuotas = apiKeyQuotas;
+        this.trustForwardedFor = trustForwardedFor;
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        TokenBucketLimiter.Decision decision = consume(exchange, cost, 0);
+        if (!decision.allowed()) {
+            sendTooManyRequests(exchange, decision);
+            return;
+        }
+
+        chain.doFilter(exchange);
+    }
+
+    /**
+     * Sube el costo de la petición a {@code total} tokens cobrando lo que
+     * falta sobre lo que ya cobró el filtro. Igual que el costo fijo, el total
+     * no pasa de la ráfaga del cliente para que pueda pasar con el bucket lleno.
+     */
+    public TokenBucketLimiter.Decision chargeTotal(HttpExchange exchange, int total) {
+        return consume(exchange, total, cost);
+    }
+
+    // Cobra tokens - alreadyCharged y deja los headers RateLimit-* con lo que queda
+    private TokenBucketLimiter.Decision consume(HttpExchange exchange, int tokens, int alreadyCharged) {
+        String apiKey = exchange.getRequestHeaders().getFirst("X-API-Key");
+        Integer quota = apiKey != null ? apiKeyQuotas.get(apiKey) : null;
+
+        TokenBucketLimiter.Decision decision;
+        if (quota != null) {
+            // Ráfaga proporcional a la cuota de la key
+            int keyBurst = Math.max(burst, burst * quota / Math.max(1, tokensPerMinute));
+            int charge = Math.max(0, Math.min(tokens, keyBurst) - alreadyCharged);
+            decision = limiter.tryConsume("key:" + apiKey, charge, quota, keyBurst);
+        } else {
+            int charge = Math.max(0, Math.min(tokens, burst) - alreadyCharged);
+            decision = limiter.tryConsume("ip:" + clientAddress(exchange), charge, tokensPerMinute, burst);
+        }
+
+        // set y no add: un segundo cobro en la misma petición reemplaza los valores
+        exchange.getResponseHeaders().set("RateLimit-Limit", String.valueOf(decision.limit()));
+        exchange.getResponseHeaders().set("RateLimit-Remaining", String.valueOf(decision.remaining()));
+        exchange.getResponseHeaders().set("RateLimit-Reset", String.valueOf(decision.resetSeconds()));
+        exchange.getResponseHeaders().set("Access-Control-Expose-Headers",
+                "RateLimit-Limit, RateLimit-Remaining, RateLimit-Reset, Retry-After");
+        return decision;
+    }
+
+    public static void sendTooManyRequests(HttpExchange exchange, TokenBucketLimiter.Decision decision)
+            throws IOException {
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.getResponseHeaders().add("Retry-After", String.valueOf(decision.retryAfterSeconds()));
+        exchange.sendResponseHeaders(429, TOO_MANY.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(TOO_MANY);
+        }
+    }
+
+    private String clientAddress(HttpExchange exchange) {
+        if (trustForwardedFor) {
+            // Detrás del balanceador la IP real es la primera de la lista
+            String forwarded = exchange.getRequestHeaders().getFirst("X-Forwarded-For");
+            if (forwarded != null && !forwarded.isBlank()) {
+                int comma = forwarded.indexOf(',');
+                return (comma < 0 ? forwarded : forwarded.substring(0, comma)).trim();
+            }
+        }
+        return exchange.getRemoteAddress().getAddress().getHostAddress();
+    }
+
+    @Override
+    public String description() {
+        return "Token bucket por cliente (costo " + cost + ")";
+    }
+}
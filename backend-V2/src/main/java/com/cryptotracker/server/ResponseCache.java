@@ -0,0 +1,133 @@
+package com.cryptotracker.server;
+
+import com.cryptotracker.scraper.PriceFeed;
+import com.cryptotracker.scraper.PriceTick;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache de respuestas JSON ya codificadas.
+ *
+ * Guarda el byte[] final de cada (endpoint, parámetros normalizados) junto
+ * con un ETag fuerte calculado sobre esos bytes. Los datos solo cambian una
+ * vez por scrape, así que todo el cache se invalida con cada tick del
+ * PriceFeed y el max-age se calcula con el tiempo que falta para el
+ * siguiente scrape. Los ticks que llegan tarde también lo invalidan.
+ */
+public class ResponseCache implements PriceFeed.PriceListener {
+
+    public record CachedResponse(byte[] body, String etag) {
+    }
+
+    private final Map<String, CachedResponse> entries = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final long intervalMillis;
+
+    // Se incrementa con cada tick; una respuesta armada con una versión
+    // anterior ya no se guarda
+    private final AtomicLong version = new AtomicLong();
+    private volatile long lastUpdate = System.currentTimeMillis();
+    // price_time más reciente recibido; es igual en todos los nodos
+    private volatile long lastTickTime = 0;
+    // price_time más reciente de los ticks que llegaron tarde (0 = ninguno)
+    private volatile long lateTickTime = 0;
+
+    public ResponseCache(int maxEntries, int intervalSeconds) {
+        this.maxEntries = maxEntries;
+        this.intervalMillis = intervalSeconds * 1000L;
+    }
+
+    @Override
+    public void onPrices(List<PriceTick> ticks) {
+        version.incrementAndGet();
+        lastUpdate = System.currentTimeMillis();
+        for (PriceTick tick : ticks) {
+            lastTickTime = Math.max(lastTickTime, tick.time());
+        }
+        entries.clear();
+    }
+
+    @Override
+    public void onLatePrices(List<PriceTick> ticks) {
+        version.incrementAndGet();
+        for (PriceTick tick : ticks) {
+            lateTickTime = Math.max(lateTickTime, tick.time());
+        }
+        entries.clear();
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    public CachedResponse get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Crea la entrada para el body y la guarda si los datos no cambiaron
+     * mientras se armaba y aún hay espacio.
+     */
+    public CachedResponse put(String key, long builtVersion, byte[] body) {
+        CachedResponse response = entryFor(body);
+        if (builtVersion == version.get() && entries.size() < maxEntries) {
+            entries.put(key, response);
+        }
+        return response;
+    }
+
+    /** Segundos que faltan para el siguiente scrape. */
+    public long maxAgeSeconds() {
+        long remaining = lastUpdate + intervalMillis - System.currentTimeMillis();
+        return Math.max(0, remaining / 1000);
+    }
+
+    /** Llave estable: el contexto más los parámetros ordenados por nombre. */
+    public static String keyFor(String path, Map<String, String> params) {
+        if (params.isEmpty()) {
+            return path;
+        }
+        StringBuilder key = new StringBuilder(path).append('?');
+        for (Map.Entry<String, String> param : new TreeMap<>(params).entrySet()) {
+            key.append(param.getKey()).append('=').append(param.getValue()).append('&');
+        }
+        key.setLength(key.length() - 1);
+        return key.toString();
+    }
+
+    /**
+     * ETag débil para respuestas que no se guardan: cambia con cada tick
+     * (también los que llegan tarde) y con los parámetros, y coincide entre
+     * nodos con los mismos datos.
+     */
+    public String weakEtagFor(String key) {
+        String data = lateTickTime == 0 ? Long.toHexString(lastTickTime)
+                : Long.toHexString(lastTickTime) + "." + Long.toHexString(lateTickTime);
+        return "W/\"" + data + "-" + Integer.toHexString(key.hashCode()) + "\"";
+    }
+
+    public static CachedResponse entryFor(byte[] body) {
+        return new CachedResponse(body, etagFor(body));
+    }
+
+    private static String etagFor(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            StringBuilder etag = new StringBuilder(34).append('"');
+            for (int i = 0; i < 16; i++) {
+                etag.append(Character.forDigit((digest[i] >> 4) & 0xF, 16))
+                    .append(Character.forDigit(digest[i] & 0xF, 16));
+            }
+            return etag.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 siempre está disponible en la JVM
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.cryptotracker.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token bucket por cliente sin locks.
+ *
+ * Cada bucket es un solo AtomicLong con el "tiempo teórico de llegada" (GCRA):
+ * consumir N tokens lo adelanta N intervalos y la petición pasa si no queda
+ * más adelante que la ráfaga permitida. Equivale a un token bucket de
+ * capacidad {@code burst} que se rellena a {@code tokensPerMinute}, pero se
+ * actualiza con un solo compareAndSet.
+ *
+ * Un bucket cuyo tiempo ya quedó en el pasado está lleno y es igual a uno
+ * nuevo, así que se puede borrar sin perder nada; la limpieza se hace de vez
+ * en cuando desde las mismas peticiones.
+ */
+public class TokenBucketLimiter {
+
+    /**
+     * Resultado de una petición al limitador.
+     *
+     * @param remaining    tokens que quedan después de esta petición
+     * @param resetSeconds segundos para que el bucket vuelva a estar lleno
+     * @param retryAfterSeconds segundos a esperar si no se permitió (0 si sí)
+     */
+    public record Decision(boolean allowed, long limit, long remaining, long resetSeconds, long retryAfterSeconds) {
+    }
+
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final int maxClients;
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+    private final LongAdder limited = new LongAdder();
+
+    public TokenBucketLimiter(int maxClients) {
+        this.maxClients = maxClients;
+    }
+
+    /**
+     * Intenta consumir {@code cost} tokens del bucket de {@code client}.
+     *
+     * @param tokensPerMinute ritmo de relleno del bucket de este cliente
+     * @param burst           capacidad del bucket
+     */
+    public Decision tryConsume(String client, int cost, int tokensPerMinute, int burst) {
+        long now = System.nanoTime();
+        sweepIfDue(now);
+
+        long interval = TimeUnit.MINUTES.toNanos(1) / Math.max(1, tokensPerMinute);
+        long tolerance = interval * burst;
+
+        AtomicLong bucket = buckets.get(client);
+        if (bucket == null) {
+            // Con demasiados clientes distintos los nuevos comparten un bucket
+            if (buckets.size() >= maxClients) {
+                client = "overflow";
+            }
+            bucket = buckets.computeIfAbsent(client, c -> new AtomicLong(now));
+        }
+
+        while (true) {
+            long tat = bucket.get();
+            long newTat = Math.max(tat, now) + interval * cost;
+            long ahead = newTat - now;
+
+            if (ahead > tolerance) {
+                limited.increment();
+                long used = Math.max(tat, now) - now;
+                long remaining = Math.max(0, (tolerance - used) / interval);
+                return new Decision(false, burst, remaining, toSeconds(used),
+                        Math.max(1, toSeconds(ahead - tolerance)));
+            }
+            if (bucket.compareAndSet(tat, newTat)) {
+                return new Decision(true, burst, (tolerance - ahead) / interval, toSeconds(ahead), 0);
+            }
+        }
+    }
+
+    private void sweepIfDue(long now) {
+        long last = lastSweep.get();
+        if (now - last < SWEEP_INTERVAL_NANOS || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        // Buckets llenos: borrarlos es igual que no haberlos visto nunca
+        buckets.values().removeIf(bucket -> bucket.get() <= now);
+    }
+
+    private static long toSeconds(long nanos) {
+        return (nanos + 999_999_999L) / 1_000_000_000L;
+    }
+
+    public int getClientCount() {
+        return buckets.size();
+    }
+
+    public long getLimitedCount() {
+        return limited.sum();
+    }
+}
@@ -3,19 +3,47 @@ package com.cryptotracker.server;
 import com.sun.net.httpserver.HttpContext;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.cryptotracker.cache.LatestPriceCache;
+import com.cryptotracker.cache.SingleFlight;
+import com.cryptotracker.cache.StreamFlight;
 import com.cryptotracker.database.DatabaseManager;
+import com.cryptotracker.database.RollupTier;
+import com.cryptotracker.metrics.MetricsRegistry;
+import com.cryptotracker.scraper.PriceTick;
 import com.cryptotracker.scraper.ScraperService;
+import com.cryptotracker.timeseries.CandleAggregator;
+import com.cryptotracker.timeseries.CorrelationMatrix;
+import com.cryptotracker.timeseries.Downsampler;
+import com.cryptotracker.timeseries.IndicatorEngine;
+import com.cryptotracker.timeseries.IndicatorSeries;
+import com.cryptotracker.timeseries.RegressionEngine;
+import com.cryptotracker.timeseries.SeriesSlice;
+import com.cryptotracker.timeseries.TimeSeriesStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.sql.*;
 import java.util.*;
 
 public class WebServer {
+    private static final Logger log = LoggerFactory.getLogger(WebServer.class);
+    
     // Endpoints del API
     private static final String STATUS_ENDPOINT = "/status";
     private static final String HEALTH_ENDPOINT = "/health";
@@ -27,17 +55,103 @@ public class WebServer {
     private static final String API_PRICES_ALL_CRYPTOS = "/prices/all-cryptos";
     private static final String API_PRICES_COMPARE = "/prices/compare";
     private static final String API_PRICES_REGRESSION = "/prices/regression";
+    private static final String API_PRICES_STREAM = "/prices/stream";
+    private static final String API_PRICES_CANDLES = "/prices/candles";
+    private static final String API_PRICES_INDICATORS = "/prices/indicators";
+    private static final String API_PRICES_CORRELATION = "/prices/correlation";
+    private static final String METRICS_ENDPOINT = "/metrics";
+    private static final String API_BATCH = "/batch";
+    
+    // Puntos que se copian de memoria por vuelta al escribir una respuesta
+    private static final int STREAM_PAGE_SIZE = 2048;
+    
+    // Sub-consultas máximas en un POST /batch
+    private static final int MAX_BATCH_QUERIES = 20;
+    
+    // Endpoints que se pueden pedir dentro de /batch
+    private static final Set<String> BATCH_ENDPOINTS = Set.of(API_CRYPTOS, API_PRICES_CURRENT,
+            API_PRICES_HISTORY, API_PRICES_ALL_CRYPTOS, API_PRICES_COMPARE, API_PRICES_REGRESSION,
+            API_PRICES_CANDLES, API_PRICES_INDICATORS, API_PRICES_CORRELATION);
+    
+    // Ventana máxima (en ticks) para los indicadores calculados al vuelo
+    private static final int MAX_INDICATOR_WINDOW = 1000;
+    
+    // Largo máximo de un rango from/to en compare y regression
+    private static final int MAX_RANGE_HOURS = 24 * 7;
+    
+    // Historial que se responde con ticks; más allá se usan los agregados de RollupTier
+    private static final int RAW_HISTORY_HOURS = 24;
+    
+    // Puntos buscados al elegir nivel de agregado cuando no viene points
+    private static final int DEFAULT_ROLLUP_POINTS = 1000;
     
     
     private final int port;
     private HttpServer server;
     private final ObjectMapper objectMapper;
     private DatabaseManager dbManager;
+    private ResponseCache responseCache;
+    private PriceStreamBroadcaster priceStream;
     private ScraperService scraperService;
+    private LatestPriceCache latestPriceCache;
+    private TimeSeriesStore timeSeriesStore;
+    private RegressionEngine regressionEngine;
+    private IndicatorEngine indicatorEngine;
+    private MetricsRegistry metrics;
+    private ConcurrencyLimiter admissionLimiter;
+    private int retryAfterSeconds = 1;
+    private TokenBucketLimiter rateLimiter;
+    // Filtro de /batch, para cobrar sus sub-consultas ya leído el cuerpo
+    private RateLimitFilter batchRateLimit;
+    private Properties rateLimitConfig;
+    private int retentionHours = 36;
+    // Retención de cada nivel de agregados (null = sin agregados, historial hasta 24 h)
+    private Map<RollupTier, Integer> rollupRetention;
+    
+    // Arma el cuerpo de una respuesta JSON
+    @FunctionalInterface
+    private interface ResponseBuilder {
+        Object build() throws Exception;
+    }
+    
+    // Escribe el cuerpo de la respuesta directo sobre el socket
+    @FunctionalInterface
+    private interface JsonBodyWriter {
+        void write(JsonGenerator gen) throws Exception;
+    }
+    
+    // Cuerpo a escribir y si va a salir de MySQL (la ventana no está en memoria)
+    private record StreamedBody(JsonBodyWriter writer, boolean fromDatabase) {
+    }
+    
+    // Una sub-consulta de /batch: id con el que vuelve, endpoint y sus parámetros
+    private record BatchQuery(String id, String endpoint, Map<String, String> params) {
+    }
+    
+    // Rango absoluto [from, to) en epoch-millis; open indica que no vino 'to'
+    private record TimeRange(long from, long to, boolean open) {
+    }
+    
+    // Peticiones iguales y simultáneas que van a la BD se resuelven con una sola consulta
+    private final SingleFlight<Object> singleFlight = new SingleFlight<>();
+    
+    // Lo mismo para las respuestas que van directo al socket; la copia que se
+    // comparte con las peticiones en espera se acota a este tamaño, que deja
+    // pasar /all-cryptos?hours=24 (~1.4 MB)
+    private static final int STREAM_SHARE_MAX_BYTES = 4 * 1024 * 1024;
+    private final StreamFlight streamFlight = new StreamFlight(STREAM_SHARE_MAX_BYTES);
+    
+    // Corre en paralelo las sub-consultas de /batch
+    private ExecutorService batchExecutor;
     
     // Variable para indicar si este nodo es líder
     private boolean isLeader = false;
     
+    // Modo de ejecución de las peticiones: "virtual" (un hilo virtual por
+    // petición, requiere Java 21) o "fixed" (pool de tamaño fijo)
+    private String executionMode = "virtual";
+    private int poolThreads = 10;
+    
     public WebServer(int port) {
         this.port = port;
         this.objectMapper = new ObjectMapper();
@@ -52,6 +166,65 @@ public class WebServer {
         this.scraperService = scraperService;
     }
     
+    public void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+    
+    public void setPriceStream(PriceStreamBroadcaster priceStream) {
+        this.priceStream = priceStream;
+    }
+    
+    public void setLatestPriceCache(LatestPriceCache latestPriceCache) {
+        this.latestPriceCache = latestPriceCache;
+    }
+    
+    public void setTimeSeriesStore(TimeSeriesStore timeSeriesStore, int retentionHours) {
+        this.timeSeriesStore = timeSeriesStore;
+        this.retentionHours = retentionHours;
+    }
+    
+    public void setRollupRetention(Map<RollupTier, Integer> rollupRetention) {
+        this.rollupRetention = rollupRetention;
+    }
+    
+    public void setRegressionEngine(RegressionEngine regressionEngine) {
+        this.regressionEngine = regressionEngine;
+    }
+    
+    public void setIndicatorEngine(IndicatorEngine indicatorEngine) {
+        this.indicatorEngine = indicatorEngine;
+    }
+    
+    public void setMetricsRegistry(MetricsRegistry metrics) {
+        this.metrics = metrics;
+        metrics.counter("cryptotracker_singleflight_requests_total",
+                "Peticiones que ejecutaron la consulta (leader) o esperaron la de otra (collapsed)",
+                MetricsRegistry.labels("result", "leader"),
+                () -> singleFlight.getExecutedCount() + streamFlight.getExecutedCount());
+        metrics.counter("cryptotracker_singleflight_requests_total",
+                "Peticiones que ejecutaron la consulta (leader) o esperaron la de otra (collapsed)",
+                MetricsRegistry.labels("result", "collapsed"),
+                () -> singleFlight.getCollapsedCount() + streamFlight.getCollapsedCount());
+        metrics.gauge("cryptotracker_singleflight_in_flight",
+                "Consultas distintas en curso", "",
+                () -> singleFlight.getInFlightCount() + streamFlight.getInFlightCount());
+    }
+    
+    public void setAdmissionControl(ConcurrencyLimiter admissionLimiter, int retryAfterSeconds) {
+        this.admissionLimiter = admissionLimiter;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+    
+    public void setRateLimiting(TokenBucketLimiter rateLimiter, Properties config) {
+        this.rateLimiter = rateLimiter;
+        this.rateLimitConfig = config;
+    }
+    
+    public void setExecutionMode(String executionMode, int poolThreads) {
+        this.executionMode = executionMode;
+        this.poolThreads = poolThreads;
+    }
+    
     public void setLeaderStatus(boolean isLeader) {
         this.isLeader = isLeader;
     }
@@ -60,7 +233,7 @@ public class WebServer {
         try {
             this.server = HttpServer.create(new InetSocketAddress(port), 0);
         } catch (IOException e) {
-            e.printStackTrace();
+            log.error("No se pudo abrir el puerto {}", port, e);
             return;
         }
         
@@ -75,6 +248,12 @@ public class WebServer {
         HttpContext allCryptosContext = server.createContext(API_PRICES_ALL_CRYPTOS);
         HttpContext compareContext = server.createContext(API_PRICES_COMPARE);
         HttpContext regressionContext = server.createContext(API_PRICES_REGRESSION);
+        HttpContext streamContext = server.createContext(API_PRICES_STREAM);
+        HttpContext candlesContext = server.createContext(API_PRICES_CANDLES);
+        HttpContext indicatorsContext = server.createContext(API_PRICES_INDICATORS);
+        HttpContext correlationContext = server.createContext(API_PRICES_CORRELATION);
+        HttpContext metricsContext = server.createContext(METRICS_ENDPOINT);
+        HttpContext batchContext = server.createContext(API_BATCH);
         
         
         // Asignar handlers
@@ -88,13 +267,136 @@ public class WebServer {
         allCryptosContext.setHandler(this::handleAllCryptosRequest);
         compareContext.setHandler(this::handleCompareRequest);
         regressionContext.setHandler(this::handleRegressionRequest);
+        streamContext.setHandler(this::handlePriceStreamRequest);
+        candlesContext.setHandler(this::handleCandlesRequest);
+        indicatorsContext.setHandler(this::handleIndicatorsRequest);
+        correlationContext.setHandler(this::handleCorrelationRequest);
+        metricsContext.setHandler(this::handleMetricsRequest);
+        batchContext.setHandler(this::handleBatchRequest);
+        
+        // Endpoints de datos; /status, /health y /metrics quedan fuera del
+        // control de admisión para que el monitoreo responda aun con el nodo saturado
+        List<HttpContext> apiContexts = List.of(currentPricesContext, historicalPricesContext,
+                cryptosContext, allCryptosContext, compareContext, regressionContext,
+                streamContext, candlesContext, indicatorsContext, correlationContext, batchContext);
+        
+        // Métricas por contexto (incluye el propio /metrics); van primero para contar los 503
+        if (metrics != null) {
+            for (HttpContext context : List.of(statusContext, healthContext, metricsContext)) {
+                context.getFilters().add(new HttpMetricsFilter(metrics, context.getPath()));
+            }
+            for (HttpContext context : apiContexts) {
+                context.getFilters().add(new HttpMetricsFilter(metrics, context.getPath()));
+            }
+        }
+        
+        // Antes de la admisión: un cliente que abusa no debe ocupar lugares en la fila
+        if (rateLimiter != null) {
+            statusContext.getFilters().add(createRateLimitFilter(STATUS_ENDPOINT));
+            for (HttpContext context : apiContexts) {
+                RateLimitFilter rateLimit = createRateLimitFilter(context.getPath());
+                context.getFilters().add(rateLimit);
+                if (context == batchContext) {
+                    batchRateLimit = rateLimit;
+                }
+            }
+        }
+        
+        if (admissionLimiter != null) {
+            AdmissionFilter admission = new AdmissionFilter(admissionLimiter, retryAfterSeconds);
+            for (HttpContext context : apiContexts) {
+                context.getFilters().add(admission);
+            }
+        }
        
 
-        // Configurar pool de threads
-        server.setExecutor(Executors.newFixedThreadPool(10));
+        // Configurar ejecución de las peticiones
+        server.setExecutor(createExecutor());
+        
+        // Executor aparte para /batch: con el pool fijo, esperar sub-consultas
+        // encoladas en el mismo pool de las peticiones podría bloquearlo
+        ExecutorService virtualExecutor = newVirtualThreadExecutor();
+        batchExecutor = virtualExecutor != null ? virtualExecutor : Executors.newFixedThreadPool(poolThreads);
+        
+        // Los suscriptores SSE ocupan un hilo cada uno mientras están conectados
+        if (priceStream != null) {
+            ExecutorService streamExecutor = newVirtualThreadExecutor();
+            if (streamExecutor != null) {
+                priceStream.start(streamExecutor, true);
+            } else {
+                priceStream.start(Executors.newCachedThreadPool(), false);
+            }
+        }
         server.start();
         
-        System.out.println("Servidor iniciado en puerto " + port);
+        log.info("Servidor iniciado en puerto {}", port);
+    }
+    
+    /**
+     * Filtro de rate limit de un endpoint. El costo sale de rateLimitCost();
+     * las API keys se configuran como ratelimit.api.keys=key1:600,key2:1200
+     * (tokens por minuto).
+     */
+    private RateLimitFilter createRateLimitFilter(String path) {
+        int cost = rateLimitCost(path);
+        int tokensPerMinute = Integer.parseInt(rateLimitConfig.getProperty("ratelimit.tokens.per.minute", "120"));
+        int burst = Integer.parseInt(rateLimitConfig.getProperty("ratelimit.burst", "60"));
+        boolean trustForwardedFor = Boolean.parseBoolean(
+                rateLimitConfig.getProperty("ratelimit.trust.forwarded.for", "false"));
+        
+        Map<String, Integer> apiKeyQuotas = new HashMap<>();
+        for (String entry : rateLimitConfig.getProperty("ratelimit.api.keys", "").split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length == 2) {
+                apiKeyQuotas.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+            }
+        }
+        
+        return new RateLimitFilter(rateLimiter, cost, tokensPerMinute, burst, apiKeyQuotas, trustForwardedFor);
+    }
+    
+    /**
+     * Tokens que cobra un endpoint: ratelimit.cost.&lt;ruta&gt;
+     * (p. ej. ratelimit.cost./prices/all-cryptos=10). El de /batch es solo
+     * el adelanto que cobra su filtro; el lote completo cuesta la suma de sus
+     * sub-consultas con estos mismos costos.
+     */
+    private int rateLimitCost(String path) {
+        Map<String, Integer> defaultCosts = Map.of(
+            API_PRICES_ALL_CRYPTOS, 10,
+            API_PRICES_COMPARE, 5,
+            API_PRICES_CORRELATION, 10,
+            API_PRICES_REGRESSION, 5,
+            API_PRICES_HISTORY, 2,
+            API_PRICES_CANDLES, 2,
+            API_PRICES_INDICATORS, 2
+        );
+        return Integer.parseInt(rateLimitConfig.getProperty("ratelimit.cost." + path,
+                String.valueOf(defaultCosts.getOrDefault(path, 1))));
+    }
+    
+    private ExecutorService createExecutor() {
+        if (executionMode.equalsIgnoreCase("virtual")) {
+            ExecutorService executor = newVirtualThreadExecutor();
+            if (executor != null) {
+                log.info("Peticiones atendidas con hilos virtuales");
+                return executor;
+            }
+            log.info("Hilos virtuales no disponibles en Java {}, usando pool fijo de {} hilos",
+                     Runtime.version().feature(), poolThreads);
+        }
+        return Executors.newFixedThreadPool(poolThreads);
+    }
+    
+    /** Executor de un hilo virtual por tarea, o null si la JVM no los soporta. */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            // Por reflexión para que el código siga compilando con Java 17
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
     }
     
     private void handleStatusCheckRequest(HttpExchange exchange) throws IOException {
@@ -103,7 +405,7 @@ public class WebServer {
             return;
         }
         
-        System.out.println("Se recibió el método HTTP " + exchange.getRequestMethod() + " al acceder al endpoint " + exchange.getRequestURI().getPath());
+        log.debug("Se recibió el método HTTP {} al acceder al endpoint {}", exchange.getRequestMethod(), exchange.getRequestURI().getPath());
         
         String responseMessage = "El servidor está vivo\n";
         if (isLeader) {
@@ -122,6 +424,28 @@ public class WebServer {
         sendResponse(responseBytes, exchange);
     }
 
+    private void handleMetricsRequest(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equalsIgnoreCase("get")) {
+            exchange.close();
+            return;
+        }
+        
+        if (metrics == null) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        
+        // Sin prints: Prometheus lo consulta cada pocos segundos
+        byte[] responseBytes = metrics.scrape().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, responseBytes.length);
+        
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(responseBytes);
+        }
+    }
+    
     private void handleHealthCheckRequest(HttpExchange exchange) throws IOException {
         if (!exchange.getRequestMethod().equalsIgnoreCase("get")) {
             exchange.close();
@@ -150,6 +474,12 @@ public class WebServer {
         health.put("timestamp", System.currentTimeMillis());
         health.put("isLeader", isLeader);
         health.put("database", dbHealthy ? "connected" : "disconnected");
+        if (dbManager.getReplicaCount() > 0) {
+            // Sin réplicas al día las lecturas van al primario: informativo, no cambia el estado
+            health.put("replicas", Map.of(
+                "total", dbManager.getReplicaCount(),
+                "healthy", dbManager.getHealthyReplicaCount()));
+        }
         
         if (isLeader && scraperStats != null) {
             health.put("scraper", scraperStats);
@@ -157,7 +487,7 @@ public class WebServer {
         
         String response = objectMapper.writeValueAsString(health);
         
-        System.out.println("Health check - Response: " + response);
+        log.debug("Health check - Response: {}", response);
         
         exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
         exchange.getResponseHeaders().add("Content-Type", "application/json");
@@ -174,71 +504,98 @@ public class WebServer {
             return;
         }
         
-        System.out.println("PETICION DE PRECIOS ACTUALES");
-        System.out.println("Método: " + exchange.getRequestMethod());
-        System.out.println("URI: " + exchange.getRequestURI());
+        log.debug("PETICION DE PRECIOS ACTUALES");
+        log.debug("Método: {}", exchange.getRequestMethod());
+        log.debug("URI: {}", exchange.getRequestURI());
         
         try {
-            // Consulta SQL para obtener precios actuales
-            String sql = """
-                SELECT c.id, c.symbol, c.name, p.price, p.price_time 
-                FROM crypto c
-                INNER JOIN (
-                    SELECT crypto_id, MAX(price_time) as max_time
-                    FROM prices
-                    GROUP BY crypto_id
-                ) latest ON c.id = latest.crypto_id
-                INNER JOIN prices p ON p.crypto_id = latest.crypto_id 
-                    AND p.price_time = latest.max_time
-                ORDER BY c.id
-            """;
+            sendCachedJson(exchange, Map.of(), this::buildCurrentPricesResponse);
             
-            List<Map<String, Object>> prices = new ArrayList<>();
+        } catch (Exception e) {
+            log.error("ERROR en current prices: {}", e.getMessage(), e);
             
-            try (Connection conn = dbManager.getConnection();
-                 Statement stmt = conn.createStatement();
-                 ResultSet rs = stmt.executeQuery(sql)) {
+            sendError(exchange, e);
+        }
+    }
+    
+    private Map<String, Object> buildCurrentPricesResponse() throws Exception {
+        // Con el cache caliente no se toca la BD
+        List<Map<String, Object>> prices = latestPriceCache != null
+            ? latestPriceCache.getSnapshot()
+            : List.of();
+        
+        if (prices.isEmpty()) {
+            log.debug("Cache de precios frío, consultando BD");
+            prices = loadCurrentPricesFromDatabase();
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "success");
+        response.put("data", prices);
+        response.put("count", prices.size());
+        
+        log.debug("Total cryptos returned: {}", prices.size());
+        
+        return response;
+    }
+    
+    private List<Map<String, Object>> loadCurrentPricesFromDatabase() throws SQLException {
+        // Consulta SQL para obtener precios actuales
+        String sql = """
+            SELECT c.id, c.symbol, c.name, p.price, p.price_time 
+            FROM crypto c
+            INNER JOIN (
+                SELECT crypto_id, MAX(price_time) as max_time
+                FROM prices
+                GROUP BY crypto_id
+            ) latest ON c.id = latest.crypto_id
+            INNER JOIN prices p ON p.crypto_id = latest.crypto_id 
+                AND p.price_time = latest.max_time
+            ORDER BY c.id
+        """;
+        
+        List<Map<String, Object>> prices = new ArrayList<>();
+        List<PriceTick> ticks = new ArrayList<>();
+        
+        try (Connection conn = dbManager.getReadConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            
+            while (rs.next()) {
+                Map<String, Object> crypto = new HashMap<>();
+                crypto.put("id", rs.getInt("id"));
+                crypto.put("symbol", rs.getString("symbol"));
+                crypto.put("name", rs.getString("name"));
+                crypto.put("price", rs.getDouble("price"));
+                crypto.put("timestamp", rs.getTimestamp("price_time").toString());
+                prices.add(crypto);
                 
-                while (rs.next()) {
-                    Map<String, Object> crypto = new HashMap<>();
-                    crypto.put("id", rs.getInt("id"));
-                    crypto.put("symbol", rs.getString("symbol"));
-                    crypto.put("name", rs.getString("name"));
-                    crypto.put("price", rs.getDouble("price"));
-                    crypto.put("timestamp", rs.getTimestamp("price_time").toString());
-                    prices.add(crypto);
-                    
-                    // Print para debugging
-                    System.out.println("Crypto: " + rs.getString("symbol") + 
-                                     " - Price: $" + rs.getDouble("price") + 
-                                     " - Time: " + rs.getTimestamp("price_time"));
-                }
+                ticks.add(new PriceTick(rs.getInt("id"), rs.getDouble("price"),
+                                        rs.getTimestamp("price_time").getTime()));
             }
-            
-            Map<String, Object> response = new HashMap<>();
-            response.put("status", "success");
-            response.put("data", prices);
-            response.put("count", prices.size());
-            
-            String jsonResponse = objectMapper.writeValueAsString(response);
-            
-            System.out.println("Total cryptos returned: " + prices.size());
-            System.out.println("JSON Response: " + jsonResponse);
-            
-            // Configurar CORS
+        }
+        
+        // Calentar el cache para las siguientes peticiones
+        if (latestPriceCache != null) {
+            latestPriceCache.onPrices(ticks);
+        }
+        
+        return prices;
+    }
+    
+    private void handlePriceStreamRequest(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equalsIgnoreCase("get")) {
+            exchange.close();
+            return;
+        }
+        
+        if (priceStream == null || !priceStream.subscribe(exchange)) {
+            // Sin lugar para más suscriptores: el cliente puede seguir con polling
+            String errorJson = "{\"status\":\"error\",\"message\":\"Stream no disponible\"}";
             exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
             exchange.getResponseHeaders().add("Content-Type", "application/json");
-            
-            exchange.sendResponseHeaders(200, jsonResponse.getBytes().length);
-            sendResponse(jsonResponse.getBytes(), exchange);
-            
-        } catch (Exception e) {
-            System.err.println("ERROR en current prices: " + e.getMessage());
-            e.printStackTrace();
-            
-            String errorJson = "{\"status\":\"error\",\"message\":\"" + e.getMessage() + "\"}";
-            exchange.getResponseHeaders().add("Content-Type", "application/json");
-            exchange.sendResponseHeaders(500, errorJson.getBytes().length);
+            exchange.getResponseHeaders().add("Retry-After", "60");
+            exchange.sendResponseHeaders(503, errorJson.getBytes().length);
             sendResponse(errorJson.getBytes(), exchange);
         }
     }
@@ -249,311 +606,918 @@ public class WebServer {
             return;
         }
         
-        System.out.println("PETICION DE PRECIOS HISTÓRICOS");
-        System.out.println("Método: " + exchange.getRequestMethod());
-        System.out.println("URI: " + exchange.getRequestURI());
+        log.debug("PETICION DE PRECIOS HISTÓRICOS");
+        log.debug("Método: {}", exchange.getRequestMethod());
+        log.debug("URI: {}", exchange.getRequestURI());
         
         try {
-            // Parsear parámetros
             Map<String, String> params = parseQueryParams(exchange.getRequestURI().getQuery());
-            String cryptoId = params.get("crypto_id");
-            String hours = params.get("hours");
+            sendStreamedJson(exchange, params, prepareHistoricalPrices(params));
             
-            System.out.println("Parámetros recibidos - crypto_id: " + cryptoId + ", hours: " + hours);
+        } catch (Exception e) {
+            log.error("ERROR en historical prices: {}", e.getMessage(), e);
             
-            if (cryptoId == null) {
-                throw new IllegalArgumentException("Parámetro 'crypto_id' es requerido");
+            if (exchange.getResponseCode() != -1) {
+                // El 200 ya se envió: solo queda cortar la respuesta
+                exchange.close();
+                return;
             }
             
-            int hoursParam = hours != null ? Integer.parseInt(hours) : 24;
-            if (hoursParam < 1 || hoursParam > 24) {
-                hoursParam = 24;
+            sendError(exchange, e);
+        }
+    }
+    
+    private StreamedBody prepareHistoricalPrices(Map<String, String> params) {
+        // Parsear parámetros
+        String cryptoId = params.get("crypto_id");
+        String hours = params.get("hours");
+        
+        log.debug("Parámetros recibidos - crypto_id: {}, hours: {}", cryptoId, hours);
+        
+        if (cryptoId == null) {
+            throw new IllegalArgumentException("Parámetro 'crypto_id' es requerido");
+        }
+        
+        int hoursParam = hours != null ? Integer.parseInt(hours) : 24;
+        if (hoursParam < 1 || hoursParam > maxHistoryHours()) {
+            hoursParam = 24;
+        }
+        
+        int id = Integer.parseInt(cryptoId);
+        int window = hoursParam;
+        int points = parsePoints(params);
+        long from = parseWindowStart(params, window);
+        
+        RollupTier tier = chooseRollupTier(window, points);
+        if (tier != null) {
+            return new StreamedBody(gen -> writeRollupPrices(gen, id, window, from, points, tier), true);
+        }
+        boolean fromDatabase = timeSeriesStore == null || !timeSeriesStore.covers(id, from);
+        return new StreamedBody(gen -> writeHistoricalPrices(gen, id, window, from, points), fromDatabase);
+    }
+    
+    // Horas de historial disponibles: las del nivel de agregados que más guarda
+    private int maxHistoryHours() {
+        if (rollupRetention == null) {
+            return RAW_HISTORY_HOURS;
+        }
+        int max = RAW_HISTORY_HOURS;
+        for (int hours : rollupRetention.values()) {
+            max = Math.max(max, hours);
+        }
+        return max;
+    }
+    
+    /**
+     * Nivel de agregados para una ventana de más de 24 horas: el más grueso que
+     * la cubre y cuyo intervalo no pasa de hours / points (la resolución
+     * pedida), o el más fino que la cubre si ninguno alcanza esa resolución.
+     * null si la ventana se responde con ticks.
+     */
+    private RollupTier chooseRollupTier(int hours, int points) {
+        if (rollupRetention == null || hours <= RAW_HISTORY_HOURS) {
+            return null;
+        }
+        long step = hours * 3600_000L / (points > 0 ? points : DEFAULT_ROLLUP_POINTS);
+        RollupTier chosen = null;
+        for (RollupTier tier : RollupTier.values()) {
+            if (rollupRetention.get(tier) < hours) {
+                continue;
             }
+            if (chosen == null || tier.bucketMillis() <= step) {
+                chosen = tier;
+            }
+        }
+        return chosen;
+    }
+    
+    /**
+     * Inicio de la ventana: las últimas {@code hours} horas, o solo lo
+     * posterior al cursor si viene since=&lt;epoch-millis&gt; (el next_cursor de
+     * la respuesta anterior).
+     */
+    private long parseWindowStart(Map<String, String> params, int hours) {
+        long from = System.currentTimeMillis() - hours * 3600_000L;
+        String since = params.get("since");
+        if (since != null) {
+            from = Math.max(from, Long.parseLong(since) + 1);
+        }
+        return from;
+    }
+    
+    /**
+     * Rango de los parámetros from y to (epoch-millis, to exclusivo). Sin from
+     * se toman las {@code defaultHours} horas anteriores a to; sin to, hasta ahora.
+     */
+    private TimeRange parseTimeRange(Map<String, String> params, int defaultHours) {
+        String fromParam = params.get("from");
+        String toParam = params.get("to");
+        
+        long to = toParam != null ? Long.parseLong(toParam) : System.currentTimeMillis() + 1;
+        long from = fromParam != null ? Long.parseLong(fromParam) : to - defaultHours * 3600_000L;
+        
+        if (from >= to) {
+            throw new IllegalArgumentException("Parámetro 'from' debe ser anterior a 'to'");
+        }
+        if (to - from > MAX_RANGE_HOURS * 3600_000L) {
+            throw new IllegalArgumentException("El rango from/to no puede superar " + MAX_RANGE_HOURS + " horas");
+        }
+        return new TimeRange(from, to, toParam == null);
+    }
+    
+    private void writeHistoricalPrices(JsonGenerator gen, int id, int hoursParam, long from, int points) throws Exception {
+        // Rango sobre idx_crypto_time (crypto_id, price_time) con el inicio ya calculado;
+        // con DATE_SUB(NOW(), ...) el límite no podía venir del cursor
+        String sql = """
+            SELECT p.price, p.price_time, c.symbol, c.name
+            FROM prices p
+            INNER JOIN crypto c ON p.crypto_id = c.id
+            WHERE p.crypto_id = ?
+            AND p.price_time >= ?
+            ORDER BY p.price_time ASC
+        """;
+        
+        String symbol = "";
+        String name = "";
+        int count = 0;
+        // Último instante enviado; el cliente lo manda de vuelta como since
+        long nextCursor = from - 1;
+        
+        gen.writeStartObject();
+        gen.writeStringField("status", "success");
+        gen.writeNumberField("crypto_id", id);
+        gen.writeNumberField("hours", hoursParam);
+        gen.writeStringField("resolution", "raw");
+        gen.writeArrayFieldStart("data");
+        
+        if (timeSeriesStore != null && timeSeriesStore.covers(id, from) && points > 0) {
+            // LTTB necesita la ventana completa para repartir los buckets
+            SeriesSlice series = Downsampler.lttb(timeSeriesStore.range(id, from, Long.MAX_VALUE), points);
+            writePricePoints(gen, series);
+            count = series.size();
+            
+            if (count > 0) {
+                nextCursor = series.times()[count - 1];
+                symbol = dbManager.getCryptoSymbol(id);
+                name = dbManager.getCryptoName(id);
+            }
+        } else if (timeSeriesStore != null && timeSeriesStore.covers(id, from)) {
+            // Ventana cubierta por la serie en memoria, copiada por páginas
+            long cursor = from;
+            SeriesSlice page;
+            do {
+                page = timeSeriesStore.range(id, cursor, Long.MAX_VALUE, STREAM_PAGE_SIZE);
+                for (int i = 0; i < page.size(); i++) {
+                    gen.writeStartObject();
+                    writePricePoint(gen, page.prices()[i], page.times()[i]);
+                    gen.writeEndObject();
+                }
+                count += page.size();
+                if (!page.isEmpty()) {
+                    cursor = page.times()[page.size() - 1] + 1;
+                }
+            } while (page.size() == STREAM_PAGE_SIZE);
+            nextCursor = cursor - 1;
             
-            // Consulta SQL
-            String sql = """
-                SELECT p.price, p.price_time, c.symbol, c.name
-                FROM prices p
-                INNER JOIN crypto c ON p.crypto_id = c.id
-                WHERE p.crypto_id = ?
-                AND p.price_time >= DATE_SUB(NOW(), INTERVAL ? HOUR)
-                ORDER BY p.price_time ASC
-            """;
-            
-            List<Map<String, Object>> priceHistory = new ArrayList<>();
-            String symbol = "";
-            String name = "";
+            if (count > 0) {
+                symbol = dbManager.getCryptoSymbol(id);
+                name = dbManager.getCryptoName(id);
+            }
+        } else {
+            log.debug("Ejecutando query para crypto_id={} últimas {} horas", id, hoursParam);
             
-            try (Connection conn = dbManager.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-                
-                stmt.setInt(1, Integer.parseInt(cryptoId));
-                stmt.setInt(2, hoursParam);
+            try (Connection conn = dbManager.getReadConnection();
+                 PreparedStatement stmt = prepareStreamingStatement(conn, sql)) {
                 
-                System.out.println("Ejecutando query para crypto_id=" + cryptoId + " últimas " + hoursParam + " horas");
+                stmt.setInt(1, id);
+                stmt.setTimestamp(2, new Timestamp(from));
                 
+                Downsampler.SeriesBuilder sampled = points > 0 ? new Downsampler.SeriesBuilder() : null;
                 try (ResultSet rs = stmt.executeQuery()) {
-                    int count = 0;
                     while (rs.next()) {
                         if (symbol.isEmpty()) {
                             symbol = rs.getString("symbol");
                             name = rs.getString("name");
                         }
                         
-                        Map<String, Object> point = new HashMap<>();
-                        point.put("price", rs.getDouble("price"));
-                        point.put("timestamp", rs.getTimestamp("price_time").toString());
-                        priceHistory.add(point);
-                        count++;
-                        
-                        // Print cada 10 registros para no saturar
-                        if (count % 10 == 0) {
-                            System.out.println("Registro " + count + " - Price: $" + rs.getDouble("price"));
+                        double price = rs.getDouble("price");
+                        long time = rs.getTimestamp("price_time").getTime();
+                        nextCursor = time;
+                        if (sampled != null) {
+                            sampled.add(time, price);
+                            continue;
                         }
+                        
+                        gen.writeStartObject();
+                        writePricePoint(gen, price, time);
+                        gen.writeEndObject();
+                        count++;
                     }
-                    System.out.println("Total registros encontrados: " + count);
+                }
+                
+                if (sampled != null) {
+                    SeriesSlice series = Downsampler.lttb(sampled.build(), points);
+                    writePricePoints(gen, series);
+                    count = series.size();
                 }
             }
-            
-            Map<String, Object> response = new HashMap<>();
-            response.put("status", "success");
-            response.put("crypto_id", Integer.parseInt(cryptoId));
-            response.put("symbol", symbol);
-            response.put("name", name);
-            response.put("hours", hoursParam);
-            response.put("data", priceHistory);
-            response.put("count", priceHistory.size());
-            
-            String jsonResponse = objectMapper.writeValueAsString(response);
-            
-            System.out.println("Response size: " + priceHistory.size() + " registros");
-            System.out.println("Symbol: " + symbol + ", Name: " + name);
-            
-            // Configurar CORS
-            exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-            exchange.getResponseHeaders().add("Content-Type", "application/json");
-            
-            exchange.sendResponseHeaders(200, jsonResponse.getBytes().length);
-            sendResponse(jsonResponse.getBytes(), exchange);
-            
-        } catch (Exception e) {
-            System.err.println("ERROR en historical prices: " + e.getMessage());
-            e.printStackTrace();
-            
-            String errorJson = "{\"status\":\"error\",\"message\":\"" + e.getMessage() + "\"}";
-            exchange.getResponseHeaders().add("Content-Type", "application/json");
-            exchange.sendResponseHeaders(500, errorJson.getBytes().length);
-            sendResponse(errorJson.getBytes(), exchange);
         }
+        
+        gen.writeEndArray();
+        gen.writeStringField("symbol", symbol);
+        gen.writeStringField("name", name);
+        gen.writeNumberField("count", count);
+        gen.writeNumberField("next_cursor", nextCursor);
+        gen.writeEndObject();
+        
+        log.debug("Response size: {} registros", count);
+        log.debug("Symbol: {}, Name: {}", symbol, name);
     }
     
-    private void handleCryptosListRequest(HttpExchange exchange) throws IOException {
-        if (!exchange.getRequestMethod().equalsIgnoreCase("get")) {
-            exchange.close();
-            return;
-        }
+    /**
+     * Historial desde una tabla de agregados: un punto por bucket con el precio
+     * de cierre y el inicio del bucket como timestamp. El cursor es el inicio
+     * del último bucket.
+     */
+    private void writeRollupPrices(JsonGenerator gen, int id, int hoursParam, long from, int points,
+                                   RollupTier tier) throws Exception {
+        // Rango sobre la llave primaria (crypto_id, bucket_time)
+        String sql = """
+            SELECT bucket_time, close_price
+            FROM %s
+            WHERE crypto_id = ?
+            AND bucket_time >= ?
+            ORDER BY bucket_time ASC
+        """.formatted(tier.table());
         
-        System.out.println("PETICION DE LISTA DE CRIPTOMONEDAS");
+        int count = 0;
+        long nextCursor = from - 1;
         
-        try {
-            String sql = "SELECT id, symbol, name FROM crypto ORDER BY id";
+        gen.writeStartObject();
+        gen.writeStringField("status", "success");
+        gen.writeNumberField("crypto_id", id);
+        gen.writeNumberField("hours", hoursParam);
+        gen.writeStringField("resolution", tier.label());
+        gen.writeArrayFieldStart("data");
+        
+        log.debug("Ejecutando query sobre {} para crypto_id={} últimas {} horas", tier.table(), id, hoursParam);
+        
+        try (Connection conn = dbManager.getReadConnection();
+             PreparedStatement stmt = prepareStreamingStatement(conn, sql)) {
             
-            List<Map<String, Object>> cryptos = new ArrayList<>();
+            stmt.setInt(1, id);
+            stmt.setTimestamp(2, new Timestamp(from));
             
-            try (Connection conn = dbManager.getConnection();
-                 Statement stmt = conn.createStatement();
-                 ResultSet rs = stmt.executeQuery(sql)) {
-                
+            Downsampler.SeriesBuilder sampled = points > 0 ? new Downsampler.SeriesBuilder() : null;
+            try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    Map<String, Object> crypto = new HashMap<>();
-                    crypto.put("id", rs.getInt("id"));
-                    crypto.put("symbol", rs.getString("symbol"));
-                    crypto.put("name", rs.getString("name"));
-                    cryptos.add(crypto);
+                    double price = rs.getDouble("close_price");
+                    long time = rs.getTimestamp("bucket_time").getTime();
+                    nextCursor = time;
+                    if (sampled != null) {
+                        sampled.add(time, price);
+                        continue;
+                    }
                     
-                    System.out.println("Crypto: " + rs.getInt("id") + " - " + 
-                                     rs.getString("symbol") + " - " + 
-                                     rs.getString("name"));
+                    gen.writeStartObject();
+                    writePricePoint(gen, price, time);
+                    gen.writeEndObject();
+                    count++;
                 }
             }
             
-            Map<String, Object> response = new HashMap<>();
-            response.put("status", "success");
-            response.put("data", cryptos);
-            
-            String jsonResponse = objectMapper.writeValueAsString(response);
-            
-            System.out.println("Total cryptos: " + cryptos.size());
-            
-            // Configurar CORS
-            exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-            exchange.getResponseHeaders().add("Content-Type", "application/json");
-            
-            exchange.sendResponseHeaders(200, jsonResponse.getBytes().length);
-            sendResponse(jsonResponse.getBytes(), exchange);
-            
-        } catch (Exception e) {
-            System.err.println("ERROR en cryptos list: " + e.getMessage());
-            e.printStackTrace();
-            
-            String errorJson = "{\"status\":\"error\",\"message\":\"" + e.getMessage() + "\"}";
-            exchange.getResponseHeaders().add("Content-Type", "application/json");
-            exchange.sendResponseHeaders(500, errorJson.getBytes().length);
-            sendResponse(errorJson.getBytes(), exchange);
+            if (sampled != null) {
+                SeriesSlice series = Downsampler.lttb(sampled.build(), points);
+                writePricePoints(gen, series);
+                count = series.size();
+            }
         }
+        
+        gen.writeEndArray();
+        gen.writeStringField("symbol", count > 0 ? dbManager.getCryptoSymbol(id) : "");
+        gen.writeStringField("name", count > 0 ? dbManager.getCryptoName(id) : "");
+        gen.writeNumberField("count", count);
+        gen.writeNumberField("next_cursor", nextCursor);
+        gen.writeEndObject();
+        
+        log.debug("Response size: {} buckets de {}", count, tier.label());
     }
     
-    //nuevos metodos para las graficas
-    /////////////////////////////////////////////////////////////////////
-    private void handleAllCryptosRequest(HttpExchange exchange) throws IOException {
+    private void handleCandlesRequest(HttpExchange exchange) throws IOException {
         if (!exchange.getRequestMethod().equalsIgnoreCase("get")) {
             exchange.close();
             return;
         }
         
-        System.out.println("PETICION DE TODAS LAS CRIPTOMONEDAS");
-        System.out.println("URI: " + exchange.getRequestURI());
+        log.debug("PETICION DE VELAS OHLC");
+        log.debug("URI: {}", exchange.getRequestURI());
         
         try {
             Map<String, String> params = parseQueryParams(exchange.getRequestURI().getQuery());
-            String hours = params.get("hours");
-            
-            int hoursParam = hours != null ? Integer.parseInt(hours) : 24;
-            if (hoursParam < 1 || hoursParam > 24) {
-                hoursParam = 24;
-            }
-            
-            System.out.println("Obteniendo datos de todas las cryptos para últimas " + hoursParam + " horas");
+            sendCachedJson(exchange, params, () -> buildCandlesResponse(params));
             
-            // Consulta para obtener datos de las cryptos
-            String sql = """
-                SELECT c.id, c.symbol, c.name, p.price, p.price_time
-                FROM prices p
-                INNER JOIN crypto c ON p.crypto_id = c.id
-                WHERE p.price_time >= DATE_SUB(NOW(), INTERVAL ? HOUR)
-                ORDER BY c.id, p.price_time ASC
-            """;
-            
-            Map<String, List<Map<String, Object>>> cryptoData = new LinkedHashMap<>();
+        } catch (Exception e) {
+            log.error("ERROR en candles: {}", e.getMessage(), e);
             
-            try (Connection conn = dbManager.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+            sendError(exchange, e);
+        }
+    }
+    
+    private Map<String, Object> buildCandlesResponse(Map<String, String> params) throws Exception {
+        String cryptoId = params.get("crypto_id");
+        String interval = params.getOrDefault("interval", "1m");
+        String hours = params.get("hours");
+        
+        if (cryptoId == null) {
+            throw new IllegalArgumentException("Parámetro 'crypto_id' es requerido");
+        }
+        
+        int hoursParam = hours != null ? Integer.parseInt(hours) : 24;
+        if (hoursParam < 1 || hoursParam > 24) {
+            hoursParam = 24;
+        }
+        
+        int id = Integer.parseInt(cryptoId);
+        CandleAggregator aggregator = new CandleAggregator(CandleAggregator.parseInterval(interval));
+        long from = System.currentTimeMillis() - hoursParam * 3600_000L;
+        
+        log.debug("Velas de {} para crypto_id={} últimas {} horas", interval, id, hoursParam);
+        
+        // El mismo inicio que el camino en memoria, calculado con el reloj de la
+        // aplicación y no con NOW() de MySQL
+        String sql = """
+            SELECT p.price, p.price_time
+            FROM prices p
+            WHERE p.crypto_id = ?
+            AND p.price_time >= ?
+            ORDER BY p.price_time ASC
+        """;
+        
+        if (timeSeriesStore != null && timeSeriesStore.covers(id, from)) {
+            long cursor = from;
+            SeriesSlice page;
+            do {
+                page = timeSeriesStore.range(id, cursor, Long.MAX_VALUE, STREAM_PAGE_SIZE);
+                for (int i = 0; i < page.size(); i++) {
+                    aggregator.add(page.times()[i], page.prices()[i]);
+                }
+                if (!page.isEmpty()) {
+                    cursor = page.times()[page.size() - 1] + 1;
+                }
+            } while (page.size() == STREAM_PAGE_SIZE);
+        } else {
+            try (Connection conn = dbManager.getReadConnection();
+                 PreparedStatement stmt = prepareStreamingStatement(conn, sql)) {
                 
-                stmt.setInt(1, hoursParam);
+                stmt.setInt(1, id);
+                stmt.setTimestamp(2, new Timestamp(from));
                 
                 try (ResultSet rs = stmt.executeQuery()) {
                     while (rs.next()) {
-                        String symbol = rs.getString("symbol");
-                        
-                        if (!cryptoData.containsKey(symbol)) {
-                            cryptoData.put(symbol, new ArrayList<>());
-                        }
-                        
-                        Map<String, Object> point = new HashMap<>();
-                        point.put("crypto_id", rs.getInt("id"));
-                        point.put("symbol", symbol);
-                        point.put("name", rs.getString("name"));
-                        point.put("price", rs.getDouble("price"));
-                        point.put("timestamp", rs.getTimestamp("price_time").toString());
-                        
-                        cryptoData.get(symbol).add(point);
+                        aggregator.add(rs.getTimestamp("price_time").getTime(), rs.getDouble("price"));
                     }
                 }
             }
+        }
+        
+        List<Map<String, Object>> data = new ArrayList<>();
+        for (CandleAggregator.Candle candle : aggregator.finish()) {
+            Map<String, Object> point = new LinkedHashMap<>();
+            point.put("timestamp", new Timestamp(candle.start()).toString());
+            point.put("open", candle.open());
+            point.put("high", candle.high());
+            point.put("low", candle.low());
+            point.put("close", candle.close());
+            point.put("count", candle.count());
+            data.add(point);
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "success");
+        response.put("crypto_id", id);
+        response.put("symbol", data.isEmpty() ? "" : dbManager.getCryptoSymbol(id));
+        response.put("name", data.isEmpty() ? "" : dbManager.getCryptoName(id));
+        response.put("interval", interval);
+        response.put("hours", hoursParam);
+        response.put("data", data);
+        response.put("count", data.size());
+        
+        log.debug("Velas generadas: {}", data.size());
+        
+        return response;
+    }
+    
+    private void handleIndicatorsRequest(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equalsIgnoreCase("get")) {
+            exchange.close();
+            return;
+        }
+        
+        log.debug("PETICION DE INDICADORES");
+        log.debug("URI: {}", exchange.getRequestURI());
+        
+        try {
+            Map<String, String> params = parseQueryParams(exchange.getRequestURI().getQuery());
+            sendStreamedJson(exchange, params, prepareIndicators(params));
             
-            Map<String, Object> response = new HashMap<>();
-            response.put("status", "success");
-            response.put("hours", hoursParam);
-            response.put("data", cryptoData);
-            response.put("crypto_count", cryptoData.size());
+        } catch (Exception e) {
+            log.error("ERROR en indicators: {}", e.getMessage(), e);
             
-            String jsonResponse = objectMapper.writeValueAsString(response);
+            if (exchange.getResponseCode() != -1) {
+                // El 200 ya se envió: solo queda cortar la respuesta
+                exchange.close();
+                return;
+            }
             
-            System.out.println("Cryptos encontradas: " + cryptoData.size());
+            sendError(exchange, e);
+        }
+    }
+    
+    private StreamedBody prepareIndicators(Map<String, String> params) {
+        String cryptoId = params.get("crypto_id");
+        String hours = params.get("hours");
+        
+        if (cryptoId == null) {
+            throw new IllegalArgumentException("Parámetro 'crypto_id' es requerido");
+        }
+        
+        int window = Integer.parseInt(params.getOrDefault("window", "20"));
+        if (window < 2 || window > MAX_INDICATOR_WINDOW) {
+            throw new IllegalArgumentException("Parámetro 'window' debe estar entre 2 y " + MAX_INDICATOR_WINDOW);
+        }
+        double k = Double.parseDouble(params.getOrDefault("k", "2"));
+        
+        int hoursParam = hours != null ? Integer.parseInt(hours) : 24;
+        if (hoursParam < 1 || hoursParam > 24) {
+            hoursParam = 24;
+        }
+        
+        int id = Integer.parseInt(cryptoId);
+        int windowHours = hoursParam;
+        long from = System.currentTimeMillis() - windowHours * 3600_000L;
+        boolean fromDatabase = (indicatorEngine == null || !indicatorEngine.covers(id, window, from))
+                && (timeSeriesStore == null || !timeSeriesStore.covers(id, from));
+        return new StreamedBody(gen -> writeIndicators(gen, id, window, k, windowHours, from), fromDatabase);
+    }
+    
+    private void writeIndicators(JsonGenerator gen, int id, int window, double k,
+                                 int hoursParam, long from) throws Exception {
+        IndicatorSeries series;
+        
+        if (indicatorEngine != null && indicatorEngine.covers(id, window, from)) {
+            // Ventana configurada: ya se calculó tick por tick
+            series = indicatorEngine.range(id, window, from);
+        } else if (timeSeriesStore != null && timeSeriesStore.covers(id, from)) {
+            // Toda la serie retenida, para que la ventana ya esté llena al llegar a from
+            series = IndicatorSeries.compute(timeSeriesStore.range(id, Long.MIN_VALUE, Long.MAX_VALUE), window, from);
+        } else {
+            log.debug("Indicadores de crypto_id={} desde MySQL", id);
             
-            exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            String sql = """
+                SELECT p.price, p.price_time
+                FROM prices p
+                WHERE p.crypto_id = ?
+                AND p.price_time >= ?
+                ORDER BY p.price_time ASC
+            """;
             
-            exchange.sendResponseHeaders(200, jsonResponse.getBytes().length);
-            sendResponse(jsonResponse.getBytes(), exchange);
+            Downsampler.SeriesBuilder builder = new Downsampler.SeriesBuilder();
+            try (Connection conn = dbManager.getReadConnection();
+                 PreparedStatement stmt = prepareStreamingStatement(conn, sql)) {
+                
+                stmt.setInt(1, id);
+                stmt.setTimestamp(2, new Timestamp(from));
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        builder.add(rs.getTimestamp("price_time").getTime(), rs.getDouble("price"));
+                    }
+                }
+            }
+            series = IndicatorSeries.compute(builder.build(), window, from);
+        }
+        
+        gen.writeStartObject();
+        gen.writeStringField("status", "success");
+        gen.writeNumberField("crypto_id", id);
+        gen.writeStringField("symbol", series.isEmpty() ? "" : dbManager.getCryptoSymbol(id));
+        gen.writeStringField("name", series.isEmpty() ? "" : dbManager.getCryptoName(id));
+        gen.writeNumberField("window", window);
+        gen.writeNumberField("k", k);
+        gen.writeNumberField("hours", hoursParam);
+        
+        gen.writeArrayFieldStart("data");
+        for (int i = 0; i < series.size(); i++) {
+            writeIndicatorPoint(gen, series, i, k);
+        }
+        gen.writeEndArray();
+        gen.writeNumberField("count", series.size());
+        
+        if (!series.isEmpty()) {
+            gen.writeFieldName("latest");
+            writeIndicatorPoint(gen, series, series.size() - 1, k);
+        }
+        gen.writeEndObject();
+        
+        log.debug("Indicadores generados: {}", series.size());
+    }
+    
+    private void writeIndicatorPoint(JsonGenerator gen, IndicatorSeries series, int i, double k) throws IOException {
+        double sma = series.sma()[i];
+        double std = series.std()[i];
+        
+        gen.writeStartObject();
+        gen.writeStringField("timestamp", new Timestamp(series.times()[i]).toString());
+        gen.writeNumberField("sma", sma);
+        gen.writeNumberField("ema", series.ema()[i]);
+        gen.writeNumberField("std", std);
+        gen.writeNumberField("upper", sma + k * std);
+        gen.writeNumberField("lower", sma - k * std);
+        gen.writeNumberField("min", series.min()[i]);
+        gen.writeNumberField("max", series.max()[i]);
+        gen.writeEndObject();
+    }
+    
+    private void handleCryptosListRequest(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equalsIgnoreCase("get")) {
+            exchange.close();
+            return;
+        }
+        
+        log.debug("PETICION DE LISTA DE CRIPTOMONEDAS");
+        
+        try {
+            sendCachedJson(exchange, Map.of(), this::buildCryptosListResponse);
             
         } catch (Exception e) {
-            System.err.println("ERROR en all cryptos: " + e.getMessage());
-            e.printStackTrace();
+            log.error("ERROR en cryptos list: {}", e.getMessage(), e);
             
-            String errorJson = "{\"status\":\"error\",\"message\":\"" + e.getMessage() + "\"}";
-            exchange.getResponseHeaders().add("Content-Type", "application/json");
-            exchange.sendResponseHeaders(500, errorJson.getBytes().length);
-            sendResponse(errorJson.getBytes(), exchange);
+            sendError(exchange, e);
         }
     }
-    ////////////////////////////////////////////////////////////////////////////////////////////
-    private void handleCompareRequest(HttpExchange exchange) throws IOException {
+    
+    private Map<String, Object> buildCryptosListResponse() throws Exception {
+        String sql = "SELECT id, symbol, name FROM crypto ORDER BY id";
+        
+        List<Map<String, Object>> cryptos = new ArrayList<>();
+        
+        try (Connection conn = dbManager.getReadConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            
+            while (rs.next()) {
+                Map<String, Object> crypto = new HashMap<>();
+                crypto.put("id", rs.getInt("id"));
+                crypto.put("symbol", rs.getString("symbol"));
+                crypto.put("name", rs.getString("name"));
+                cryptos.add(crypto);
+                
+                log.debug("Crypto: {} - {} - {}", rs.getInt("id"), rs.getString("symbol"), rs.getString("name"));
+            }
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "success");
+        response.put("data", cryptos);
+        
+        log.debug("Total cryptos: {}", cryptos.size());
+        
+        return response;
+    }
+    
+    //nuevos metodos para las graficas
+    /////////////////////////////////////////////////////////////////////
+    private void handleAllCryptosRequest(HttpExchange exchange) throws IOException {
         if (!exchange.getRequestMethod().equalsIgnoreCase("get")) {
             exchange.close();
             return;
         }
         
-        System.out.println("PETICION DE COMPARACION DE CRIPTOMONEDAS");
-        System.out.println("URI: " + exchange.getRequestURI());
+        log.debug("PETICION DE TODAS LAS CRIPTOMONEDAS");
+        log.debug("URI: {}", exchange.getRequestURI());
         
         try {
             Map<String, String> params = parseQueryParams(exchange.getRequestURI().getQuery());
-            String cryptoIdsParam = params.get("crypto_ids");
-            String startHourParam = params.get("start_hour");
-            String endHourParam = params.get("end_hour");
+            sendStreamedJson(exchange, params, prepareAllCryptos(params));
             
-            if (cryptoIdsParam == null) {
-                throw new IllegalArgumentException("Parámetro 'crypto_ids' es requerido (ej: 1,2,3)");
-            }
+        } catch (Exception e) {
+            log.error("ERROR en all cryptos: {}", e.getMessage(), e);
             
-            // muestra las IDs de cryptos
-            String[] cryptoIdsArray = cryptoIdsParam.split(",");
-            List<Integer> cryptoIds = new ArrayList<>();
-            for (String id : cryptoIdsArray) {
-                cryptoIds.add(Integer.parseInt(id.trim()));
+            if (exchange.getResponseCode() != -1) {
+                // El 200 ya se envió: solo queda cortar la respuesta
+                exchange.close();
+                return;
             }
             
-            // muestra las horas
-            int startHour = startHourParam != null ? Integer.parseInt(startHourParam) : 0;
-            int endHour = endHourParam != null ? Integer.parseInt(endHourParam) : 24;
-            
-            System.out.println("Comparando cryptos: " + cryptoIds + " desde hora " + startHour + " hasta " + endHour);
-            
-            // Crear placeholders para la consulta IN
-            String placeholders = String.join(",", Collections.nCopies(cryptoIds.size(), "?"));
-            
-            String sql = """
-                SELECT c.id, c.symbol, c.name, p.price, p.price_time,
-                       HOUR(p.price_time) as price_hour
-                FROM prices p
-                INNER JOIN crypto c ON p.crypto_id = c.id
-                WHERE p.crypto_id IN (%s)
-                AND HOUR(p.price_time) >= ? AND HOUR(p.price_time) <= ?
-                ORDER BY c.id, p.price_time ASC
-            """.formatted(placeholders);
+            sendError(exchange, e);
+        }
+    }
+    
+    private StreamedBody prepareAllCryptos(Map<String, String> params) {
+        String hours = params.get("hours");
+        
+        int hoursParam = hours != null ? Integer.parseInt(hours) : 24;
+        if (hoursParam < 1 || hoursParam > 24) {
+            hoursParam = 24;
+        }
+        
+        int window = hoursParam;
+        int points = parsePoints(params);
+        long from = parseWindowStart(params, window);
+        boolean fromDatabase = timeSeriesStore == null || !timeSeriesStore.coversAll(from);
+        return new StreamedBody(gen -> writeAllCryptos(gen, window, from, points), fromDatabase);
+    }
+    
+    private void writeAllCryptos(JsonGenerator gen, int hoursParam, long from, int points) throws Exception {
+        log.debug("Obteniendo datos de todas las cryptos para últimas {} horas", hoursParam);
+        
+        // STRAIGHT_JOIN recorre crypto en orden de id y por cada una hace un
+        // rango sobre idx_crypto_time, así las filas ya salen agrupadas y ordenadas
+        String sql = """
+            SELECT STRAIGHT_JOIN c.id, c.symbol, c.name, p.price, p.price_time
+            FROM crypto c
+            INNER JOIN prices p ON p.crypto_id = c.id
+            AND p.price_time >= ?
+            ORDER BY c.id, p.price_time ASC
+        """;
+        
+        int cryptoCount = 0;
+        // Tick más reciente enviado de cualquier cripto
+        long nextCursor = from - 1;
+        
+        gen.writeStartObject();
+        gen.writeStringField("status", "success");
+        gen.writeNumberField("hours", hoursParam);
+        gen.writeObjectFieldStart("data");
+        
+        if (timeSeriesStore != null && timeSeriesStore.coversAll(from)) {
+            for (int id : timeSeriesStore.cryptoIds()) {
+                String symbol = dbManager.getCryptoSymbol(id);
+                String name = dbManager.getCryptoName(id);
+                boolean started = false;
+                
+                if (points > 0) {
+                    SeriesSlice series = Downsampler.lttb(timeSeriesStore.range(id, from, Long.MAX_VALUE), points);
+                    if (!series.isEmpty()) {
+                        nextCursor = Math.max(nextCursor, series.times()[series.size() - 1]);
+                        gen.writeArrayFieldStart(symbol);
+                        writeCryptoPoints(gen, id, symbol, name, series);
+                        gen.writeEndArray();
+                        cryptoCount++;
+                    }
+                    continue;
+                }
+                
+                long cursor = from;
+                SeriesSlice page;
+                do {
+                    page = timeSeriesStore.range(id, cursor, Long.MAX_VALUE, STREAM_PAGE_SIZE);
+                    if (!page.isEmpty() && !started) {
+                        gen.writeArrayFieldStart(symbol);
+                        started = true;
+                        cryptoCount++;
+                    }
+                    for (int i = 0; i < page.size(); i++) {
+                        writeCryptoPoint(gen, id, symbol, name, page.prices()[i], page.times()[i]);
+                    }
+                    if (!page.isEmpty()) {
+                        cursor = page.times()[page.size() - 1] + 1;
+                    }
+                } while (page.size() == STREAM_PAGE_SIZE);
+                nextCursor = Math.max(nextCursor, cursor - 1);
+                
+                if (started) {
+                    gen.writeEndArray();
+                }
+            }
+        } else {
+            try (Connection conn = dbManager.getReadConnection();
+                 PreparedStatement stmt = prepareStreamingStatement(conn, sql)) {
+                
+                stmt.setTimestamp(1, new Timestamp(from));
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    Downsampler.SeriesBuilder sampled = points > 0 ? new Downsampler.SeriesBuilder() : null;
+                    String currentSymbol = null;
+                    int currentId = 0;
+                    String currentName = null;
+                    while (rs.next()) {
+                        String symbol = rs.getString("symbol");
+                        
+                        // Las filas vienen agrupadas por cripto: abrir un arreglo por grupo
+                        if (!symbol.equals(currentSymbol)) {
+                            if (currentSymbol != null) {
+                                flushSampled(gen, sampled, points, currentId, currentSymbol, currentName);
+                                gen.writeEndArray();
+                            }
+                            gen.writeArrayFieldStart(symbol);
+                            currentSymbol = symbol;
+                            currentId = rs.getInt("id");
+                            currentName = rs.getString("name");
+                            cryptoCount++;
+                        }
+                        
+                        double price = rs.getDouble("price");
+                        long time = rs.getTimestamp("price_time").getTime();
+                        nextCursor = Math.max(nextCursor, time);
+                        if (sampled != null) {
+                            sampled.add(time, price);
+                        } else {
+                            writeCryptoPoint(gen, currentId, symbol, currentName, price, time);
+                        }
+                    }
+                    if (currentSymbol != null) {
+                        flushSampled(gen, sampled, points, currentId, currentSymbol, currentName);
+                        gen.writeEndArray();
+                    }
+                }
+            }
+        }
+        
+        gen.writeEndObject();
+        gen.writeNumberField("crypto_count", cryptoCount);
+        gen.writeNumberField("next_cursor", nextCursor);
+        gen.writeEndObject();
+        
+        log.debug("Cryptos encontradas: {}", cryptoCount);
+    }
+    
+    /** Escribe la serie acumulada de una cripto ya reducida con LTTB y vacía el acumulador. */
+    private void flushSampled(JsonGenerator gen, Downsampler.SeriesBuilder sampled, int points,
+                              int id, String symbol, String name) throws IOException {
+        if (sampled == null) {
+            return;
+        }
+        writeCryptoPoints(gen, id, symbol, name, Downsampler.lttb(sampled.build(), points));
+        sampled.clear();
+    }
+    
+    private void writeCryptoPoints(JsonGenerator gen, int id, String symbol, String name,
+                                   SeriesSlice series) throws IOException {
+        for (int i = 0; i < series.size(); i++) {
+            writeCryptoPoint(gen, id, symbol, name, series.prices()[i], series.times()[i]);
+        }
+    }
+    
+    private void writePricePoints(JsonGenerator gen, SeriesSlice series) throws IOException {
+        for (int i = 0; i < series.size(); i++) {
+            gen.writeStartObject();
+            writePricePoint(gen, series.prices()[i], series.times()[i]);
+            gen.writeEndObject();
+        }
+    }
+    
+    private void writeCryptoPoint(JsonGenerator gen, int id, String symbol, String name,
+                                  double price, long time) throws IOException {
+        gen.writeStartObject();
+        gen.writeNumberField("crypto_id", id);
+        gen.writeStringField("symbol", symbol);
+        gen.writeStringField("name", name);
+        writePricePoint(gen, price, time);
+        gen.writeEndObject();
+    }
+    
+    private void writePricePoint(JsonGenerator gen, double price, long time) throws IOException {
+        gen.writeNumberField("price", price);
+        gen.writeStringField("timestamp", new Timestamp(time).toString());
+    }
+    
+    /**
+     * Parámetro opcional points=N: máximo de puntos por serie para las gráficas.
+     * 0 (o ausente) manda todos los ticks.
+     */
+    private int parsePoints(Map<String, String> params) {
+        String points = params.get("points");
+        if (points == null) {
+            return 0;
+        }
+        int pointsParam = Integer.parseInt(points);
+        return pointsParam < Downsampler.MIN_POINTS ? 0 : pointsParam;
+    }
+    
+    /**
+     * Statement de solo lectura que MySQL entrega fila por fila en lugar de
+     * cargar todo el ResultSet en memoria.
+     */
+    private PreparedStatement prepareStreamingStatement(Connection conn, String sql) throws SQLException {
+        PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        stmt.setFetchSize(Integer.MIN_VALUE);
+        return stmt;
+    }
+    ////////////////////////////////////////////////////////////////////////////////////////////
+    private void handleCompareRequest(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equalsIgnoreCase("get")) {
+            exchange.close();
+            return;
+        }
+        
+        log.debug("PETICION DE COMPARACION DE CRIPTOMONEDAS");
+        log.debug("URI: {}", exchange.getRequestURI());
+        
+        try {
+            Map<String, String> params = parseQueryParams(exchange.getRequestURI().getQuery());
+            sendCachedJson(exchange, params, () -> buildCompareResponse(params));
             
-            Map<String, List<Map<String, Object>>> compareData = new LinkedHashMap<>();
+        } catch (Exception e) {
+            log.error("ERROR en compare: {}", e.getMessage(), e);
             
-            try (Connection conn = dbManager.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+            sendError(exchange, e);
+        }
+    }
+    
+    private Map<String, Object> buildCompareResponse(Map<String, String> params) throws Exception {
+        String cryptoIdsParam = params.get("crypto_ids");
+        String startHourParam = params.get("start_hour");
+        String endHourParam = params.get("end_hour");
+        
+        if (cryptoIdsParam == null) {
+            throw new IllegalArgumentException("Parámetro 'crypto_ids' es requerido (ej: 1,2,3)");
+        }
+        
+        // muestra las IDs de cryptos
+        String[] cryptoIdsArray = cryptoIdsParam.split(",");
+        List<Integer> cryptoIds = new ArrayList<>();
+        for (String id : cryptoIdsArray) {
+            cryptoIds.add(Integer.parseInt(id.trim()));
+        }
+        
+        // muestra las horas
+        int startHour = startHourParam != null ? Integer.parseInt(startHourParam) : 0;
+        int endHour = endHourParam != null ? Integer.parseInt(endHourParam) : 24;
+        
+        // Sin from/to se comparan las horas que guarda la serie en memoria
+        TimeRange range = parseTimeRange(params, retentionHours);
+        
+        log.debug("Comparando cryptos: {} desde hora {} hasta {} entre {} y {}",
+                cryptoIds, startHour, endHour, range.from(), range.to());
+        
+        // Crear placeholders para la consulta IN
+        String placeholders = String.join(",", Collections.nCopies(cryptoIds.size(), "?"));
+        
+        // El rango de price_time es un range scan por cripto sobre idx_crypto_time;
+        // HOUR() solo filtra las filas que ya quedaron dentro del rango
+        String sql = """
+            SELECT c.id, c.symbol, c.name, p.price, p.price_time,
+                   HOUR(p.price_time) as price_hour
+            FROM prices p
+            INNER JOIN crypto c ON p.crypto_id = c.id
+            WHERE p.crypto_id IN (%s)
+            AND p.price_time >= ? AND p.price_time < ?
+            AND HOUR(p.price_time) >= ? AND HOUR(p.price_time) <= ?
+            ORDER BY c.id, p.price_time ASC
+        """.formatted(placeholders);
+        
+        Map<String, List<Map<String, Object>>> compareData = new LinkedHashMap<>();
+        
+        if (timeSeriesStore != null && timeSeriesStore.coversAll(range.from())) {
+            for (int id : cryptoIds.stream().sorted().distinct().toList()) {
+                SeriesSlice slice = timeSeriesStore.range(id, range.from(), range.to());
+                String symbol = dbManager.getCryptoSymbol(id);
+                String name = dbManager.getCryptoName(id);
+                List<Map<String, Object>> points = new ArrayList<>();
                 
+                for (int i = 0; i < slice.size(); i++) {
+                    int hour = TimeSeriesStore.hourOfDay(slice.times()[i]);
+                    if (hour < startHour || hour > endHour) {
+                        continue;
+                    }
+                    
+                    Map<String, Object> point = new HashMap<>();
+                    point.put("crypto_id", id);
+                    point.put("symbol", symbol);
+                    point.put("name", name);
+                    point.put("price", slice.prices()[i]);
+                    point.put("timestamp", new Timestamp(slice.times()[i]).toString());
+                    point.put("hour", hour);
+                    points.add(point);
+                }
+                
+                if (!points.isEmpty()) {
+                    compareData.put(symbol, points);
+                }
+            }
+        } else {
+            try (Connection conn = dbManager.getReadConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
                 // Establecer parámetros crypto_ids
                 for (int i = 0; i < cryptoIds.size(); i++) {
                     stmt.setInt(i + 1, cryptoIds.get(i));
                 }
+                stmt.setTimestamp(cryptoIds.size() + 1, new Timestamp(range.from()));
+                stmt.setTimestamp(cryptoIds.size() + 2, new Timestamp(range.to()));
                 // Establecer parámetros de horas
-                stmt.setInt(cryptoIds.size() + 1, startHour);
-                stmt.setInt(cryptoIds.size() + 2, endHour);
-                
+                stmt.setInt(cryptoIds.size() + 3, startHour);
+                stmt.setInt(cryptoIds.size() + 4, endHour);
+            
                 try (ResultSet rs = stmt.executeQuery()) {
                     while (rs.next()) {
                         String symbol = rs.getString("symbol");
-                        
+                    
                         if (!compareData.containsKey(symbol)) {
                             compareData.put(symbol, new ArrayList<>());
                         }
-                        
+                    
                         Map<String, Object> point = new HashMap<>();
                         point.put("crypto_id", rs.getInt("id"));
                         point.put("symbol", symbol);
@@ -561,41 +1525,142 @@ public class WebServer {
                         point.put("price", rs.getDouble("price"));
                         point.put("timestamp", rs.getTimestamp("price_time").toString());
                         point.put("hour", rs.getInt("price_hour"));
-                        
+                    
                         compareData.get(symbol).add(point);
                     }
                 }
             }
-            
-            Map<String, Object> response = new HashMap<>();
-            response.put("status", "success");
-            response.put("crypto_ids", cryptoIds);
-            response.put("start_hour", startHour);
-            response.put("end_hour", endHour);
-            response.put("data", compareData);
-            response.put("crypto_count", compareData.size());
-            
-            String jsonResponse = objectMapper.writeValueAsString(response);
-            
-            System.out.println("Cryptos comparadas: " + compareData.size());
-            
-            // Configurar CORS
-            exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-            exchange.getResponseHeaders().add("Content-Type", "application/json");
-            
-            exchange.sendResponseHeaders(200, jsonResponse.getBytes().length);
-            sendResponse(jsonResponse.getBytes(), exchange);
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "success");
+        response.put("crypto_ids", cryptoIds);
+        response.put("start_hour", startHour);
+        response.put("end_hour", endHour);
+        response.put("from", range.from());
+        response.put("to", range.to());
+        response.put("data", compareData);
+        response.put("crypto_count", compareData.size());
+        
+        log.debug("Cryptos comparadas: {}", compareData.size());
+        
+        return response;
+    }
+    private void handleCorrelationRequest(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equalsIgnoreCase("get")) {
+            exchange.close();
+            return;
+        }
+        
+        log.debug("PETICION DE CORRELACION");
+        log.debug("URI: {}", exchange.getRequestURI());
+        
+        try {
+            Map<String, String> params = parseQueryParams(exchange.getRequestURI().getQuery());
+            sendCachedJson(exchange, params, () -> buildCorrelationResponse(params));
             
         } catch (Exception e) {
-            System.err.println("ERROR en compare: " + e.getMessage());
-            e.printStackTrace();
+            log.error("ERROR en correlation: {}", e.getMessage(), e);
             
-            String errorJson = "{\"status\":\"error\",\"message\":\"" + e.getMessage() + "\"}";
-            exchange.getResponseHeaders().add("Content-Type", "application/json");
-            exchange.sendResponseHeaders(500, errorJson.getBytes().length);
-            sendResponse(errorJson.getBytes(), exchange);
+            sendError(exchange, e);
         }
     }
+    
+    private Map<String, Object> buildCorrelationResponse(Map<String, String> params) throws Exception {
+        String hours = params.get("hours");
+        String interval = params.getOrDefault("interval", "5m");
+        
+        int hoursParam = hours != null ? Integer.parseInt(hours) : 24;
+        if (hoursParam < 1 || hoursParam > 24) {
+            hoursParam = 24;
+        }
+        
+        // Malla común alineada al intervalo; un paso antes para tener precio en el primer punto
+        long step = CandleAggregator.parseInterval(interval);
+        long now = System.currentTimeMillis();
+        long from = Math.floorDiv(now - hoursParam * 3600_000L, step) * step;
+        long fetchFrom = from - step;
+        
+        log.debug("Correlación de retornos cada {} de las últimas {} horas", interval, hoursParam);
+        
+        List<Integer> ids = new ArrayList<>();
+        List<SeriesSlice> series = new ArrayList<>();
+        
+        if (timeSeriesStore != null && timeSeriesStore.coversAll(fetchFrom)) {
+            for (int id : timeSeriesStore.cryptoIds()) {
+                ids.add(id);
+                series.add(timeSeriesStore.range(id, fetchFrom, Long.MAX_VALUE));
+            }
+        } else {
+            String sql = """
+                SELECT STRAIGHT_JOIN c.id, p.price, p.price_time
+                FROM crypto c
+                INNER JOIN prices p ON p.crypto_id = c.id
+                AND p.price_time >= ?
+                ORDER BY c.id, p.price_time ASC
+            """;
+            
+            try (Connection conn = dbManager.getReadConnection();
+                 PreparedStatement stmt = prepareStreamingStatement(conn, sql)) {
+                
+                stmt.setTimestamp(1, new Timestamp(fetchFrom));
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    Downsampler.SeriesBuilder builder = null;
+                    while (rs.next()) {
+                        int id = rs.getInt("id");
+                        if (ids.isEmpty() || ids.get(ids.size() - 1) != id) {
+                            if (builder != null) {
+                                series.add(builder.build());
+                            }
+                            ids.add(id);
+                            builder = new Downsampler.SeriesBuilder();
+                        }
+                        builder.add(rs.getTimestamp("price_time").getTime(), rs.getDouble("price"));
+                    }
+                    if (builder != null) {
+                        series.add(builder.build());
+                    }
+                }
+            }
+        }
+        
+        // Una sola matriz de retornos alineados para todos los pares
+        double[][] returns = CorrelationMatrix.alignedReturns(series, from, now, step);
+        double[][] matrix = CorrelationMatrix.pearson(returns);
+        
+        List<Map<String, Object>> cryptos = new ArrayList<>();
+        for (int id : ids) {
+            Map<String, Object> crypto = new LinkedHashMap<>();
+            crypto.put("crypto_id", id);
+            crypto.put("symbol", dbManager.getCryptoSymbol(id));
+            crypto.put("name", dbManager.getCryptoName(id));
+            cryptos.add(crypto);
+        }
+        
+        List<List<Double>> rows = new ArrayList<>(matrix.length);
+        for (double[] row : matrix) {
+            List<Double> values = new ArrayList<>(row.length);
+            for (double r : row) {
+                // Sin datos suficientes va null: NaN no es JSON válido
+                values.add(Double.isNaN(r) ? null : Math.round(r * 10000.0) / 10000.0);
+            }
+            rows.add(values);
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "success");
+        response.put("hours", hoursParam);
+        response.put("interval", interval);
+        response.put("returns", returns.length > 0 ? returns[0].length : 0);
+        response.put("cryptos", cryptos);
+        response.put("matrix", rows);
+        response.put("crypto_count", cryptos.size());
+        
+        log.debug("Matriz de correlación de {} cryptos", cryptos.size());
+        
+        return response;
+    }
         ////////////////////////////////////////////////////////////////////////////////////
     
         private void handleRegressionRequest(HttpExchange exchange) throws IOException {
@@ -604,105 +1669,167 @@ public class WebServer {
             return;
         }
         
-        System.out.println("PETICION DE REGRESION LINEAL");
-        System.out.println("URI: " + exchange.getRequestURI());
+        log.debug("PETICION DE REGRESION LINEAL");
+        log.debug("URI: {}", exchange.getRequestURI());
         
         try {
             Map<String, String> params = parseQueryParams(exchange.getRequestURI().getQuery());
-            String cryptoId = params.get("crypto_id");
-            String startHourParam = params.get("start_hour");
-            String endHourParam = params.get("end_hour");
-            
-            if (cryptoId == null) {
-                throw new IllegalArgumentException("Parámetro 'crypto_id' es requerido");
-            }
+            sendCachedJson(exchange, params, () -> buildRegressionResponse(params));
             
-            int startHour = startHourParam != null ? Integer.parseInt(startHourParam) : 0;
-            int endHour = endHourParam != null ? Integer.parseInt(endHourParam) : 24;
-            
-            System.out.println("Calculando regresión para crypto_id=" + cryptoId +
-                             " desde hora " + startHour + " hasta " + endHour);
+        } catch (Exception e) {
+            log.error("ERROR en regression: {}", e.getMessage(), e);
             
-            // Consulta SQL para obtener datos del intervalo específico
-            String sql = """
-                SELECT c.symbol, c.name, p.price, p.price_time,
-                       UNIX_TIMESTAMP(p.price_time) as timestamp_unix
-                FROM prices p
-                INNER JOIN crypto c ON p.crypto_id = c.id
-                WHERE p.crypto_id = ?
-                AND p.price_time >= DATE_SUB(NOW(), INTERVAL 24 HOUR)
-                AND HOUR(p.price_time) >= ? AND HOUR(p.price_time) <= ?
-                ORDER BY p.price_time ASC
-            """;
+            sendError(exchange, e);
+        }
+    }
+    
+    private Map<String, Object> buildRegressionResponse(Map<String, String> params) throws Exception {
+        String cryptoId = params.get("crypto_id");
+        String startHourParam = params.get("start_hour");
+        String endHourParam = params.get("end_hour");
+        
+        if (cryptoId == null) {
+            throw new IllegalArgumentException("Parámetro 'crypto_id' es requerido");
+        }
+        
+        int startHour = startHourParam != null ? Integer.parseInt(startHourParam) : 0;
+        int endHour = endHourParam != null ? Integer.parseInt(endHourParam) : 24;
+        
+        // x = índice del punto (default) o segundos desde el primer punto
+        String xAxis = params.getOrDefault("x", "index");
+        if (!xAxis.equals("index") && !xAxis.equals("time")) {
+            throw new IllegalArgumentException("Parámetro 'x' inválido: " + xAxis + " (usar index o time)");
+        }
+        boolean timeAxis = xAxis.equals("time");
+        
+        // Sin from/to, las últimas 24 horas
+        TimeRange range = parseTimeRange(params, 24);
+        
+        log.debug("Calculando regresión para crypto_id={} desde hora {} hasta {} entre {} y {}",
+                cryptoId, startHour, endHour, range.from(), range.to());
+        
+        // Consulta SQL para obtener datos del intervalo específico: range scan sobre
+        // idx_crypto_time y HOUR() aplicado después sobre las filas del rango
+        String sql = """
+            SELECT c.symbol, c.name, p.price, p.price_time,
+                   UNIX_TIMESTAMP(p.price_time) as timestamp_unix
+            FROM prices p
+            INNER JOIN crypto c ON p.crypto_id = c.id
+            WHERE p.crypto_id = ?
+            AND p.price_time >= ? AND p.price_time < ?
+            AND HOUR(p.price_time) >= ? AND HOUR(p.price_time) <= ?
+            ORDER BY p.price_time ASC
+        """;
+        
+        List<Map<String, Object>> priceData = new ArrayList<>();
+        String symbol = "";
+        String name = "";
+        
+        int id = Integer.parseInt(cryptoId);
+        long from = range.from();
+        
+        // Sin el motor incremental las sumas se arman en la misma pasada que los datos,
+        // con x y y relativos al primer punto
+        RegressionEngine.Fit fit = null;
+        RegressionEngine.Sums sums = new RegressionEngine.Sums();
+        long firstTime = 0;
+        double firstPrice = 0;
+        
+        if (timeSeriesStore != null && timeSeriesStore.covers(id, from)) {
+            SeriesSlice slice = timeSeriesStore.range(id, from, range.to());
             
-            List<Map<String, Object>> priceData = new ArrayList<>();
-            String symbol = "";
-            String name = "";
+            // El motor mantiene la ventana hasta el último tick: no sirve con un 'to' explícito
+            if (regressionEngine != null && regressionEngine.covers(from) && range.open()) {
+                fit = regressionEngine.fit(id, from, startHour, endHour, timeAxis);
+            }
             
-            try (Connection conn = dbManager.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < slice.size(); i++) {
+                int hour = TimeSeriesStore.hourOfDay(slice.times()[i]);
+                if (hour < startHour || hour > endHour) {
+                    continue;
+                }
                 
-                stmt.setInt(1, Integer.parseInt(cryptoId));
-                stmt.setInt(2, startHour);
-                stmt.setInt(3, endHour);
+                if (symbol.isEmpty()) {
+                    symbol = dbManager.getCryptoSymbol(id);
+                    name = dbManager.getCryptoName(id);
+                    firstTime = slice.times()[i];
+                    firstPrice = slice.prices()[i];
+                }
+                if (fit == null) {
+                    double x = timeAxis ? (slice.times()[i] - firstTime) / 1000.0 : priceData.size();
+                    sums.add(x, slice.prices()[i] - firstPrice);
+                }
                 
+                Map<String, Object> point = new HashMap<>();
+                point.put("price", slice.prices()[i]);
+                point.put("timestamp", new Timestamp(slice.times()[i]).toString());
+                point.put("timestamp_unix", slice.times()[i] / 1000);
+                priceData.add(point);
+            }
+        } else {
+            try (Connection conn = dbManager.getReadConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+                stmt.setInt(1, Integer.parseInt(cryptoId));
+                stmt.setTimestamp(2, new Timestamp(range.from()));
+                stmt.setTimestamp(3, new Timestamp(range.to()));
+                stmt.setInt(4, startHour);
+                stmt.setInt(5, endHour);
+            
                 try (ResultSet rs = stmt.executeQuery()) {
                     while (rs.next()) {
+                        double price = rs.getDouble("price");
+                        Timestamp priceTime = rs.getTimestamp("price_time");
                         if (symbol.isEmpty()) {
                             symbol = rs.getString("symbol");
                             name = rs.getString("name");
+                            firstTime = priceTime.getTime();
+                            firstPrice = price;
                         }
-                        
+                        double x = timeAxis ? (priceTime.getTime() - firstTime) / 1000.0 : priceData.size();
+                        sums.add(x, price - firstPrice);
+                    
                         Map<String, Object> point = new HashMap<>();
-                        point.put("price", rs.getDouble("price"));
-                        point.put("timestamp", rs.getTimestamp("price_time").toString());
+                        point.put("price", price);
+                        point.put("timestamp", priceTime.toString());
                         point.put("timestamp_unix", rs.getLong("timestamp_unix"));
-                        
+                    
                         priceData.add(point);
                     }
                 }
             }
-            /////////////////////////////////////////////////////////////////
-            // Calculos para la regresión lineal
-            Map<String, Object> regression = calculateLinearRegression(priceData);
-            
-            Map<String, Object> response = new HashMap<>();
-            response.put("status", "success");
-            response.put("crypto_id", Integer.parseInt(cryptoId));
-            response.put("symbol", symbol);
-            response.put("name", name);
-            response.put("start_hour", startHour);
-            response.put("end_hour", endHour);
-            response.put("data", priceData);
-            response.put("regression", regression);
-            response.put("count", priceData.size());
-            
-            String jsonResponse = objectMapper.writeValueAsString(response);
-            
-            System.out.println("Regresión calculada para " + symbol + " con " + priceData.size() + " puntos");
-            System.out.println("Ecuación: y = " + regression.get("slope") + "x + " + regression.get("intercept"));
-            
-            exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
-            exchange.getResponseHeaders().add("Content-Type", "application/json");
-            
-            exchange.sendResponseHeaders(200, jsonResponse.getBytes().length);
-            sendResponse(jsonResponse.getBytes(), exchange);
-            
-        } catch (Exception e) {
-            System.err.println("ERROR en regression: " + e.getMessage());
-            e.printStackTrace();
-            
-            String errorJson = "{\"status\":\"error\",\"message\":\"" + e.getMessage() + "\"}";
-            exchange.getResponseHeaders().add("Content-Type", "application/json");
-            exchange.sendResponseHeaders(500, errorJson.getBytes().length);
-            sendResponse(errorJson.getBytes(), exchange);
         }
+        /////////////////////////////////////////////////////////////////
+        // Calculos para la regresión lineal
+        if (fit == null) {
+            fit = sums.fit(firstPrice);
+        }
+        Map<String, Object> regression = regressionResult(fit, xAxis);
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", "success");
+        response.put("crypto_id", Integer.parseInt(cryptoId));
+        response.put("symbol", symbol);
+        response.put("name", name);
+        response.put("start_hour", startHour);
+        response.put("end_hour", endHour);
+        response.put("from", range.from());
+        response.put("to", range.to());
+        response.put("data", priceData);
+        response.put("regression", regression);
+        response.put("count", priceData.size());
+        
+        log.debug("Regresión calculada para {} con {} puntos", symbol, priceData.size());
+        log.debug("Ecuación: y = {}x + {}", regression.get("slope"), regression.get("intercept"));
+        
+        return response;
     }
     /////////////////////////////////////////////////////////////////
     
-    private Map<String, Object> calculateLinearRegression(List<Map<String, Object>> data) {
-        if (data.size() < 2) {
-            Map<String, Object> result = new HashMap<>();
+    private Map<String, Object> regressionResult(RegressionEngine.Fit fit, String xAxis) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("x_axis", xAxis);
+        if (fit.count() < 2) {
             result.put("slope", 0.0);
             result.put("intercept", 0.0);
             result.put("r_squared", 0.0);
@@ -710,49 +1837,193 @@ public class WebServer {
             return result;
         }
         
-        double sumX = 0, sumY = 0, sumXY = 0, sumX2 = 0;
-        int n = data.size();
+        result.put("slope", Math.round(fit.slope() * 10000.0) / 10000.0); // 4 decimales
+        result.put("intercept", Math.round(fit.intercept() * 100.0) / 100.0); // 2 decimales
+        result.put("r_squared", Math.round(fit.rSquared() * 10000.0) / 10000.0);
+        result.put("equation", String.format("y = %.4fx + %.2f", fit.slope(), fit.intercept()));
+        result.put("data_points", fit.count());
+        
+        return result;
+    }
+    ////////////////////////////////////////////////////////////////
+    
+    private void handleBatchRequest(HttpExchange exchange) throws IOException {
+        if (exchange.getRequestMethod().equalsIgnoreCase("options")) {
+            // Preflight del navegador: el POST lleva Content-Type application/json
+            exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+            exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "POST, OPTIONS");
+            exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type, X-API-Key");
+            exchange.getResponseHeaders().add("Access-Control-Max-Age", "86400");
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+            return;
+        }
+        if (!exchange.getRequestMethod().equalsIgnoreCase("post")) {
+            exchange.close();
+            return;
+        }
+        
+        log.debug("PETICION BATCH");
+        log.debug("URI: {}", exchange.getRequestURI());
         
-        // Usar índices como X, precios como Y
-        for (int i = 0; i < n; i++) {
-            double x = i; // índice del punto
-            double y = (Double) data.get(i).get("price");
+        List<BatchQuery> queries;
+        try {
+            queries = parseBatchQueries(exchange.getRequestBody());
+        } catch (IllegalArgumentException | JsonProcessingException e) {
+            // Error del cliente: 400, que no cuenta como falla para el control de admisión
+            log.debug("Batch inválido: {}", e.getMessage());
             
-            sumX += x;
-            sumY += y;
-            sumXY += x * y;
-            sumX2 += x * x;
+            byte[] errorJson = objectMapper.writeValueAsBytes(Map.of("status", "error", "message",
+                    e instanceof JsonProcessingException ? "El cuerpo no es JSON válido" : e.getMessage()));
+            exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(400, errorJson.length);
+            sendResponse(errorJson, exchange);
+            return;
         }
         
-        // Calcular pendiente (slope) e intercepto
-        double slope = (n * sumXY - sumX * sumY) / (n * sumX2 - sumX * sumX);
-        double intercept = (sumY - slope * sumX) / n;
+        // El filtro solo cobró la lectura del cuerpo; el lote cuesta la suma de sus sub-consultas
+        if (batchRateLimit != null) {
+            int cost = 0;
+            for (BatchQuery query : queries) {
+                cost += rateLimitCost(query.endpoint());
+            }
+            TokenBucketLimiter.Decision decision = batchRateLimit.chargeTotal(exchange, cost);
+            if (!decision.allowed()) {
+                RateLimitFilter.sendTooManyRequests(exchange, decision);
+                return;
+            }
+        }
         
-        // Calcular R²
-        double meanY = sumY / n;
-        double ssRes = 0, ssTot = 0;
+        try {
+            byte[] responseBytes = buildBatchResponse(queries);
+            
+            exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add("Cache-Control", "no-store");
+            exchange.sendResponseHeaders(200, responseBytes.length);
+            sendResponse(responseBytes, exchange);
+            
+        } catch (Exception e) {
+            log.error("ERROR en batch: {}", e.getMessage(), e);
+            
+            exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+            sendError(exchange, e);
+        }
+    }
+    
+    /**
+     * Lee el cuerpo {"queries":[{"id":"btc","endpoint":"/prices/history","params":{"crypto_id":1}}]}.
+     * Si una sub-consulta no trae id se usa su posición en la lista. Un cuerpo
+     * mal formado o un endpoint fuera de BATCH_ENDPOINTS rechaza todo el lote.
+     */
+    private List<BatchQuery> parseBatchQueries(InputStream body) throws IOException {
+        JsonNode queriesNode = objectMapper.readTree(body).path("queries");
+        if (!queriesNode.isArray() || queriesNode.isEmpty()) {
+            throw new IllegalArgumentException("El cuerpo debe traer una lista 'queries' no vacía");
+        }
+        if (queriesNode.size() > MAX_BATCH_QUERIES) {
+            throw new IllegalArgumentException("Máximo " + MAX_BATCH_QUERIES + " consultas por batch");
+        }
         
-        for (int i = 0; i < n; i++) {
-            double x = i;
-            double y = (Double) data.get(i).get("price");
-            double yPred = slope * x + intercept;
+        List<BatchQuery> queries = new ArrayList<>();
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < queriesNode.size(); i++) {
+            JsonNode node = queriesNode.get(i);
+            String id = node.hasNonNull("id") ? node.get("id").asText() : String.valueOf(i);
+            if (!ids.add(id)) {
+                throw new IllegalArgumentException("id repetido en batch: " + id);
+            }
             
-            ssRes += Math.pow(y - yPred, 2);
-            ssTot += Math.pow(y - meanY, 2);
+            Map<String, String> params = new HashMap<>();
+            Iterator<Map.Entry<String, JsonNode>> fields = node.path("params").fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                params.put(field.getKey(), field.getValue().asText());
+            }
+            String endpoint = node.path("endpoint").asText();
+            if (!BATCH_ENDPOINTS.contains(endpoint)) {
+                throw new IllegalArgumentException("Endpoint no soportado en batch: " + endpoint);
+            }
+            queries.add(new BatchQuery(id, endpoint, params));
+        }
+        return queries;
+    }
+    
+    /**
+     * Corre todas las sub-consultas en paralelo y junta sus respuestas en un
+     * solo documento, en el mismo orden en que llegaron. Cada una pasa por el
+     * cache de respuestas y se une a las consultas iguales en curso, igual que
+     * si se hubiera pedido por separado; si una falla las demás se devuelven.
+     */
+    private byte[] buildBatchResponse(List<BatchQuery> queries) throws Exception {
+        List<Future<byte[]>> results = new ArrayList<>();
+        for (BatchQuery query : queries) {
+            results.add(batchExecutor.submit(() -> runBatchQuery(query)));
         }
         
-        double rSquared = ssTot != 0 ? 1 - (ssRes / ssTot) : 0;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        try (JsonGenerator gen = objectMapper.getFactory().createGenerator(out)) {
+            gen.writeStartObject();
+            gen.writeStringField("status", "success");
+            gen.writeNumberField("count", queries.size());
+            gen.writeObjectFieldStart("results");
+            
+            for (int i = 0; i < queries.size(); i++) {
+                BatchQuery query = queries.get(i);
+                gen.writeFieldName(query.id());
+                try {
+                    // Las respuestas ya vienen serializadas: se copian tal cual
+                    gen.writeRawValue(new String(results.get(i).get(), StandardCharsets.UTF_8));
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    log.error("ERROR en batch {} {}: {}", query.id(), query.endpoint(), cause.getMessage(), cause);
+                    gen.writeStartObject();
+                    gen.writeStringField("status", "error");
+                    gen.writeStringField("message", String.valueOf(cause.getMessage()));
+                    gen.writeEndObject();
+                }
+            }
+            
+            gen.writeEndObject();
+            gen.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+    
+    private byte[] runBatchQuery(BatchQuery query) throws Exception {
+        Map<String, String> params = query.params();
         
-        Map<String, Object> result = new HashMap<>();
-        result.put("slope", Math.round(slope * 10000.0) / 10000.0); // 4 decimales
-        result.put("intercept", Math.round(intercept * 100.0) / 100.0); // 2 decimales
-        result.put("r_squared", Math.round(rSquared * 10000.0) / 10000.0);
-        result.put("equation", String.format("y = %.4fx + %.2f", slope, intercept));
-        result.put("data_points", n);
+        if (metrics != null) {
+            metrics.counter("cryptotracker_batch_queries_total",
+                    "Sub-consultas atendidas dentro de POST /batch por endpoint",
+                    MetricsRegistry.labels("endpoint", query.endpoint()))
+                   .increment();
+        }
         
-        return result;
+        return switch (query.endpoint()) {
+            case API_CRYPTOS ->
+                loadCachedJson(API_CRYPTOS, Map.of(), this::buildCryptosListResponse).body();
+            case API_PRICES_CURRENT ->
+                loadCachedJson(API_PRICES_CURRENT, Map.of(), this::buildCurrentPricesResponse).body();
+            case API_PRICES_COMPARE ->
+                loadCachedJson(API_PRICES_COMPARE, params, () -> buildCompareResponse(params)).body();
+            case API_PRICES_REGRESSION ->
+                loadCachedJson(API_PRICES_REGRESSION, params, () -> buildRegressionResponse(params)).body();
+            case API_PRICES_CANDLES ->
+                loadCachedJson(API_PRICES_CANDLES, params, () -> buildCandlesResponse(params)).body();
+            case API_PRICES_CORRELATION ->
+                loadCachedJson(API_PRICES_CORRELATION, params, () -> buildCorrelationResponse(params)).body();
+            case API_PRICES_HISTORY ->
+                loadStreamedBytes(API_PRICES_HISTORY, params, prepareHistoricalPrices(params));
+            case API_PRICES_ALL_CRYPTOS ->
+                loadStreamedBytes(API_PRICES_ALL_CRYPTOS, params, prepareAllCryptos(params));
+            case API_PRICES_INDICATORS ->
+                loadStreamedBytes(API_PRICES_INDICATORS, params, prepareIndicators(params));
+            default ->
+                throw new IllegalArgumentException("Endpoint no soportado en batch: " + query.endpoint());
+        };
     }
-    ////////////////////////////////////////////////////////////////
     
     private Map<String, String> parseQueryParams(String query) {
         Map<String, String> params = new HashMap<>();
@@ -767,9 +2038,221 @@ public class WebServer {
         return params;
     }
     
+    /**
+     * Responde con el JSON cacheado para (endpoint, params) o lo arma con el
+     * builder si no existe. Si el cliente ya tiene la misma versión
+     * (If-None-Match) se responde 304 sin cuerpo.
+     */
+    private void sendCachedJson(HttpExchange exchange, Map<String, String> params,
+                                ResponseBuilder builder) throws Exception {
+        ResponseCache.CachedResponse cached = loadCachedJson(exchange.getHttpContext().getPath(), params, builder);
+        long maxAge = responseCache != null ? responseCache.maxAgeSeconds() : 0;
+        
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.getResponseHeaders().add("ETag", cached.etag());
+        exchange.getResponseHeaders().add("Cache-Control", "public, max-age=" + maxAge);
+        
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch != null && (ifNoneMatch.contains(cached.etag()) || ifNoneMatch.trim().equals("*"))) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        
+        exchange.sendResponseHeaders(200, cached.body().length);
+        sendResponse(cached.body(), exchange);
+    }
+    
+    /**
+     * Busca la respuesta de (endpoint, params) en el cache o la arma con el
+     * builder, compartiendo la consulta con las peticiones iguales en curso.
+     */
+    private ResponseCache.CachedResponse loadCachedJson(String context, Map<String, String> params,
+                                                        ResponseBuilder builder) throws Exception {
+        String key = ResponseCache.keyFor(context, params);
+        
+        if (responseCache == null) {
+            return (ResponseCache.CachedResponse) singleFlight.execute(key,
+                    () -> ResponseCache.entryFor(buildJsonBytes(context, builder)));
+        }
+        
+        ResponseCache.CachedResponse cached = responseCache.get(key);
+        countCacheLookup(context, cached != null);
+        if (cached == null) {
+            // La versión va en la llave: tras un tick nadie se une a una consulta vieja
+            long version = responseCache.getVersion();
+            cached = (ResponseCache.CachedResponse) singleFlight.execute(key + "@" + version,
+                    () -> responseCache.put(key, version, buildJsonBytes(context, builder)));
+        }
+        return cached;
+    }
+    
+    /**
+     * Arma y serializa la respuesta midiendo por separado la obtención de
+     * datos (memoria o MySQL) y la serialización.
+     */
+    private byte[] buildJsonBytes(String context, ResponseBuilder builder) throws Exception {
+        long start = System.nanoTime();
+        Object response = builder.build();
+        long built = System.nanoTime();
+        byte[] body = objectMapper.writeValueAsBytes(response);
+        
+        if (metrics != null) {
+            String labels = MetricsRegistry.labels("context", context);
+            metrics.histogram("cryptotracker_http_data_seconds",
+                    "Tiempo armando los datos de la respuesta (memoria o MySQL)", labels)
+                   .observeNanos(built - start);
+            metrics.histogram("cryptotracker_http_serialize_seconds",
+                    "Tiempo serializando la respuesta a JSON", labels)
+                   .observeSince(built);
+        }
+        return body;
+    }
+    
+    private void countCacheLookup(String context, boolean hit) {
+        if (metrics != null) {
+            metrics.counter("cryptotracker_response_cache_lookups_total",
+                    "Búsquedas en el cache de respuestas por resultado",
+                    MetricsRegistry.labels("context", context, "result", hit ? "hit" : "miss"))
+                   .increment();
+        }
+    }
+    
+    /**
+     * Escribe la respuesta con transferencia chunked sin armarla en memoria.
+     * No se guarda en el ResponseCache; el ETag es débil porque se deriva del
+     * último tick y no de los bytes.
+     *
+     * Si los datos salen de MySQL, las peticiones iguales que lleguen mientras
+     * tanto comparten la consulta (ver StreamFlight). Los encabezados salen con
+     * el primer byte, así un error de la consulta antes de eso aún responde 500.
+     */
+    private void sendStreamedJson(HttpExchange exchange, Map<String, String> params,
+                                  StreamedBody body) throws Exception {
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        String context = exchange.getHttpContext().getPath();
+        String key = ResponseCache.keyFor(context, params);
+        
+        if (responseCache != null) {
+            String etag = responseCache.weakEtagFor(key);
+            exchange.getResponseHeaders().add("ETag", etag);
+            exchange.getResponseHeaders().add("Cache-Control", "public, max-age=" + responseCache.maxAgeSeconds());
+            
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            if (ifNoneMatch != null && ifNoneMatch.contains(etag)) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+        }
+        
+        ResponseStream out = new ResponseStream(exchange);
+        writeStreamedBody(context, params, body, out);
+        out.close();
+    }
+    
+    /**
+     * Arma en memoria el cuerpo de un endpoint con streaming, para /batch. Si
+     * sale de MySQL la consulta se comparte con las peticiones iguales en curso.
+     */
+    private byte[] loadStreamedBytes(String context, Map<String, String> params,
+                                     StreamedBody body) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        writeStreamedBody(context, params, body, out);
+        return out.toByteArray();
+    }
+    
+    private void writeStreamedBody(String context, Map<String, String> params, StreamedBody body,
+                                   OutputStream out) throws Exception {
+        long start = System.nanoTime();
+        if (body.fromDatabase()) {
+            String key = ResponseCache.keyFor(context, params);
+            String flightKey = responseCache != null ? key + "@" + responseCache.getVersion() : key;
+            streamFlight.execute(flightKey, out, target -> writeJson(target, body.writer()));
+        } else {
+            writeJson(out, body.writer());
+        }
+        
+        // Aquí la lectura de datos y la serialización van intercaladas
+        if (metrics != null) {
+            metrics.histogram("cryptotracker_http_serialize_seconds",
+                    "Tiempo serializando la respuesta a JSON",
+                    MetricsRegistry.labels("context", context))
+                   .observeSince(start);
+        }
+    }
+    
+    private void writeJson(OutputStream out, JsonBodyWriter writer) throws Exception {
+        JsonGenerator gen = objectMapper.getFactory().createGenerator(out);
+        // Sin try-with-resources: si el writer falla, lo que quedó en el buffer
+        // del generador no se manda como si fuera una respuesta completa
+        writer.write(gen);
+        gen.close();
+    }
+    
+    /**
+     * Cuerpo de la respuesta que manda los encabezados (200, chunked) hasta el
+     * primer byte escrito.
+     */
+    private static final class ResponseStream extends OutputStream {
+        private final HttpExchange exchange;
+        private OutputStream out;
+        
+        ResponseStream(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+        
+        private OutputStream body() throws IOException {
+            if (out == null) {
+                exchange.sendResponseHeaders(200, 0);
+                out = exchange.getResponseBody();
+            }
+            return out;
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            body().write(b);
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            body().write(b, off, len);
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            if (out != null) {
+                out.flush();
+            }
+        }
+        
+        @Override
+        public void close() throws IOException {
+            body().close();
+        }
+    }
+    
+    /**
+     * Responde el error de un handler: 400 si vino de los parámetros
+     * (IllegalArgumentException, que incluye NumberFormatException) y 500 si
+     * fue del servidor. AdmissionFilter solo cuenta los 5xx como falla, así
+     * que un cliente con parámetros malos no baja el límite de concurrencia.
+     */
+    private void sendError(HttpExchange exchange, Exception e) throws IOException {
+        int status = e instanceof IllegalArgumentException ? 400 : 500;
+        byte[] errorJson = objectMapper.writeValueAsBytes(
+                Map.of("status", "error", "message", String.valueOf(e.getMessage())));
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, errorJson.length);
+        sendResponse(errorJson, exchange);
+    }
+    
     private void sendResponse(byte[] responseBytes, HttpExchange exchange) throws IOException {
         OutputStream outputStream = exchange.getResponseBody();
-        System.out.println("Enviando " + responseBytes.length + " bytes");
+        log.debug("Enviando {} bytes", responseBytes.length);
         outputStream.write(responseBytes);
         outputStream.flush();
         outputStream.close();
@@ -0,0 +1,84 @@
+package com.cryptotracker.timeseries;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Arma velas OHLC de ancho fijo en una sola pasada sobre ticks ordenados por
+ * tiempo. Los buckets se alinean a múltiplos del ancho desde el epoch, así
+ * que la misma vela sale igual sin importar dónde empiece la ventana.
+ */
+public class CandleAggregator {
+
+    /**
+     * Una vela.
+     *
+     * @param start inicio del bucket en epoch millis
+     * @param count ticks que cayeron en el bucket
+     */
+    public record Candle(long start, double open, double high, double low, double close, int count) {
+    }
+
+    private final long bucketMillis;
+    private final List<Candle> candles = new ArrayList<>();
+
+    private long start = Long.MIN_VALUE;
+    private double open;
+    private double high;
+    private double low;
+    private double close;
+    private int count = 0;
+
+    public CandleAggregator(long bucketMillis) {
+        if (bucketMillis <= 0) {
+            throw new IllegalArgumentException("El ancho de la vela debe ser positivo");
+        }
+        this.bucketMillis = bucketMillis;
+    }
+
+    /**
+     * Convierte un intervalo tipo 1m, 5m, 15m o 1h a milisegundos.
+     */
+    public static long parseInterval(String interval) {
+        return switch (interval) {
+            case "1m" -> 60_000L;
+            case "5m" -> 5 * 60_000L;
+            case "15m" -> 15 * 60_000L;
+            case "1h" -> 3600_000L;
+            default -> throw new IllegalArgumentException(
+                    "Parámetro 'interval' inválido: " + interval + " (usar 1m, 5m, 15m o 1h)");
+        };
+    }
+
+    /** Agrega un tick; debe llegar en orden creciente de tiempo. */
+    public void add(long time, double price) {
+        long bucket = Math.floorDiv(time, bucketMillis) * bucketMillis;
+        if (count > 0 && bucket != start) {
+            flush();
+        }
+        if (count == 0) {
+            start = bucket;
+            open = price;
+            high = price;
+            low = price;
+        } else {
+            high = Math.max(high, price);
+            low = Math.min(low, price);
+        }
+        close = price;
+        count++;
+    }
+
+    /** Cierra la vela en curso y regresa todas las velas armadas. */
+    public List<Candle> finish() {
+        if (count > 0) {
+            flush();
+        }
+        return candles;
+    }
+
+    private void flush() {
+        candles.add(new Candle(start, open, high, low, close, count));
+        count = 0;
+    }
+}
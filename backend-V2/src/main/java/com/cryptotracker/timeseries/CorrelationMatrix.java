@@ -0,0 +1,151 @@
+package com.cryptotracker.timeseries;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Matriz de correlación de Pearson entre los retornos de varias series.
+ *
+ * Primero alinea todas las series en una malla común (el último precio en o
+ * antes de cada punto de la malla) y arma una sola matriz de retornos
+ * logarítmicos, una fila contigua por serie. Después calcula el triángulo
+ * superior de pares en paralelo con fork/join: cada par recorre dos filas de
+ * arreglos primitivos en orden, sin volver a leer las series.
+ */
+public final class CorrelationMatrix {
+
+    // Trabajo (pares x pasos) por debajo del cual una tarea ya no se divide
+    private static final long SPLIT_THRESHOLD = 1L << 16;
+
+    // Retornos mínimos en común para que la correlación de un par tenga sentido
+    private static final int MIN_RETURNS = 3;
+
+    private CorrelationMatrix() {
+    }
+
+    /**
+     * Retornos logarítmicos de cada serie entre puntos consecutivos de la malla
+     * from, from + step, ... hasta to. Cada serie debe traer al menos un tick
+     * anterior a from para tener precio en el primer punto.
+     *
+     * @return matriz [serie][paso]; mientras una serie no tiene precio sus
+     *         retornos son NaN, y eso solo puede pasar al inicio de la fila
+     */
+    public static double[][] alignedReturns(List<SeriesSlice> series, long from, long to, long step) {
+        int points = (int) Math.max(0, (to - from) / step + 1);
+        double[][] returns = new double[series.size()][Math.max(0, points - 1)];
+
+        for (int s = 0; s < series.size(); s++) {
+            SeriesSlice slice = series.get(s);
+            double[] row = returns[s];
+            int tick = 0;
+            double previous = Double.NaN;
+
+            for (int k = 0; k < points; k++) {
+                long gridTime = from + k * step;
+                while (tick < slice.size() && slice.times()[tick] <= gridTime) {
+                    tick++;
+                }
+                double price = tick > 0 ? slice.prices()[tick - 1] : Double.NaN;
+
+                if (k > 0) {
+                    row[k - 1] = previous > 0 && price > 0 ? Math.log(price / previous) : Double.NaN;
+                }
+                previous = price;
+            }
+        }
+        return returns;
+    }
+
+    /**
+     * Correlación de cada par de filas sobre los pasos que ambas tienen. Los
+     * pares con menos de MIN_RETURNS retornos o sin variación quedan NaN.
+     */
+    public static double[][] pearson(double[][] returns) {
+        int n = returns.length;
+        double[][] matrix = new double[n][n];
+        int[] firstValid = new int[n];
+        for (int i = 0; i < n; i++) {
+            double[] row = returns[i];
+            int first = 0;
+            while (first < row.length && Double.isNaN(row[first])) {
+                first++;
+            }
+            firstValid[i] = first;
+        }
+
+        ForkJoinPool.commonPool().invoke(new PairTask(returns, firstValid, matrix, 0, n));
+        return matrix;
+    }
+
+    // Calcula las filas [from, to) del triángulo superior, dividiéndose mientras haya trabajo
+    private static final class PairTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[][] returns;
+        private final int[] firstValid;
+        private final double[][] matrix;
+        private final int from;
+        private final int to;
+
+        PairTask(double[][] returns, int[] firstValid, double[][] matrix, int from, int to) {
+            this.returns = returns;
+            this.firstValid = firstValid;
+            this.matrix = matrix;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            int n = returns.length;
+            long steps = n > 0 ? returns[0].length : 0;
+            // Pares de las filas [from, to): la fila i tiene n - i
+            long pairs = (long) (to - from) * (2L * n - from - to + 1) / 2;
+
+            if (to - from > 1 && pairs * steps > SPLIT_THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new PairTask(returns, firstValid, matrix, from, mid),
+                          new PairTask(returns, firstValid, matrix, mid, to));
+                return;
+            }
+
+            for (int i = from; i < to; i++) {
+                for (int j = i; j < n; j++) {
+                    double r = correlation(returns[i], returns[j], Math.max(firstValid[i], firstValid[j]));
+                    // Cada tarea escribe solo sus filas y su reflejo; no se pisan
+                    matrix[i][j] = r;
+                    matrix[j][i] = r;
+                }
+            }
+        }
+    }
+
+    private static double correlation(double[] x, double[] y, int start) {
+        int m = x.length - start;
+        if (m < MIN_RETURNS) {
+            return Double.NaN;
+        }
+
+        // Los retornos son chicos y con media cercana a cero: una sola pasada basta
+        double sumX = 0, sumY = 0, sumXX = 0, sumYY = 0, sumXY = 0;
+        for (int k = start; k < x.length; k++) {
+            double a = x[k];
+            double b = y[k];
+            sumX += a;
+            sumY += b;
+            sumXX += a * a;
+            sumYY += b * b;
+            sumXY += a * b;
+        }
+
+        double varX = m * sumXX - sumX * sumX;
+        double varY = m * sumYY - sumY * sumY;
+        if (varX <= 0 || varY <= 0) {
+            return Double.NaN;
+        }
+        double r = (m * sumXY - sumX * sumY) / Math.sqrt(varX * varY);
+        return Math.max(-1, Math.min(1, r));
+    }
+}
@@ -0,0 +1,116 @@
+package com.cryptotracker.timeseries;
+
+import java.util.Arrays;
+
+/**
+ * Reducción de series para gráficas con Largest-Triangle-Three-Buckets.
+ *
+ * Conserva el primer y el último punto y, de cada bucket intermedio, el punto
+ * que forma el triángulo más grande con el punto ya elegido y el promedio del
+ * bucket siguiente. Así se mantienen los picos y valles que se verían en la
+ * gráfica con todos los puntos. Recorre los arreglos una sola vez.
+ */
+public final class Downsampler {
+
+    /** Por debajo de esto LTTB no tiene buckets intermedios. */
+    public static final int MIN_POINTS = 3;
+
+    private Downsampler() {
+    }
+
+    /**
+     * Reduce la serie a lo más {@code threshold} puntos. Si ya tiene esos
+     * puntos o menos (o el umbral es menor a {@link #MIN_POINTS}) la regresa
+     * tal cual.
+     */
+    public static SeriesSlice lttb(SeriesSlice series, int threshold) {
+        int n = series.size();
+        if (threshold < MIN_POINTS || n <= threshold) {
+            return series;
+        }
+
+        long[] times = series.times();
+        double[] prices = series.prices();
+        long[] outTimes = new long[threshold];
+        double[] outPrices = new double[threshold];
+
+        // Ancho de bucket sin contar el primer y último punto
+        double every = (double) (n - 2) / (threshold - 2);
+
+        int selected = 0;
+        outTimes[0] = times[0];
+        outPrices[0] = prices[0];
+        int out = 1;
+
+        for (int b = 0; b < threshold - 2; b++) {
+            // Promedio del bucket siguiente (el último "bucket" es el punto final)
+            int nextStart = (int) ((b + 1) * every) + 1;
+            int nextEnd = Math.min((int) ((b + 2) * every) + 1, n);
+            double avgX = 0;
+            double avgY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                avgX += times[i];
+                avgY += prices[i];
+            }
+            int nextLen = nextEnd - nextStart;
+            avgX /= nextLen;
+            avgY /= nextLen;
+
+            // Punto del bucket actual con el triángulo más grande
+            int start = (int) (b * every) + 1;
+            int end = (int) ((b + 1) * every) + 1;
+            double ax = times[selected];
+            double ay = prices[selected];
+            double maxArea = -1;
+            int maxIndex = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((ax - avgX) * (prices[i] - ay) - (ax - times[i]) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    maxIndex = i;
+                }
+            }
+
+            outTimes[out] = times[maxIndex];
+            outPrices[out] = prices[maxIndex];
+            out++;
+            selected = maxIndex;
+        }
+
+        outTimes[out] = times[n - 1];
+        outPrices[out] = prices[n - 1];
+        return new SeriesSlice(outTimes, outPrices);
+    }
+
+    /**
+     * Acumulador de puntos en arreglos primitivos que crecen al doble, para
+     * juntar la serie que viene del ResultSet antes de reducirla.
+     */
+    public static final class SeriesBuilder {
+        private long[] times = new long[256];
+        private double[] prices = new double[256];
+        private int size = 0;
+
+        public void add(long time, double price) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                prices = Arrays.copyOf(prices, size * 2);
+            }
+            times[size] = time;
+            prices[size] = price;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void clear() {
+            size = 0;
+        }
+
+        public SeriesSlice build() {
+            return new SeriesSlice(Arrays.copyOf(times, size), Arrays.copyOf(prices, size));
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.cryptotracker.timeseries;
+
+import com.cryptotracker.scraper.PriceFeed;
+import com.cryptotracker.scraper.PriceTick;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Indicadores técnicos calculados una sola vez por tick en el servidor.
+ *
+ * Para cada cripto y cada ventana configurada (indicators.windows) mantiene
+ * un {@link RollingIndicators} y guarda cada valor en su propio
+ * PriceRingBuffer con la misma retención que el TimeSeriesStore, así que
+ * /prices/indicators solo copia rangos ya calculados. Las ventanas que no
+ * están configuradas se calculan al vuelo con {@link IndicatorSeries#compute}.
+ *
+ * Un tick que llega tarde cambia todos los valores posteriores y aquí no se
+ * guardan los precios para recalcularlos: lo ya calculado de esa cripto deja
+ * de contar como cubierto y esas lecturas se calculan al vuelo desde el
+ * TimeSeriesStore, que sí tiene el tick.
+ */
+public class IndicatorEngine implements PriceFeed.PriceListener {
+
+    // Estado de una ventana de una cripto
+    private static final class Tracked {
+        final RollingIndicators indicators;
+        final PriceRingBuffer sma;
+        final PriceRingBuffer ema;
+        final PriceRingBuffer std;
+        final PriceRingBuffer min;
+        final PriceRingBuffer max;
+        // Último tick escrito en los cinco buffers; las lecturas no pasan de aquí
+        volatile long lastTime = Long.MIN_VALUE;
+
+        Tracked(int window, int capacity, long loadedSince) {
+            this.indicators = new RollingIndicators(window);
+            this.sma = new PriceRingBuffer(capacity, loadedSince);
+            this.ema = new PriceRingBuffer(capacity, loadedSince);
+            this.std = new PriceRingBuffer(capacity, loadedSince);
+            this.min = new PriceRingBuffer(capacity, loadedSince);
+            this.max = new PriceRingBuffer(capacity, loadedSince);
+        }
+
+        List<PriceRingBuffer> buffers() {
+            return List.of(sma, ema, std, min, max);
+        }
+    }
+
+    private final int[] windows;
+    private final int capacity;
+    // crypto_id -> estado por ventana, en el mismo orden que windows
+    private final Map<Integer, Tracked[]> series = new ConcurrentHashMap<>();
+    private volatile long loadedSince = Long.MAX_VALUE;
+
+    public IndicatorEngine(int[] windows, int retentionHours, int intervalSeconds) {
+        this.windows = Arrays.stream(windows).distinct().sorted().toArray();
+        this.capacity = TimeSeriesStore.capacityFor(retentionHours, intervalSeconds);
+    }
+
+    @Override
+    public void onPrices(List<PriceTick> ticks) {
+        for (PriceTick tick : ticks) {
+            for (Tracked tracked : tracked(tick.cryptoId())) {
+                if (tick.time() <= tracked.lastTime) {
+                    continue;
+                }
+                RollingIndicators indicators = tracked.indicators;
+                indicators.add(tick.price());
+                if (indicators.isFull()) {
+                    tracked.sma.append(tick.time(), indicators.sma());
+                    tracked.ema.append(tick.time(), indicators.ema());
+                    tracked.std.append(tick.time(), indicators.std());
+                    tracked.min.append(tick.time(), indicators.min());
+                    tracked.max.append(tick.time(), indicators.max());
+                }
+                tracked.lastTime = tick.time();
+            }
+        }
+    }
+
+    @Override
+    public void onLatePrices(List<PriceTick> ticks) {
+        for (PriceTick tick : ticks) {
+            Tracked[] trackedWindows = series.get(tick.cryptoId());
+            if (trackedWindows == null) {
+                continue;
+            }
+            for (Tracked tracked : trackedWindows) {
+                for (PriceRingBuffer buffer : tracked.buffers()) {
+                    buffer.invalidateThrough(tracked.lastTime);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onHistoryLoaded(long since) {
+        loadedSince = Math.min(loadedSince, since);
+        for (Tracked[] trackedWindows : series.values()) {
+            for (Tracked tracked : trackedWindows) {
+                for (PriceRingBuffer buffer : tracked.buffers()) {
+                    buffer.setLoadedSince(since);
+                }
+            }
+        }
+    }
+
+    private Tracked[] tracked(int cryptoId) {
+        return series.computeIfAbsent(cryptoId, id -> {
+            Tracked[] trackedWindows = new Tracked[windows.length];
+            for (int i = 0; i < windows.length; i++) {
+                trackedWindows[i] = new Tracked(windows[i], capacity, loadedSince);
+            }
+            return trackedWindows;
+        });
+    }
+
+    /** true si la ventana se calcula en cada tick. */
+    public boolean tracks(int window) {
+        return Arrays.binarySearch(windows, window) >= 0;
+    }
+
+    /** true si hay indicadores calculados para la cripto y ventana desde el instante indicado. */
+    public boolean covers(int cryptoId, int window, long from) {
+        int index = Arrays.binarySearch(windows, window);
+        if (index < 0) {
+            return false;
+        }
+        Tracked[] trackedWindows = series.get(cryptoId);
+        if (trackedWindows == null) {
+            return from >= loadedSince;
+        }
+        return trackedWindows[index].sma.covers(from);
+    }
+
+    /** Indicadores ya calculados con time >= from. */
+    public IndicatorSeries range(int cryptoId, int window, long from) {
+        int index = Arrays.binarySearch(windows, window);
+        Tracked[] trackedWindows = series.get(cryptoId);
+        if (index < 0 || trackedWindows == null) {
+            return IndicatorSeries.EMPTY;
+        }
+
+        Tracked tracked = trackedWindows[index];
+        // Cortar en el último tick completo para que los cinco rangos midan lo mismo
+        long to = tracked.lastTime + 1;
+        SeriesSlice sma = tracked.sma.range(from, to);
+        SeriesSlice ema = tracked.ema.range(from, to);
+        SeriesSlice std = tracked.std.range(from, to);
+        SeriesSlice min = tracked.min.range(from, to);
+        SeriesSlice max = tracked.max.range(from, to);
+
+        // Si entre lecturas se sobrescribió el punto más viejo, quedarse con el tramo común
+        int n = Math.min(sma.size(), Math.min(ema.size(), Math.min(std.size(), Math.min(min.size(), max.size()))));
+        return new IndicatorSeries(tail(sma.times(), n), tail(sma.prices(), n), tail(ema.prices(), n),
+                tail(std.prices(), n), tail(min.prices(), n), tail(max.prices(), n));
+    }
+
+    private static long[] tail(long[] values, int n) {
+        return values.length == n ? values : Arrays.copyOfRange(values, values.length - n, values.length);
+    }
+
+    private static double[] tail(double[] values, int n) {
+        return values.length == n ? values : Arrays.copyOfRange(values, values.length - n, values.length);
+    }
+}
@@ -0,0 +1,60 @@
+package com.cryptotracker.timeseries;
+
+/**
+ * Indicadores de una cripto para una ventana, en arreglos paralelos
+ * ordenados por tiempo. Solo incluye los ticks con la ventana completa.
+ *
+ * @param times price_time en epoch millis del tick que cierra la ventana
+ * @param std   desviación estándar poblacional de la ventana
+ */
+public record IndicatorSeries(long[] times, double[] sma, double[] ema, double[] std,
+                              double[] min, double[] max) {
+
+    public static final IndicatorSeries EMPTY = new IndicatorSeries(new long[0], new double[0],
+            new double[0], new double[0], new double[0], new double[0]);
+
+    public int size() {
+        return times.length;
+    }
+
+    public boolean isEmpty() {
+        return times.length == 0;
+    }
+
+    /**
+     * Calcula los indicadores sobre una serie completa y regresa solo los
+     * puntos con time >= from; los anteriores sirven para llenar la ventana.
+     */
+    public static IndicatorSeries compute(SeriesSlice slice, int window, long from) {
+        RollingIndicators indicators = new RollingIndicators(window);
+        int start = 0;
+        while (start < slice.size() && slice.times()[start] < from) {
+            start++;
+        }
+        // Los primeros window - 1 ticks no completan ventana
+        int first = Math.max(start, window - 1);
+        int n = Math.max(0, slice.size() - first);
+
+        long[] times = new long[n];
+        double[] sma = new double[n];
+        double[] ema = new double[n];
+        double[] std = new double[n];
+        double[] min = new double[n];
+        double[] max = new double[n];
+
+        for (int i = 0; i < slice.size(); i++) {
+            indicators.add(slice.prices()[i]);
+            if (i < first) {
+                continue;
+            }
+            int j = i - first;
+            times[j] = slice.times()[i];
+            sma[j] = indicators.sma();
+            ema[j] = indicators.ema();
+            std[j] = indicators.std();
+            min[j] = indicators.min();
+            max[j] = indicators.max();
+        }
+        return new IndicatorSeries(times, sma, ema, std, min, max);
+    }
+}
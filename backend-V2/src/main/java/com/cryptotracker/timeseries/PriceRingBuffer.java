@@ -0,0 +1,198 @@
+package com.cryptotracker.timeseries;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Buffer circular de precios de una sola cripto.
+ *
+ * Guarda los ticks en dos arreglos primitivos paralelos (tiempos y precios)
+ * para no crear un objeto por punto. Al llenarse sobrescribe el punto más
+ * viejo. Los tiempos siempre van en orden creciente, así que las lecturas por
+ * rango usan búsqueda binaria; un punto que llega tarde se inserta en su
+ * lugar con insert().
+ */
+public class PriceRingBuffer {
+    private final long[] times;
+    private final double[] prices;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int head = 0;  // índice físico del punto más viejo
+    private int size = 0;
+
+    // Desde cuándo se cargó el historial (Long.MAX_VALUE = aún no se carga)
+    private long loadedSince;
+    // Los puntos anteriores a este instante ya se sobrescribieron
+    private long evictedBefore = 0;
+
+    public PriceRingBuffer(int capacity, long loadedSince) {
+        this.times = new long[capacity];
+        this.prices = new double[capacity];
+        this.loadedSince = loadedSince;
+    }
+
+    /** Agrega un punto al final. Ignora puntos que no sean más nuevos que el último. */
+    public void append(long time, double price) {
+        lock.writeLock().lock();
+        try {
+            if (size > 0 && time <= times[physical(size - 1)]) {
+                return;
+            }
+
+            if (size == times.length) {
+                // Se pierde el más viejo: la cobertura completa empieza después de él
+                evictedBefore = times[head] + 1;
+                head = (head + 1) % times.length;
+                size--;
+            }
+
+            int idx = physical(size);
+            times[idx] = time;
+            prices[idx] = price;
+            size++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Inserta un punto en su lugar aunque haya otros más nuevos, para ticks
+     * que llegan tarde a la BD. No hace nada si ya hay un punto con ese tiempo
+     * o si cae antes de lo que el buffer cubre (ahí las lecturas ya van a MySQL).
+     *
+     * @return true si se insertó
+     */
+    public boolean insert(long time, double price) {
+        lock.writeLock().lock();
+        try {
+            if (time < loadedSince || time < evictedBefore) {
+                return false;
+            }
+            int pos = lowerBound(time);
+            if (pos < size && times[physical(pos)] == time) {
+                return false;
+            }
+
+            if (size == times.length) {
+                if (pos == 0) {
+                    // Sería el más viejo y se sobrescribiría de inmediato: sin él
+                    // el buffer ya no cubre su instante
+                    evictedBefore = time + 1;
+                    return false;
+                }
+                evictedBefore = times[head] + 1;
+                head = (head + 1) % times.length;
+                size--;
+                pos--;
+            }
+
+            // Recorrer un lugar los puntos posteriores; los tardíos son pocos
+            for (int i = size; i > pos; i--) {
+                int to = physical(i);
+                int from = physical(i - 1);
+                times[to] = times[from];
+                prices[to] = prices[from];
+            }
+            int idx = physical(pos);
+            times[idx] = time;
+            prices[idx] = price;
+            size++;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Los puntos hasta time inclusive dejan de contar como cubiertos. */
+    public void invalidateThrough(long time) {
+        lock.writeLock().lock();
+        try {
+            evictedBefore = Math.max(evictedBefore, time + 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Copia los puntos con from <= time < to. */
+    public SeriesSlice range(long from, long to) {
+        return range(from, to, Integer.MAX_VALUE);
+    }
+
+    /** Copia a lo más limit puntos con from <= time < to, empezando por el más viejo. */
+    public SeriesSlice range(long from, long to, int limit) {
+        lock.readLock().lock();
+        try {
+            int start = lowerBound(from);
+            int end = lowerBound(to);
+            int n = Math.min(end - start, limit);
+            if (n <= 0) {
+                return SeriesSlice.EMPTY;
+            }
+
+            long[] outTimes = new long[n];
+            double[] outPrices = new double[n];
+
+            // Copiar en a lo más dos tramos contiguos del arreglo físico
+            int first = physical(start);
+            int firstLen = Math.min(n, times.length - first);
+            System.arraycopy(times, first, outTimes, 0, firstLen);
+            System.arraycopy(prices, first, outPrices, 0, firstLen);
+            if (firstLen < n) {
+                System.arraycopy(times, 0, outTimes, firstLen, n - firstLen);
+                System.arraycopy(prices, 0, outPrices, firstLen, n - firstLen);
+            }
+
+            return new SeriesSlice(outTimes, outPrices);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** true si el buffer tiene todos los ticks desde el instante indicado. */
+    public boolean covers(long from) {
+        lock.readLock().lock();
+        try {
+            return from >= loadedSince && from >= evictedBefore;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void setLoadedSince(long loadedSince) {
+        lock.writeLock().lock();
+        try {
+            this.loadedSince = Math.min(this.loadedSince, loadedSince);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Primer índice lógico con time >= target
+    private int lowerBound(long target) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (times[physical(mid)] < target) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int physical(int logical) {
+        int idx = head + logical;
+        return idx >= times.length ? idx - times.length : idx;
+    }
+}
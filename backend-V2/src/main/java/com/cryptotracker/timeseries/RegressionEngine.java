@@ -0,0 +1,379 @@
+package com.cryptotracker.timeseries;
+
+import com.cryptotracker.scraper.PriceFeed;
+import com.cryptotracker.scraper.PriceTick;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Regresión lineal por cripto mantenida de forma incremental.
+ *
+ * Para cada cripto guarda los ticks de las últimas windowHours horas y, por
+ * cada hora local, las sumas n, Σx, Σx², Σy, Σy² y Σxy, tanto con x = índice
+ * del punto como con x = segundos. Un tick nuevo se suma a su hora y uno que
+ * sale de la ventana se resta de la más vieja, así que la regresión de un
+ * rango de horas solo junta a lo más windowHours + 1 sumas sin recorrer los
+ * puntos.
+ *
+ * Las sumas de cada hora son relativas a su primer punto (índice 0, segundo 0
+ * y su primer precio) y al juntarlas se desplazan a un origen común: los
+ * números se mantienen chicos y Σy² no pierde precisión con precios de cinco
+ * cifras.
+ *
+ * Un tick que llega tarde se inserta en su lugar y las sumas de esa cripto se
+ * rehacen desde sus ticks, porque cambia el índice de todos los posteriores.
+ */
+public class RegressionEngine implements PriceFeed.PriceListener {
+
+    /** Ajuste y = slope * x + intercept con {@code count} puntos. */
+    public record Fit(int count, double slope, double intercept, double rSquared) {
+
+        static final Fit EMPTY = new Fit(0, 0, 0, 0);
+    }
+
+    /**
+     * Sumas de un conjunto de puntos (x, y). También sirve para ajustar en una
+     * sola pasada una serie que no está en memoria; conviene pasar y relativo
+     * a un precio de referencia y sumarlo de vuelta en {@link #fit}.
+     */
+    public static final class Sums {
+        private long n;
+        private double sumX, sumX2, sumY, sumY2, sumXY;
+
+        public void add(double x, double y) {
+            n++;
+            sumX += x;
+            sumX2 += x * x;
+            sumY += y;
+            sumY2 += y * y;
+            sumXY += x * y;
+        }
+
+        /** Agrega las sumas de otro conjunto con sus x desplazadas dx y sus y dy. */
+        void merge(long m, double sx, double sx2, double sy, double sy2, double sxy, double dx, double dy) {
+            n += m;
+            sumX += sx + m * dx;
+            sumX2 += sx2 + 2 * dx * sx + m * dx * dx;
+            sumY += sy + m * dy;
+            sumY2 += sy2 + 2 * dy * sy + m * dy * dy;
+            sumXY += sxy + dx * sy + dy * sx + m * dx * dy;
+        }
+
+        /** Mínimos cuadrados; {@code reference} se suma al intercepto. */
+        public Fit fit(double reference) {
+            if (n < 2) {
+                return new Fit((int) n, 0, 0, 0);
+            }
+            double sxx = sumX2 - sumX * sumX / n;
+            double sxy = sumXY - sumX * sumY / n;
+            double syy = sumY2 - sumY * sumY / n;
+
+            double slope = sxx > 0 ? sxy / sxx : 0;
+            double intercept = (sumY - slope * sumX) / n + reference;
+            // R² = 1 - SSres/SStot, con SSres = SStot - slope * Sxy
+            double rSquared = syy > 0 ? Math.max(0, Math.min(1, slope * sxy / syy)) : 0;
+            return new Fit((int) n, slope, intercept, rSquared);
+        }
+    }
+
+    // Sumas de los ticks de una hora local: j es el índice dentro de la hora,
+    // t los segundos desde origin y u el precio menos reference
+    private static final class HourBucket {
+        final long hour;
+        final long origin;
+        final double reference;
+        long firstTime;
+
+        long n;
+        double sumJ, sumJ2, sumJU;
+        double sumT, sumT2, sumTU;
+        double sumU, sumU2;
+
+        HourBucket(long hour, long origin, double reference) {
+            this.hour = hour;
+            this.origin = origin;
+            this.reference = reference;
+            this.firstTime = origin;
+        }
+
+        void add(long time, double price) {
+            double j = n;
+            double t = (time - origin) / 1000.0;
+            double u = price - reference;
+            sumJ += j;
+            sumJ2 += j * j;
+            sumJU += j * u;
+            sumT += t;
+            sumT2 += t * t;
+            sumTU += t * u;
+            sumU += u;
+            sumU2 += u * u;
+            n++;
+        }
+
+        /** Quita el punto más viejo (j = 0) y recorre un lugar el índice de los demás. */
+        void removeFirst(long time, double price, long nextTime) {
+            double t = (time - origin) / 1000.0;
+            double u = price - reference;
+            n--;
+            sumT -= t;
+            sumT2 -= t * t;
+            sumTU -= t * u;
+            sumU -= u;
+            sumU2 -= u * u;
+            // j = 0 no aportaba a Σj, Σj² ni Σju; Σ(j-1)² = Σj² - 2Σj + n
+            sumJ2 += n - 2 * sumJ;
+            sumJ -= n;
+            sumJU -= sumU;
+            firstTime = nextTime;
+        }
+    }
+
+    // Ticks de la ventana de una cripto en una cola circular y sus sumas por hora
+    private static final class CryptoWindow {
+        final ReentrantLock lock = new ReentrantLock();
+        final ArrayDeque<HourBucket> buckets = new ArrayDeque<>();
+        long[] times = new long[256];
+        double[] prices = new double[256];
+        int head = 0;
+        int size = 0;
+
+        void add(long time, double price) {
+            if (size > 0 && time <= times[physical(size - 1)]) {
+                return;
+            }
+            if (size == times.length) {
+                grow();
+            }
+            int idx = physical(size);
+            times[idx] = time;
+            prices[idx] = price;
+            size++;
+            addToBucket(time, price);
+        }
+
+        /**
+         * Inserta un tick atrasado en su lugar; luego hay que llamar a
+         * rebuildBuckets(). No hace nada si ya está o si quedó fuera de la ventana.
+         */
+        boolean insert(long time, double price, long windowMillis) {
+            if (size == 0 || time < times[physical(size - 1)] - windowMillis) {
+                return false;
+            }
+            int pos = firstAtOrAfter(time);
+            if (pos < size && times[physical(pos)] == time) {
+                return false;
+            }
+            if (size == times.length) {
+                grow();
+            }
+            for (int i = size; i > pos; i--) {
+                times[physical(i)] = times[physical(i - 1)];
+                prices[physical(i)] = prices[physical(i - 1)];
+            }
+            times[physical(pos)] = time;
+            prices[physical(pos)] = price;
+            size++;
+            return true;
+        }
+
+        void rebuildBuckets() {
+            buckets.clear();
+            for (int i = 0; i < size; i++) {
+                addToBucket(times[physical(i)], prices[physical(i)]);
+            }
+        }
+
+        private void addToBucket(long time, double price) {
+            long hour = localHour(time);
+            HourBucket last = buckets.peekLast();
+            if (last == null || last.hour != hour) {
+                last = new HourBucket(hour, time, price);
+                buckets.addLast(last);
+            }
+            last.add(time, price);
+        }
+
+        void evictBefore(long from) {
+            while (size > 0 && times[head] < from) {
+                long time = times[head];
+                double price = prices[head];
+                head = (head + 1) % times.length;
+                size--;
+
+                // Los ticks y las horas van en el mismo orden: el que sale es
+                // siempre el primero de la hora más vieja
+                HourBucket first = buckets.peekFirst();
+                first.removeFirst(time, price, size > 0 ? times[head] : 0);
+                if (first.n == 0) {
+                    buckets.pollFirst();
+                }
+            }
+        }
+
+        /** Índice lógico del primer tick con time >= from (size si ninguno). */
+        int firstAtOrAfter(long from) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (times[physical(mid)] < from) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /** Sumas de la misma hora con solo los ticks de índice lógico [start, end). */
+        HourBucket partial(HourBucket bucket, int start, int end) {
+            HourBucket part = new HourBucket(bucket.hour, times[physical(start)], prices[physical(start)]);
+            for (int i = start; i < end; i++) {
+                part.add(times[physical(i)], prices[physical(i)]);
+            }
+            return part;
+        }
+
+        private int physical(int logical) {
+            return (head + logical) % times.length;
+        }
+
+        private void grow() {
+            long[] newTimes = new long[times.length * 2];
+            double[] newPrices = new double[prices.length * 2];
+            for (int i = 0; i < size; i++) {
+                newTimes[i] = times[physical(i)];
+                newPrices[i] = prices[physical(i)];
+            }
+            times = newTimes;
+            prices = newPrices;
+            head = 0;
+        }
+    }
+
+    private final Map<Integer, CryptoWindow> windows = new ConcurrentHashMap<>();
+    private final long windowMillis;
+    private volatile long loadedSince = Long.MAX_VALUE;
+
+    public RegressionEngine(int windowHours) {
+        this.windowMillis = windowHours * 3600_000L;
+    }
+
+    @Override
+    public void onPrices(List<PriceTick> ticks) {
+        for (PriceTick tick : ticks) {
+            CryptoWindow window = windows.computeIfAbsent(tick.cryptoId(), id -> new CryptoWindow());
+            window.lock.lock();
+            try {
+                window.add(tick.time(), tick.price());
+                window.evictBefore(tick.time() - windowMillis);
+            } finally {
+                window.lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void onLatePrices(List<PriceTick> ticks) {
+        Map<Integer, List<PriceTick>> byCrypto = new HashMap<>();
+        for (PriceTick tick : ticks) {
+            byCrypto.computeIfAbsent(tick.cryptoId(), id -> new ArrayList<>()).add(tick);
+        }
+        for (Map.Entry<Integer, List<PriceTick>> entry : byCrypto.entrySet()) {
+            CryptoWindow window = windows.get(entry.getKey());
+            if (window == null) {
+                continue;
+            }
+            window.lock.lock();
+            try {
+                boolean changed = false;
+                for (PriceTick tick : entry.getValue()) {
+                    changed |= window.insert(tick.time(), tick.price(), windowMillis);
+                }
+                if (changed) {
+                    window.rebuildBuckets();
+                }
+            } finally {
+                window.lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void onHistoryLoaded(long since) {
+        loadedSince = Math.min(loadedSince, since);
+    }
+
+    /** true si ya se cargó el historial desde el instante indicado y sigue dentro de la ventana. */
+    public boolean covers(long from) {
+        return from >= loadedSince && from >= System.currentTimeMillis() - windowMillis;
+    }
+
+    /**
+     * Regresión de los ticks con time >= from cuya hora local está entre
+     * startHour y endHour (como HOUR(price_time) en MySQL). No modifica la
+     * ventana: las horas anteriores a from se saltan y la que queda partida se
+     * suma de nuevo con solo sus ticks desde from.
+     *
+     * @param timeAxis true para x = segundos desde el primer punto; false para
+     *                 x = índice del punto
+     */
+    public Fit fit(int cryptoId, long from, int startHour, int endHour, boolean timeAxis) {
+        CryptoWindow window = windows.get(cryptoId);
+        if (window == null) {
+            return Fit.EMPTY;
+        }
+
+        window.lock.lock();
+        try {
+            int first = window.firstAtOrAfter(from);
+
+            Sums sums = new Sums();
+            HourBucket base = null;
+            long index = 0;
+            // Índice lógico del primer tick de cada hora
+            int position = 0;
+            for (HourBucket stored : window.buckets) {
+                int start = position;
+                int end = position + (int) stored.n;
+                position = end;
+                if (end <= first) {
+                    continue;
+                }
+                int hourOfDay = (int) Math.floorMod(stored.hour, 24L);
+                if (hourOfDay < startHour || hourOfDay > endHour) {
+                    continue;
+                }
+                HourBucket bucket = start < first ? window.partial(stored, first, end) : stored;
+                if (base == null) {
+                    base = bucket;
+                }
+
+                double dy = bucket.reference - base.reference;
+                if (timeAxis) {
+                    double dx = (bucket.origin - base.firstTime) / 1000.0;
+                    sums.merge(bucket.n, bucket.sumT, bucket.sumT2, bucket.sumU, bucket.sumU2, bucket.sumTU, dx, dy);
+                } else {
+                    sums.merge(bucket.n, bucket.sumJ, bucket.sumJ2, bucket.sumU, bucket.sumU2, bucket.sumJU, index, dy);
+                }
+                index += bucket.n;
+            }
+            return base != null ? sums.fit(base.reference) : Fit.EMPTY;
+        } finally {
+            window.lock.unlock();
+        }
+    }
+
+    /** Horas locales desde epoch; módulo 24 es la hora del día de TimeSeriesStore.hourOfDay. */
+    static long localHour(long time) {
+        return Math.floorDiv(time + TimeZone.getDefault().getOffset(time), 3600_000L);
+    }
+}
@@ -0,0 +1,140 @@
+package com.cryptotracker.timeseries;
+
+/**
+ * Indicadores sobre los últimos {@code window} precios de una serie,
+ * actualizados en O(1) por tick.
+ *
+ * La media y la varianza usan el acumulador de Welford en su versión de
+ * ventana deslizante (al entrar un precio sale el más viejo); la EMA arranca
+ * con la SMA de la primera ventana; el mínimo y el máximo salen de colas
+ * monótonas. Todo vive en arreglos primitivos de tamaño window.
+ *
+ * No es thread-safe: cada instancia la actualiza un solo hilo.
+ */
+public class RollingIndicators {
+
+    private final int window;
+    private final double alpha;
+
+    // Últimos window precios (cola circular)
+    private final double[] values;
+    private int head = 0;
+    private int count = 0;
+    private long seq = 0;
+
+    // Welford: media y suma de cuadrados de las diferencias con la media
+    private double mean = 0;
+    private double m2 = 0;
+    private double ema = 0;
+
+    // Colas monótonas: número de tick y precio de los candidatos a mínimo/máximo
+    private final long[] minSeq;
+    private final double[] minVal;
+    private int minHead = 0;
+    private int minSize = 0;
+    private final long[] maxSeq;
+    private final double[] maxVal;
+    private int maxHead = 0;
+    private int maxSize = 0;
+
+    public RollingIndicators(int window) {
+        if (window < 2) {
+            throw new IllegalArgumentException("La ventana debe ser de al menos 2 puntos");
+        }
+        this.window = window;
+        this.alpha = 2.0 / (window + 1);
+        this.values = new double[window];
+        this.minSeq = new long[window];
+        this.minVal = new double[window];
+        this.maxSeq = new long[window];
+        this.maxVal = new double[window];
+    }
+
+    public void add(double price) {
+        if (count < window) {
+            values[(head + count) % window] = price;
+            count++;
+            double delta = price - mean;
+            mean += delta / count;
+            m2 += delta * (price - mean);
+        } else {
+            double old = values[head];
+            values[head] = price;
+            head = (head + 1) % window;
+
+            double newMean = mean + (price - old) / window;
+            m2 += (price - old) * (price - newMean + old - mean);
+            mean = newMean;
+            if (m2 < 0) {
+                // Solo puede pasar por redondeo con precios casi constantes
+                m2 = 0;
+            }
+        }
+
+        // Hasta llenar la primera ventana la EMA es la SMA
+        ema = seq < window ? mean : ema + alpha * (price - ema);
+
+        pushMin(price);
+        pushMax(price);
+        seq++;
+    }
+
+    private void pushMin(double price) {
+        // Los candidatos más nuevos y menores dejan fuera a los que quedan atrás
+        while (minSize > 0 && minVal[(minHead + minSize - 1) % window] >= price) {
+            minSize--;
+        }
+        if (minSize > 0 && minSeq[minHead] <= seq - window) {
+            minHead = (minHead + 1) % window;
+            minSize--;
+        }
+        int idx = (minHead + minSize) % window;
+        minSeq[idx] = seq;
+        minVal[idx] = price;
+        minSize++;
+    }
+
+    private void pushMax(double price) {
+        while (maxSize > 0 && maxVal[(maxHead + maxSize - 1) % window] <= price) {
+            maxSize--;
+        }
+        if (maxSize > 0 && maxSeq[maxHead] <= seq - window) {
+            maxHead = (maxHead + 1) % window;
+            maxSize--;
+        }
+        int idx = (maxHead + maxSize) % window;
+        maxSeq[idx] = seq;
+        maxVal[idx] = price;
+        maxSize++;
+    }
+
+    /** true cuando ya entraron al menos window precios. */
+    public boolean isFull() {
+        return count == window;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public double sma() {
+        return mean;
+    }
+
+    public double ema() {
+        return ema;
+    }
+
+    /** Desviación estándar poblacional de la ventana (la que usan las bandas de Bollinger). */
+    public double std() {
+        return count > 0 ? Math.sqrt(m2 / count) : 0;
+    }
+
+    public double min() {
+        return minVal[minHead];
+    }
+
+    public double max() {
+        return maxVal[maxHead];
+    }
+}
@@ -0,0 +1,21 @@
+package com.cryptotracker.timeseries;
+
+/**
+ * Copia de un rango de la serie de una cripto, en arreglos paralelos
+ * ordenados por tiempo.
+ *
+ * @param times  price_time en epoch millis
+ * @param prices precio en USD
+ */
+public record SeriesSlice(long[] times, double[] prices) {
+
+    public static final SeriesSlice EMPTY = new SeriesSlice(new long[0], new double[0]);
+
+    public int size() {
+        return times.length;
+    }
+
+    public boolean isEmpty() {
+        return times.length == 0;
+    }
+}
@@ -0,0 +1,119 @@
+package com.cryptotracker.timeseries;
+
+import com.cryptotracker.scraper.PriceFeed;
+import com.cryptotracker.scraper.PriceTick;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serie de tiempo en memoria con un PriceRingBuffer por cripto.
+ *
+ * Se alimenta del PriceFeed (scraper en el líder, PriceSyncTask en los
+ * seguidores) y guarda la ventana de data.retention.hours. Los endpoints de
+ * historial y gráficas leen de aquí cuando el rango pedido está cubierto y
+ * solo van a MySQL si el historial todavía no se ha cargado. También es el
+ * Backfill del PriceFeed: los ticks que llegan tarde se insertan en su lugar.
+ */
+public class TimeSeriesStore implements PriceFeed.PriceListener, PriceFeed.Backfill {
+
+    private final Map<Integer, PriceRingBuffer> series = new ConcurrentHashMap<>();
+    private final int capacity;
+    private volatile long loadedSince = Long.MAX_VALUE;
+
+    public TimeSeriesStore(int retentionHours, int intervalSeconds) {
+        this.capacity = capacityFor(retentionHours, intervalSeconds);
+    }
+
+    /**
+     * Ticks que caben en la ventana de retención, con 10% de holgura porque
+     * el scraper usa fixed delay y en la práctica tarda un poco más que el
+     * intervalo configurado.
+     */
+    static int capacityFor(int retentionHours, int intervalSeconds) {
+        long ticks = (long) retentionHours * 3600 / Math.max(1, intervalSeconds);
+        return (int) Math.min(Integer.MAX_VALUE - 8, Math.max(64, ticks + ticks / 10 + 16));
+    }
+
+    @Override
+    public void onPrices(List<PriceTick> ticks) {
+        for (PriceTick tick : ticks) {
+            buffer(tick.cryptoId()).append(tick.time(), tick.price());
+        }
+    }
+
+    @Override
+    public List<PriceTick> fill(List<PriceTick> ticks) {
+        List<PriceTick> inserted = new ArrayList<>();
+        for (PriceTick tick : ticks) {
+            PriceRingBuffer buffer = series.get(tick.cryptoId());
+            if (buffer != null && buffer.insert(tick.time(), tick.price())) {
+                inserted.add(tick);
+            }
+        }
+        return inserted;
+    }
+
+    @Override
+    public void onHistoryLoaded(long since) {
+        loadedSince = Math.min(loadedSince, since);
+        for (PriceRingBuffer buffer : series.values()) {
+            buffer.setLoadedSince(since);
+        }
+    }
+
+    private PriceRingBuffer buffer(int cryptoId) {
+        return series.computeIfAbsent(cryptoId, id -> new PriceRingBuffer(capacity, loadedSince));
+    }
+
+    /** true si la memoria tiene todos los ticks de la cripto desde el instante indicado. */
+    public boolean covers(int cryptoId, long from) {
+        PriceRingBuffer buffer = series.get(cryptoId);
+        if (buffer == null) {
+            // Sin buffer: si el historial ya se cargó, de verdad no hay datos
+            return from >= loadedSince;
+        }
+        return buffer.covers(from);
+    }
+
+    /** true si la memoria cubre a todas las criptos desde el instante indicado. */
+    public boolean coversAll(long from) {
+        if (from < loadedSince) {
+            return false;
+        }
+        for (PriceRingBuffer buffer : series.values()) {
+            if (!buffer.covers(from)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Puntos con from <= time < to. */
+    public SeriesSlice range(int cryptoId, long from, long to) {
+        PriceRingBuffer buffer = series.get(cryptoId);
+        return buffer != null ? buffer.range(from, to) : SeriesSlice.EMPTY;
+    }
+
+    /** Página de a lo más limit puntos con from <= time < to. */
+    public SeriesSlice range(int cryptoId, long from, long to, int limit) {
+        PriceRingBuffer buffer = series.get(cryptoId);
+        return buffer != null ? buffer.range(from, to, limit) : SeriesSlice.EMPTY;
+    }
+
+    /** Ids de las criptos con datos, en orden ascendente. */
+    public List<Integer> cryptoIds() {
+        List<Integer> ids = new ArrayList<>(series.keySet());
+        ids.sort(null);
+        return ids;
+    }
+
+    /** Equivalente a HOUR(price_time) de MySQL para un epoch millis en la zona local. */
+    public static int hourOfDay(long time) {
+        long local = time + TimeZone.getDefault().getOffset(time);
+        return (int) Math.floorMod(local / 3600_000L, 24L);
+    }
+}
@@ -2,11 +2,14 @@ package com.cryptotracker.zookeeper;
 
 import org.apache.zookeeper.*;
 import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 
 public class LeaderElection implements Watcher {
+    private static final Logger log = LoggerFactory.getLogger(LeaderElection.class);
     
     public interface LeadershipListener {
         void onBecomeLeader();
@@ -44,7 +47,7 @@ public class LeaderElection implements Watcher {
             CreateMode.EPHEMERAL_SEQUENTIAL
         );
         
-        System.out.println("Nodo de elección creado: " + currentZNode);
+        log.info("Nodo de elección creado: {}", currentZNode);
         
         // Verificar liderazgo
         checkLeadership();
@@ -90,14 +93,14 @@ public class LeaderElection implements Watcher {
             if (event.getState() == Event.KeeperState.SyncConnected) {
                 connectedSignal.countDown();
             } else if (event.getState() == Event.KeeperState.Expired) {
-                System.err.println("Sesión de ZooKeeper expirada");
+                log.warn("Sesión de ZooKeeper expirada");
             }
         } else if (event.getType() == Event.EventType.NodeDeleted) {
             // Un nodo fue eliminado, verificar liderazgo
             try {
                 checkLeadership();
             } catch (Exception e) {
-                System.err.println("Error al verificar liderazgo: " + e.getMessage());
+                log.error("Error al verificar liderazgo: {}", e.getMessage());
             }
         }
     }
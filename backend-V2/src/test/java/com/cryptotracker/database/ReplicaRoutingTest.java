@@ -0,0 +1,185 @@
+package com.cryptotracker.database;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reparto de lecturas de DatabaseManager con un primario y dos réplicas H2 en
+ * memoria. Cada base tiene una tabla whoami para saber de dónde salió una
+ * conexión, y cada réplica una tabla replica_status que hace de SHOW REPLICA
+ * STATUS.
+ */
+class ReplicaRoutingTest {
+
+    private static final String OPTIONS = ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private final String prefix = "rr" + UUID.randomUUID().toString().replace("-", "");
+    private DatabaseManager db;
+
+    private String url(String name) {
+        return "jdbc:h2:mem:" + prefix + name + OPTIONS;
+    }
+
+    // Para las réplicas: si la base no existe la conexión falla en vez de crearla vacía
+    private String existingUrl(String name) {
+        return "jdbc:h2:mem:" + prefix + name + ";IFEXISTS=TRUE" + OPTIONS;
+    }
+
+    private void execute(String name, String... sql) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url(name), "sa", "");
+             Statement stmt = conn.createStatement()) {
+            for (String statement : sql) {
+                stmt.execute(statement);
+            }
+        }
+    }
+
+    private void createReplica(String name, long lagSeconds) throws SQLException {
+        execute(name,
+                "CREATE TABLE whoami (name VARCHAR(20))",
+                "INSERT INTO whoami VALUES ('" + name + "')",
+                "CREATE TABLE replica_status (lag_seconds BIGINT)",
+                "INSERT INTO replica_status VALUES (" + lagSeconds + ")");
+    }
+
+    private void setLag(String name, long lagSeconds) throws SQLException {
+        execute(name, "UPDATE replica_status SET lag_seconds = " + lagSeconds);
+    }
+
+    private DatabaseManager start() throws SQLException {
+        Properties config = new Properties();
+        config.setProperty("db.url", url("primary"));
+        config.setProperty("db.user", "sa");
+        config.setProperty("db.password", "");
+        config.setProperty("db.replica.urls", existingUrl("replica1") + "," + existingUrl("replica2"));
+        config.setProperty("db.replica.lag.query",
+                "SELECT lag_seconds AS Seconds_Behind_Source FROM replica_status");
+        config.setProperty("db.replica.max.lag.seconds", "5");
+        config.setProperty("db.replica.check.ms", "50");
+        config.setProperty("db.replica.acquire.timeout.ms", "250");
+        db = new DatabaseManager(config);
+        db.initialize();
+        return db;
+    }
+
+    private static String source(Connection conn) throws SQLException {
+        try (conn; Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT name FROM whoami")) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    private Set<String> readSources(int reads) throws SQLException {
+        Set<String> sources = new HashSet<>();
+        for (int i = 0; i < reads; i++) {
+            sources.add(source(db.getReadConnection()));
+        }
+        return sources;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "la revisión de réplicas no cambió a tiempo");
+            Thread.sleep(20);
+        }
+    }
+
+    @BeforeEach
+    void createPrimary() throws SQLException {
+        execute("primary",
+                "CREATE TABLE crypto (id INT PRIMARY KEY, symbol VARCHAR(10), name VARCHAR(50))",
+                "CREATE TABLE whoami (name VARCHAR(20))",
+                "INSERT INTO whoami VALUES ('primary')");
+    }
+
+    @AfterEach
+    void close() throws SQLException {
+        if (db != null) {
+            db.close();
+        }
+    }
+
+    @Test
+    void readsGoToTheReplicasInTurnAndWritesToThePrimary() throws SQLException {
+        createReplica("replica1", 0);
+        createReplica("replica2", 1);
+        start();
+
+        assertEquals(2, db.getHealthyReplicaCount());
+        assertEquals(Set.of("replica1", "replica2"), readSources(4));
+        assertEquals("primary", source(db.getConnection()));
+    }
+
+    @Test
+    void laggingReplicasAreSkippedUntilTheyCatchUp() throws Exception {
+        createReplica("replica1", 0);
+        createReplica("replica2", 0);
+        start();
+
+        setLag("replica1", 60);
+        await(() -> db.getHealthyReplicaCount() == 1);
+        assertEquals(Set.of("replica2"), readSources(4));
+
+        setLag("replica2", 60);
+        await(() -> db.getHealthyReplicaCount() == 0);
+        assertEquals(Set.of("primary"), readSources(4));
+
+        setLag("replica1", 2);
+        await(() -> db.getHealthyReplicaCount() == 1);
+        assertEquals(Set.of("replica1"), readSources(4));
+    }
+
+    @Test
+    void replicaThatStopsReplicatingIsSkipped() throws Exception {
+        createReplica("replica1", 0);
+        createReplica("replica2", 0);
+        start();
+
+        // Sin filas o con el retraso nulo el retraso es desconocido
+        execute("replica2", "UPDATE replica_status SET lag_seconds = NULL");
+        await(() -> db.getHealthyReplicaCount() == 1);
+        assertEquals(Set.of("replica1"), readSources(4));
+    }
+
+    @Test
+    void replicaThatGoesDownFallsBackToThePrimary() throws Exception {
+        createReplica("replica1", 0);
+        start();
+
+        assertEquals(Set.of("replica1"), readSources(2));
+
+        execute("replica1", "SHUTDOWN");
+        await(() -> db.getHealthyReplicaCount() == 0);
+        assertEquals(Set.of("primary"), readSources(4));
+    }
+
+    @Test
+    void replicaDownAtStartupJoinsWhenItComesUp() throws Exception {
+        start();
+
+        assertEquals(2, db.getReplicaCount());
+        assertEquals(0, db.getHealthyReplicaCount());
+        assertEquals(Set.of("primary"), readSources(2));
+
+        createReplica("replica2", 0);
+        await(() -> db.getHealthyReplicaCount() == 1);
+        assertEquals(Set.of("replica2"), readSources(4));
+    }
+}
@@ -0,0 +1,125 @@
+package com.cryptotracker.database;
+
+import com.cryptotracker.scraper.PriceTick;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TickJournalTest {
+
+    private static final int HEADER_SIZE = 64;
+
+    @TempDir
+    Path dir;
+
+    private static List<PriceTick> ticks(int from, int to) {
+        List<PriceTick> ticks = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            ticks.add(new PriceTick(1 + i % 3, 100.0 + i, 1_000L * i));
+        }
+        return ticks;
+    }
+
+    private TickJournal open(Path path, int capacity) throws IOException {
+        TickJournal journal = new TickJournal(path, capacity, 60_000);
+        journal.open();
+        return journal;
+    }
+
+    @Test
+    void pendingTicksSurviveAReopen() throws IOException {
+        Path path = dir.resolve("ticks.journal");
+        TickJournal journal = open(path, 16);
+        assertEquals(5, journal.append(ticks(0, 5)));
+        journal.acknowledge(2);
+        journal.close();
+
+        journal = open(path, 16);
+        assertEquals(3, journal.pending());
+        assertEquals(ticks(2, 5), journal.readPending(10));
+        assertEquals(ticks(2, 4), journal.readPending(2));
+        journal.close();
+    }
+
+    @Test
+    void appendStopsWhenTheRingIsFull() throws IOException {
+        TickJournal journal = open(dir.resolve("ticks.journal"), 4);
+
+        assertEquals(4, journal.append(ticks(0, 6)));
+        assertEquals(0, journal.append(ticks(6, 7)));
+
+        journal.acknowledge(3);
+        assertEquals(3, journal.append(ticks(4, 8)));
+        assertEquals(ticks(3, 7), journal.readPending(10));
+        journal.close();
+    }
+
+    @Test
+    void wrappedRecordsAreReadBackAfterAReopen() throws IOException {
+        Path path = dir.resolve("ticks.journal");
+        TickJournal journal = open(path, 4);
+        for (int i = 0; i < 10; i++) {
+            journal.append(ticks(i, i + 1));
+            journal.acknowledge(i >= 2 ? 1 : 0);
+        }
+        List<PriceTick> pending = journal.readPending(10);
+        journal.close();
+
+        journal = open(path, 4);
+        assertEquals(pending, journal.readPending(10));
+        assertEquals(ticks(8, 10), pending);
+        journal.close();
+    }
+
+    @Test
+    void aCorruptRecordEndsTheJournal() throws IOException {
+        Path path = dir.resolve("ticks.journal");
+        TickJournal journal = open(path, 16);
+        journal.append(ticks(0, 5));
+        journal.close();
+
+        // Escritura a medias del cuarto registro: su precio no coincide con el CRC
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {1, 2, 3}),
+                    HEADER_SIZE + 3L * TickJournal.RECORD_SIZE + 12);
+        }
+
+        journal = open(path, 16);
+        assertEquals(ticks(0, 3), journal.readPending(10));
+        journal.close();
+    }
+
+    @Test
+    void reopeningWithAnotherCapacityRewritesThePendingTicks() throws IOException {
+        Path path = dir.resolve("ticks.journal");
+        TickJournal journal = open(path, 8);
+        journal.append(ticks(0, 8));
+        journal.acknowledge(3);
+        journal.append(ticks(8, 11));
+        journal.close();
+
+        journal = open(path, 32);
+        assertEquals(32, journal.getCapacity());
+        assertEquals(ticks(3, 11), journal.readPending(100));
+        journal.close();
+
+        // Al achicarla se quedan los más viejos que quepan
+        journal = open(path, 5);
+        assertEquals(5, journal.getCapacity());
+        assertEquals(ticks(3, 8), journal.readPending(100));
+        journal.close();
+
+        journal = open(path, 5);
+        assertEquals(ticks(3, 8), journal.readPending(100));
+        journal.close();
+    }
+}
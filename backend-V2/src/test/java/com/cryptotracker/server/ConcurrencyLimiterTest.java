@@ -0,0 +1,97 @@
+package com.cryptotracker.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrencyLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(5);
+
+    @Test
+    void rejectsRightAwayWhenFullAndNothingCanQueue() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 10, 0, 1000, 100);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(1, limiter.getRejectedCount());
+    }
+
+    @Test
+    void queuedRequestGetsTheReleasedSlot() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 10, 1, 5000, 100);
+        assertTrue(limiter.tryAcquire());
+
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limiter.tryAcquire();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (limiter.getQueued() == 0) {
+            Thread.sleep(1);
+        }
+        limiter.release(FAST, false);
+
+        assertTrue(waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(1, limiter.getInFlight());
+        assertEquals(0, limiter.getQueued());
+    }
+
+    @Test
+    void queuedRequestGivesUpAfterTheTimeout() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 10, 1, 20, 100);
+        assertTrue(limiter.tryAcquire());
+
+        assertFalse(limiter.tryAcquire());
+        assertEquals(1, limiter.getRejectedCount());
+        assertEquals(0, limiter.getQueued());
+    }
+
+    @Test
+    void failuresAndSlowRequestsShrinkTheLimitDownToTheMinimum() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 8, 20, 0, 0, 100);
+
+        limiter.tryAcquire();
+        limiter.release(FAST, true);
+        assertEquals(9, limiter.getLimit());
+
+        limiter.tryAcquire();
+        limiter.release(SLOW, false);
+        assertEquals(8, limiter.getLimit());
+
+        limiter.tryAcquire();
+        limiter.release(SLOW, false);
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    void growsOnlyWhileTheWholeLimitIsInUse() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 10, 0, 0, 100);
+
+        // Con un solo lugar ocupado de dos no crece
+        for (int i = 0; i < 50; i++) {
+            limiter.tryAcquire();
+            limiter.release(FAST, false);
+        }
+        assertEquals(2, limiter.getLimit());
+
+        // Ocupando los dos, +1/límite por petición: unas cuantas lo suben a 3
+        for (int i = 0; i < 4; i++) {
+            limiter.tryAcquire();
+            limiter.tryAcquire();
+            limiter.release(FAST, false);
+            limiter.release(FAST, false);
+        }
+        assertEquals(3, limiter.getLimit());
+    }
+}
@@ -0,0 +1,64 @@
+package com.cryptotracker.server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketLimiterTest {
+
+    // Un token por segundo: la prueba termina mucho antes de que se rellene uno
+    private static final int PER_MINUTE = 60;
+
+    @Test
+    void allowsTheBurstAndThenLimits() {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(100);
+
+        for (int i = 0; i < 5; i++) {
+            TokenBucketLimiter.Decision decision = limiter.tryConsume("a", 1, PER_MINUTE, 5);
+            assertTrue(decision.allowed(), "petición " + i);
+            assertEquals(5, decision.limit());
+            assertEquals(4 - i, decision.remaining());
+        }
+
+        TokenBucketLimiter.Decision denied = limiter.tryConsume("a", 1, PER_MINUTE, 5);
+        assertFalse(denied.allowed());
+        assertEquals(0, denied.remaining());
+        assertEquals(1, denied.retryAfterSeconds());
+        assertEquals(5, denied.resetSeconds());
+        assertEquals(1, limiter.getLimitedCount());
+    }
+
+    @Test
+    void costConsumesSeveralTokens() {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(100);
+
+        assertTrue(limiter.tryConsume("a", 3, PER_MINUTE, 5).allowed());
+        TokenBucketLimiter.Decision tooExpensive = limiter.tryConsume("a", 3, PER_MINUTE, 5);
+        assertFalse(tooExpensive.allowed());
+        assertEquals(2, tooExpensive.remaining());
+        assertTrue(limiter.tryConsume("a", 2, PER_MINUTE, 5).allowed());
+    }
+
+    @Test
+    void clientsHaveSeparateBuckets() {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(100);
+
+        assertTrue(limiter.tryConsume("a", 1, PER_MINUTE, 1).allowed());
+        assertFalse(limiter.tryConsume("a", 1, PER_MINUTE, 1).allowed());
+        assertTrue(limiter.tryConsume("b", 1, PER_MINUTE, 1).allowed());
+        assertEquals(2, limiter.getClientCount());
+    }
+
+    @Test
+    void newClientsShareABucketPastTheLimit() {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(2);
+
+        assertTrue(limiter.tryConsume("a", 1, PER_MINUTE, 1).allowed());
+        assertTrue(limiter.tryConsume("b", 1, PER_MINUTE, 1).allowed());
+        assertTrue(limiter.tryConsume("c", 1, PER_MINUTE, 1).allowed());
+        assertFalse(limiter.tryConsume("d", 1, PER_MINUTE, 1).allowed());
+        assertEquals(3, limiter.getClientCount());
+    }
+}
@@ -0,0 +1,64 @@
+package com.cryptotracker.timeseries;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CandleAggregatorTest {
+
+    @Test
+    void buildsOhlcPerBucketAlignedToTheEpoch() {
+        CandleAggregator aggregator = new CandleAggregator(60_000);
+        aggregator.add(90_000, 10);
+        aggregator.add(100_000, 14);
+        aggregator.add(110_000, 8);
+        aggregator.add(119_999, 11);
+        aggregator.add(120_000, 12);
+        // Un minuto sin ticks no genera vela
+        aggregator.add(250_000, 9);
+
+        List<CandleAggregator.Candle> candles = aggregator.finish();
+
+        assertEquals(List.of(
+                new CandleAggregator.Candle(60_000, 10, 14, 8, 11, 4),
+                new CandleAggregator.Candle(120_000, 12, 12, 12, 12, 1),
+                new CandleAggregator.Candle(240_000, 9, 9, 9, 9, 1)), candles);
+    }
+
+    @Test
+    void sameCandlesWhereverTheWindowStarts() {
+        CandleAggregator whole = new CandleAggregator(300_000);
+        CandleAggregator fromMiddle = new CandleAggregator(300_000);
+        for (long t = 0; t < 3_600_000; t += 30_000) {
+            double price = 100 + Math.sin(t / 100_000.0);
+            whole.add(t, price);
+            if (t >= 600_000) {
+                fromMiddle.add(t, price);
+            }
+        }
+
+        List<CandleAggregator.Candle> all = whole.finish();
+        List<CandleAggregator.Candle> tail = fromMiddle.finish();
+
+        assertEquals(all.subList(2, all.size()), tail);
+    }
+
+    @Test
+    void noTicksNoCandles() {
+        assertTrue(new CandleAggregator(60_000).finish().isEmpty());
+    }
+
+    @Test
+    void parsesTheSupportedIntervals() {
+        assertEquals(60_000L, CandleAggregator.parseInterval("1m"));
+        assertEquals(300_000L, CandleAggregator.parseInterval("5m"));
+        assertEquals(900_000L, CandleAggregator.parseInterval("15m"));
+        assertEquals(3_600_000L, CandleAggregator.parseInterval("1h"));
+        assertThrows(IllegalArgumentException.class, () -> CandleAggregator.parseInterval("2m"));
+        assertThrows(IllegalArgumentException.class, () -> new CandleAggregator(0));
+    }
+}
@@ -0,0 +1,131 @@
+package com.cryptotracker.timeseries;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CorrelationMatrixTest {
+
+    private static SeriesSlice slice(long[] times, double[] prices) {
+        return new SeriesSlice(times, prices);
+    }
+
+    @Test
+    void alignedReturnsUseTheLastPriceAtOrBeforeEachGridPoint() {
+        SeriesSlice a = slice(new long[] {0, 15, 25}, new double[] {100, 110, 121});
+        // Empieza después del primer punto de la malla
+        SeriesSlice b = slice(new long[] {12, 31}, new double[] {50, 25});
+
+        double[][] returns = CorrelationMatrix.alignedReturns(List.of(a, b), 0, 30, 10);
+
+        // Malla 0, 10, 20, 30
+        assertEquals(3, returns[0].length);
+        assertEquals(0.0, returns[0][0], 1e-12);
+        assertEquals(Math.log(110.0 / 100), returns[0][1], 1e-12);
+        assertEquals(Math.log(121.0 / 110), returns[0][2], 1e-12);
+
+        assertTrue(Double.isNaN(returns[1][0]));
+        assertTrue(Double.isNaN(returns[1][1]));
+        assertEquals(0.0, returns[1][2], 1e-12);
+    }
+
+    @Test
+    void perfectlyCorrelatedAndOppositeSeries() {
+        double[] x = {0.01, -0.02, 0.015, 0.0, -0.005, 0.03};
+        double[] opposite = new double[x.length];
+        double[] scaled = new double[x.length];
+        for (int i = 0; i < x.length; i++) {
+            opposite[i] = -x[i];
+            scaled[i] = 3 * x[i];
+        }
+
+        double[][] matrix = CorrelationMatrix.pearson(new double[][] {x, opposite, scaled});
+
+        assertEquals(1.0, matrix[0][0], 1e-12);
+        assertEquals(-1.0, matrix[0][1], 1e-12);
+        assertEquals(1.0, matrix[0][2], 1e-12);
+        assertEquals(-1.0, matrix[2][1], 1e-12);
+    }
+
+    @Test
+    void pairsUseOnlyTheStepsBothSeriesHave() {
+        double nan = Double.NaN;
+        double[] late = {nan, nan, 0.01, -0.02, 0.03, 0.01};
+        double[] full = {0.5, -0.7, 0.01, -0.02, 0.03, 0.01};
+
+        double[][] matrix = CorrelationMatrix.pearson(new double[][] {late, full});
+
+        assertEquals(1.0, matrix[0][1], 1e-12);
+    }
+
+    @Test
+    void tooFewReturnsOrNoVariationIsNaN() {
+        double nan = Double.NaN;
+        double[] shortRow = {nan, nan, nan, 0.01, 0.02};
+        double[] flat = {0.0, 0.0, 0.0, 0.0, 0.0};
+        double[] other = {0.01, 0.03, -0.01, 0.02, 0.0};
+
+        double[][] matrix = CorrelationMatrix.pearson(new double[][] {shortRow, flat, other});
+
+        assertTrue(Double.isNaN(matrix[0][2]));
+        assertTrue(Double.isNaN(matrix[1][2]));
+        assertTrue(Double.isNaN(matrix[1][1]));
+    }
+
+    @Test
+    void parallelResultMatchesATwoPassComputation() {
+        // Suficientes pares y pasos para que el fork/join se divida
+        int series = 30;
+        int steps = 2000;
+        Random random = new Random(7);
+        double[] market = new double[steps];
+        for (int k = 0; k < steps; k++) {
+            market[k] = random.nextGaussian() * 0.01;
+        }
+        List<double[]> rows = new ArrayList<>();
+        for (int s = 0; s < series; s++) {
+            double[] row = new double[steps];
+            double beta = random.nextDouble();
+            for (int k = 0; k < steps; k++) {
+                row[k] = k < s * 10 ? Double.NaN : beta * market[k] + random.nextGaussian() * 0.01;
+            }
+            rows.add(row);
+        }
+        double[][] returns = rows.toArray(new double[0][]);
+
+        double[][] matrix = CorrelationMatrix.pearson(returns);
+
+        for (int i = 0; i < series; i++) {
+            for (int j = 0; j < series; j++) {
+                int start = Math.max(i, j) * 10;
+                assertEquals(twoPass(returns[i], returns[j], start), matrix[i][j], 1e-9, i + "," + j);
+            }
+        }
+    }
+
+    private static double twoPass(double[] x, double[] y, int start) {
+        int m = x.length - start;
+        double meanX = 0;
+        double meanY = 0;
+        for (int k = start; k < x.length; k++) {
+            meanX += x[k];
+            meanY += y[k];
+        }
+        meanX /= m;
+        meanY /= m;
+        double sxy = 0;
+        double sxx = 0;
+        double syy = 0;
+        for (int k = start; k < x.length; k++) {
+            sxy += (x[k] - meanX) * (y[k] - meanY);
+            sxx += (x[k] - meanX) * (x[k] - meanX);
+            syy += (y[k] - meanY) * (y[k] - meanY);
+        }
+        return sxy / Math.sqrt(sxx * syy);
+    }
+}
@@ -0,0 +1,80 @@
+package com.cryptotracker.timeseries;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.function.IntToDoubleFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DownsamplerTest {
+
+    private static SeriesSlice series(int n, IntToDoubleFunction price) {
+        Downsampler.SeriesBuilder builder = new Downsampler.SeriesBuilder();
+        for (int i = 0; i < n; i++) {
+            builder.add(i * 1000L, price.applyAsDouble(i));
+        }
+        return builder.build();
+    }
+
+    @Test
+    void shortSeriesIsReturnedAsIs() {
+        SeriesSlice slice = series(10, i -> i);
+
+        assertSame(slice, Downsampler.lttb(slice, 10));
+        assertSame(slice, Downsampler.lttb(slice, 50));
+        assertSame(slice, Downsampler.lttb(slice, 2));
+    }
+
+    @Test
+    void keepsTheEndsAndReturnsThresholdPointsInOrder() {
+        SeriesSlice slice = series(1000, i -> Math.sin(i / 30.0));
+
+        SeriesSlice reduced = Downsampler.lttb(slice, 100);
+
+        assertEquals(100, reduced.size());
+        assertEquals(0L, reduced.times()[0]);
+        assertEquals(999_000L, reduced.times()[99]);
+        for (int i = 1; i < reduced.size(); i++) {
+            assertTrue(reduced.times()[i] > reduced.times()[i - 1]);
+        }
+    }
+
+    @Test
+    void everyPointComesFromTheOriginalSeries() {
+        SeriesSlice slice = series(500, i -> (i * 37) % 101);
+
+        SeriesSlice reduced = Downsampler.lttb(slice, 40);
+
+        for (int i = 0; i < reduced.size(); i++) {
+            int index = Arrays.binarySearch(slice.times(), reduced.times()[i]);
+            assertTrue(index >= 0);
+            assertEquals(slice.prices()[index], reduced.prices()[i]);
+        }
+    }
+
+    @Test
+    void keepsASpikeThatAnAverageWouldFlatten() {
+        SeriesSlice slice = series(1000, i -> i == 503 ? 500.0 : 100.0);
+
+        SeriesSlice reduced = Downsampler.lttb(slice, 20);
+
+        double max = Arrays.stream(reduced.prices()).max().orElseThrow();
+        assertEquals(500.0, max);
+    }
+
+    @Test
+    void builderGrowsPastItsInitialCapacity() {
+        Downsampler.SeriesBuilder builder = new Downsampler.SeriesBuilder();
+        for (int i = 0; i < 1000; i++) {
+            builder.add(i, i);
+        }
+        assertEquals(1000, builder.size());
+        assertEquals(999.0, builder.build().prices()[999]);
+
+        builder.clear();
+        assertEquals(0, builder.build().size());
+    }
+}
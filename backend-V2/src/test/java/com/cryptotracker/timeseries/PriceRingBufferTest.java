@@ -0,0 +1,146 @@
+package com.cryptotracker.timeseries;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PriceRingBufferTest {
+
+    private static PriceRingBuffer filled(int capacity, long... times) {
+        PriceRingBuffer buffer = new PriceRingBuffer(capacity, 0);
+        for (long time : times) {
+            buffer.append(time, time * 10.0);
+        }
+        return buffer;
+    }
+
+    @Test
+    void rangeIsHalfOpen() {
+        PriceRingBuffer buffer = filled(8, 10, 20, 30, 40);
+
+        SeriesSlice slice = buffer.range(20, 40);
+
+        assertArrayEquals(new long[] {20, 30}, slice.times());
+        assertArrayEquals(new double[] {200, 300}, slice.prices());
+    }
+
+    @Test
+    void rangeOutsideTheDataIsEmpty() {
+        PriceRingBuffer buffer = filled(8, 10, 20, 30);
+
+        assertSame(SeriesSlice.EMPTY, buffer.range(31, 100));
+        assertSame(SeriesSlice.EMPTY, buffer.range(0, 10));
+        assertSame(SeriesSlice.EMPTY, buffer.range(20, 20));
+    }
+
+    @Test
+    void rangeLimitKeepsTheOldestPoints() {
+        PriceRingBuffer buffer = filled(8, 10, 20, 30, 40);
+
+        assertArrayEquals(new long[] {10, 20}, buffer.range(0, 100, 2).times());
+    }
+
+    @Test
+    void appendIgnoresPointsThatAreNotNewer() {
+        PriceRingBuffer buffer = filled(8, 10, 20);
+        buffer.append(20, 1);
+        buffer.append(15, 1);
+
+        assertEquals(2, buffer.size());
+        assertArrayEquals(new double[] {100, 200}, buffer.range(0, 100).prices());
+    }
+
+    @Test
+    void wrapsAroundKeepingTheNewestInOrder() {
+        PriceRingBuffer buffer = filled(4, 10, 20, 30, 40, 50, 60);
+
+        assertEquals(4, buffer.size());
+        // El rango cruza el final del arreglo físico
+        assertArrayEquals(new long[] {30, 40, 50, 60}, buffer.range(0, 100).times());
+        assertArrayEquals(new long[] {40, 50}, buffer.range(35, 55).times());
+    }
+
+    @Test
+    void coversStartsAfterTheLastEvictedPoint() {
+        PriceRingBuffer buffer = filled(4, 10, 20, 30, 40);
+        assertTrue(buffer.covers(0));
+
+        buffer.append(50, 500);
+
+        assertFalse(buffer.covers(10));
+        assertTrue(buffer.covers(11));
+        assertTrue(buffer.covers(20));
+    }
+
+    @Test
+    void coversNothingUntilLoaded() {
+        PriceRingBuffer buffer = new PriceRingBuffer(4, Long.MAX_VALUE);
+        assertFalse(buffer.covers(1000));
+
+        buffer.setLoadedSince(500);
+        assertFalse(buffer.covers(499));
+        assertTrue(buffer.covers(500));
+
+        // Una carga posterior más corta no achica lo cubierto
+        buffer.setLoadedSince(800);
+        assertTrue(buffer.covers(500));
+    }
+
+    @Test
+    void insertPutsALatePointInPlace() {
+        PriceRingBuffer buffer = filled(8, 10, 30, 40);
+
+        assertTrue(buffer.insert(20, 200));
+        assertFalse(buffer.insert(30, 1), "ya hay un punto con ese tiempo");
+
+        assertArrayEquals(new long[] {10, 20, 30, 40}, buffer.range(0, 100).times());
+        assertArrayEquals(new double[] {100, 200, 300, 400}, buffer.range(0, 100).prices());
+    }
+
+    @Test
+    void insertIntoAFullWrappedBufferEvictsTheOldest() {
+        PriceRingBuffer buffer = filled(4, 10, 20, 30, 50, 60);
+
+        assertTrue(buffer.insert(40, 400));
+
+        assertArrayEquals(new long[] {30, 40, 50, 60}, buffer.range(0, 100).times());
+        assertFalse(buffer.covers(20));
+        assertTrue(buffer.covers(21));
+    }
+
+    @Test
+    void insertBeforeTheCoveredRangeIsIgnored() {
+        PriceRingBuffer buffer = new PriceRingBuffer(4, 100);
+        buffer.append(100, 1);
+        buffer.append(200, 2);
+
+        assertFalse(buffer.insert(50, 0.5));
+        assertEquals(2, buffer.size());
+    }
+
+    @Test
+    void insertOfTheOldestPointIntoAFullBufferOnlyShrinksCoverage() {
+        PriceRingBuffer buffer = filled(3, 20, 30, 40);
+
+        assertFalse(buffer.insert(15, 150));
+
+        assertArrayEquals(new long[] {20, 30, 40}, buffer.range(0, 100).times());
+        assertFalse(buffer.covers(15));
+        assertTrue(buffer.covers(16));
+    }
+
+    @Test
+    void invalidateThroughDropsCoverageButKeepsThePoints() {
+        PriceRingBuffer buffer = filled(8, 10, 20, 30);
+
+        buffer.invalidateThrough(20);
+
+        assertFalse(buffer.covers(20));
+        assertTrue(buffer.covers(21));
+        assertEquals(3, buffer.range(0, 100).size());
+    }
+}
@@ -0,0 +1,163 @@
+package com.cryptotracker.timeseries;
+
+import com.cryptotracker.scraper.PriceTick;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RegressionEngineTest {
+
+    private static final int CRYPTO = 1;
+    private static final int WINDOW_HOURS = 24;
+    private static final long MINUTE = 60_000L;
+    // Un instante que no cae en punto para que las horas queden partidas
+    private static final long START = 1_750_000_123_456L;
+
+    private final List<PriceTick> ticks = new ArrayList<>();
+
+    @BeforeEach
+    void generateTicks() {
+        // 30 horas de un tick por minuto con tendencia y ruido, alrededor de 60 000
+        Random random = new Random(11);
+        double price = 60_000;
+        for (int i = 0; i < 30 * 60; i++) {
+            price += 2 + random.nextGaussian() * 40;
+            // Huecos irregulares para que índice y tiempo no sean proporcionales
+            long jitter = random.nextInt(20_000);
+            ticks.add(new PriceTick(CRYPTO, price, START + i * MINUTE + jitter));
+        }
+    }
+
+    private RegressionEngine feed(List<PriceTick> source) {
+        RegressionEngine engine = new RegressionEngine(WINDOW_HOURS);
+        // En lotes como los del scraper
+        for (int i = 0; i < source.size(); i += 7) {
+            engine.onPrices(source.subList(i, Math.min(source.size(), i + 7)));
+        }
+        return engine;
+    }
+
+    // Lo que queda en la ventana después del último tick
+    private List<PriceTick> window() {
+        long last = ticks.get(ticks.size() - 1).time();
+        return ticks.stream().filter(t -> t.time() >= last - WINDOW_HOURS * 3600_000L).toList();
+    }
+
+    private static RegressionEngine.Fit twoPass(List<PriceTick> window, long from,
+                                                int startHour, int endHour, boolean timeAxis) {
+        List<PriceTick> points = new ArrayList<>();
+        for (PriceTick tick : window) {
+            int hourOfDay = (int) Math.floorMod(RegressionEngine.localHour(tick.time()), 24L);
+            if (tick.time() >= from && hourOfDay >= startHour && hourOfDay <= endHour) {
+                points.add(tick);
+            }
+        }
+        int n = points.size();
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = timeAxis ? (points.get(i).time() - points.get(0).time()) / 1000.0 : i;
+            y[i] = points.get(i).price();
+        }
+
+        double meanX = 0;
+        double meanY = 0;
+        for (int i = 0; i < n; i++) {
+            meanX += x[i];
+            meanY += y[i];
+        }
+        meanX /= n;
+        meanY /= n;
+        double sxx = 0;
+        double sxy = 0;
+        double syy = 0;
+        for (int i = 0; i < n; i++) {
+            sxx += (x[i] - meanX) * (x[i] - meanX);
+            sxy += (x[i] - meanX) * (y[i] - meanY);
+            syy += (y[i] - meanY) * (y[i] - meanY);
+        }
+        double slope = sxy / sxx;
+        return new RegressionEngine.Fit(n, slope, meanY - slope * meanX, slope * sxy / syy);
+    }
+
+    private static void assertFit(RegressionEngine.Fit expected, RegressionEngine.Fit actual) {
+        assertEquals(expected.count(), actual.count());
+        assertEquals(expected.slope(), actual.slope(), Math.abs(expected.slope()) * 1e-6);
+        assertEquals(expected.intercept(), actual.intercept(), 1e-3);
+        assertEquals(expected.rSquared(), actual.rSquared(), 1e-9);
+    }
+
+    @Test
+    void wholeWindowMatchesATwoPassRegression() {
+        RegressionEngine engine = feed(ticks);
+        long from = window().get(0).time();
+
+        for (boolean timeAxis : new boolean[] {false, true}) {
+            assertFit(twoPass(window(), from, 0, 23, timeAxis),
+                      engine.fit(CRYPTO, from, 0, 23, timeAxis));
+        }
+    }
+
+    @Test
+    void fromInTheMiddleOfAnHourUsesOnlyTheTicksAfterIt() {
+        RegressionEngine engine = feed(ticks);
+        long last = ticks.get(ticks.size() - 1).time();
+
+        for (long from : new long[] {last - 6 * 3600_000L - 17 * MINUTE, last - 90 * MINUTE, last - 61 * MINUTE}) {
+            for (boolean timeAxis : new boolean[] {false, true}) {
+                assertFit(twoPass(window(), from, 0, 23, timeAxis),
+                          engine.fit(CRYPTO, from, 0, 23, timeAxis));
+            }
+        }
+    }
+
+    @Test
+    void hourFilterSkipsTheOtherHoursOfTheDay() {
+        RegressionEngine engine = feed(ticks);
+        // Todas las horas del día tienen ticks después de from
+        long from = window().get(0).time() + 33 * MINUTE;
+
+        for (int[] hours : new int[][] {{8, 17}, {0, 5}, {22, 23}}) {
+            for (boolean timeAxis : new boolean[] {false, true}) {
+                assertFit(twoPass(window(), from, hours[0], hours[1], timeAxis),
+                          engine.fit(CRYPTO, from, hours[0], hours[1], timeAxis));
+            }
+        }
+    }
+
+    @Test
+    void lateTicksAreInsertedInPlace() {
+        List<PriceTick> onTime = new ArrayList<>();
+        List<PriceTick> late = new ArrayList<>();
+        for (int i = 0; i < ticks.size(); i++) {
+            if (i >= ticks.size() - 300 && i % 5 == 0) {
+                late.add(ticks.get(i));
+            } else {
+                onTime.add(ticks.get(i));
+            }
+        }
+        RegressionEngine engine = feed(onTime);
+        engine.onLatePrices(late);
+        // Repetirlos no cambia nada
+        engine.onLatePrices(late);
+
+        long from = ticks.get(ticks.size() - 1).time() - 10 * 3600_000L - 5 * MINUTE;
+        for (boolean timeAxis : new boolean[] {false, true}) {
+            assertFit(twoPass(window(), from, 0, 23, timeAxis),
+                      engine.fit(CRYPTO, from, 0, 23, timeAxis));
+        }
+    }
+
+    @Test
+    void unknownCryptoOrEmptyRangeHasNoFit() {
+        RegressionEngine engine = feed(ticks);
+
+        assertEquals(0, engine.fit(99, START, 0, 23, false).count());
+        assertEquals(0, engine.fit(CRYPTO, Long.MAX_VALUE, 0, 23, false).count());
+    }
+}
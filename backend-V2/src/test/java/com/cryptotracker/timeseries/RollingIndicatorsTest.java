@@ -0,0 +1,91 @@
+package com.cryptotracker.timeseries;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RollingIndicatorsTest {
+
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    void matchesARecomputationOverTheWindowAtEveryTick() {
+        int window = 20;
+        RollingIndicators indicators = new RollingIndicators(window);
+        Random random = new Random(42);
+        double[] prices = new double[500];
+        double price = 30_000;
+        for (int i = 0; i < prices.length; i++) {
+            price *= 1 + (random.nextDouble() - 0.5) * 0.01;
+            prices[i] = price;
+        }
+
+        for (int i = 0; i < prices.length; i++) {
+            indicators.add(prices[i]);
+            int from = Math.max(0, i - window + 1);
+            int n = i - from + 1;
+
+            double sum = 0;
+            double min = Double.MAX_VALUE;
+            double max = -Double.MAX_VALUE;
+            for (int k = from; k <= i; k++) {
+                sum += prices[k];
+                min = Math.min(min, prices[k]);
+                max = Math.max(max, prices[k]);
+            }
+            double mean = sum / n;
+            double squares = 0;
+            for (int k = from; k <= i; k++) {
+                squares += (prices[k] - mean) * (prices[k] - mean);
+            }
+
+            assertEquals(mean, indicators.sma(), mean * EPSILON, "sma en " + i);
+            assertEquals(Math.sqrt(squares / n), indicators.std(), 1e-6, "std en " + i);
+            assertEquals(min, indicators.min(), "min en " + i);
+            assertEquals(max, indicators.max(), "max en " + i);
+            assertEquals(i >= window - 1, indicators.isFull());
+        }
+    }
+
+    @Test
+    void emaStartsAtTheSmaAndThenSmooths() {
+        int window = 4;
+        RollingIndicators indicators = new RollingIndicators(window);
+        double[] prices = {10, 12, 11, 13, 20, 18, 15};
+        double alpha = 2.0 / (window + 1);
+
+        double ema = 0;
+        for (int i = 0; i < prices.length; i++) {
+            indicators.add(prices[i]);
+            if (i < window) {
+                ema = indicators.sma();
+            } else {
+                ema += alpha * (prices[i] - ema);
+            }
+            assertEquals(ema, indicators.ema(), EPSILON);
+        }
+        assertEquals(16.5, indicators.sma(), EPSILON);
+    }
+
+    @Test
+    void constantPricesHaveZeroDeviation() {
+        RollingIndicators indicators = new RollingIndicators(5);
+        for (int i = 0; i < 50; i++) {
+            indicators.add(0.1);
+        }
+        assertEquals(0.0, indicators.std(), 1e-12);
+        assertEquals(0.1, indicators.min());
+        assertEquals(0.1, indicators.max());
+    }
+
+    @Test
+    void rejectsWindowsShorterThanTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new RollingIndicators(1));
+        assertFalse(new RollingIndicators(2).isFull());
+        assertEquals(2, new RollingIndicators(2).getWindow());
+    }
+}
@@ -19,10 +19,62 @@ CREATE TABLE IF NOT EXISTS prices (
     price_time DATETIME(3) NOT NULL,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (crypto_id) REFERENCES crypto(id) ON DELETE CASCADE,
-    INDEX idx_crypto_time (crypto_id, price_time DESC),
+    -- Único: un lote que se repite desde la bitácora no duplica filas (ver TickWriter)
+    UNIQUE KEY idx_crypto_time (crypto_id, price_time DESC),
     INDEX idx_time (price_time)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
+-- Agregados de 1 minuto (ver RollupTier); precio promedio = price_sum / tick_count
+CREATE TABLE IF NOT EXISTS prices_1m (
+    crypto_id INT UNSIGNED NOT NULL,
+    bucket_time DATETIME NOT NULL,
+    open_price DECIMAL(20,8) NOT NULL,
+    high_price DECIMAL(20,8) NOT NULL,
+    low_price DECIMAL(20,8) NOT NULL,
+    close_price DECIMAL(20,8) NOT NULL,
+    price_sum DECIMAL(30,8) NOT NULL,
+    tick_count INT UNSIGNED NOT NULL,
+    open_time DATETIME(3) NOT NULL,
+    close_time DATETIME(3) NOT NULL,
+    PRIMARY KEY (crypto_id, bucket_time),
+    FOREIGN KEY (crypto_id) REFERENCES crypto(id) ON DELETE CASCADE,
+    INDEX idx_bucket (bucket_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- Agregados de 5 minutos (ver RollupTier); precio promedio = price_sum / tick_count
+CREATE TABLE IF NOT EXISTS prices_5m (
+    crypto_id INT UNSIGNED NOT NULL,
+    bucket_time DATETIME NOT NULL,
+    open_price DECIMAL(20,8) NOT NULL,
+    high_price DECIMAL(20,8) NOT NULL,
+    low_price DECIMAL(20,8) NOT NULL,
+    close_price DECIMAL(20,8) NOT NULL,
+    price_sum DECIMAL(30,8) NOT NULL,
+    tick_count INT UNSIGNED NOT NULL,
+    open_time DATETIME(3) NOT NULL,
+    close_time DATETIME(3) NOT NULL,
+    PRIMARY KEY (crypto_id, bucket_time),
+    FOREIGN KEY (crypto_id) REFERENCES crypto(id) ON DELETE CASCADE,
+    INDEX idx_bucket (bucket_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- Agregados de 1 hora (ver RollupTier); precio promedio = price_sum / tick_count
+CREATE TABLE IF NOT EXISTS prices_1h (
+    crypto_id INT UNSIGNED NOT NULL,
+    bucket_time DATETIME NOT NULL,
+    open_price DECIMAL(20,8) NOT NULL,
+    high_price DECIMAL(20,8) NOT NULL,
+    low_price DECIMAL(20,8) NOT NULL,
+    close_price DECIMAL(20,8) NOT NULL,
+    price_sum DECIMAL(30,8) NOT NULL,
+    tick_count INT UNSIGNED NOT NULL,
+    open_time DATETIME(3) NOT NULL,
+    close_time DATETIME(3) NOT NULL,
+    PRIMARY KEY (crypto_id, bucket_time),
+    FOREIGN KEY (crypto_id) REFERENCES crypto(id) ON DELETE CASCADE,
+    INDEX idx_bucket (bucket_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
 -- Insertar criptomonedas principales
 INSERT INTO crypto (symbol, name, image_url) VALUES
     ('BTC', 'Bitcoin', 'https://storage.googleapis.com/cryptotracker-logos/bitcoin.png'),
@@ -0,0 +1,25 @@
+-- Migración opcional: particionar prices por hora para que la retención borre
+-- con DROP PARTITION en lugar de DELETE fila por fila.
+--
+-- MySQL no permite llaves foráneas en tablas particionadas y exige que la
+-- columna de partición esté en la llave primaria, por eso se quita la FK a
+-- crypto y la PK pasa a (id, price_time).
+--
+-- La tabla queda con una sola partición pmax; la primera ejecución de
+-- DataCleanupTask la parte en particiones de data.partition.hours horas (esa
+-- vez sí copia las filas que ya estaban) y de ahí en adelante solo crea las
+-- siguientes y borra las vencidas. Sin esta migración la limpieza sigue con
+-- DELETE por lotes.
+USE cryptotracker;
+
+-- El nombre de la FK lo genera MySQL; verificar con SHOW CREATE TABLE prices
+ALTER TABLE prices DROP FOREIGN KEY prices_ibfk_1;
+
+ALTER TABLE prices
+    DROP PRIMARY KEY,
+    ADD PRIMARY KEY (id, price_time);
+
+ALTER TABLE prices
+    PARTITION BY RANGE COLUMNS (price_time) (
+        PARTITION pmax VALUES LESS THAN (MAXVALUE)
+    );
@@ -0,0 +1,22 @@
+-- Migración: hacer único (crypto_id, price_time) en prices.
+--
+-- TickWriter vuelve a mandar desde la bitácora los lotes cuyo ack no llegó al
+-- disco (caída, o conexión perdida justo después del COMMIT). Antes de
+-- insertar descarta los ticks que ya están en prices y solo suma a los
+-- agregados los que sí insertó; la llave única es la garantía de que un tick
+-- repetido nunca queda dos veces.
+--
+-- Primero se borran los duplicados que ya existan (se queda la fila de menor
+-- id). Los agregados que se hayan sumado dos veces antes de esta versión no
+-- se corrigen; salen de la tabla con su retención.
+USE cryptotracker;
+
+DELETE p1 FROM prices p1
+JOIN prices p2
+  ON p1.crypto_id = p2.crypto_id
+ AND p1.price_time = p2.price_time
+ AND p1.id > p2.id;
+
+ALTER TABLE prices
+    DROP INDEX idx_crypto_time,
+    ADD UNIQUE KEY idx_crypto_time (crypto_id, price_time DESC);
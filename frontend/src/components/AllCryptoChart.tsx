@@ -81,7 +81,7 @@ const AllCryptoChart: React.FC = () => {
     try {
       const promises = selectedCryptos.map(async (cryptoId) => {
         const response = await fetch(
-          `http://34.95.126.189/prices/history/?crypto_id=${cryptoId}&hours=${hours}`
+          `http://34.95.126.189/prices/history/?crypto_id=${cryptoId}&hours=${hours}&points=500`
         );
         return response.json();
       });
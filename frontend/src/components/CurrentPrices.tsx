@@ -68,23 +68,26 @@ const CurrentPrices: React.FC = () => {
   };
 
   useEffect(() => {
+    const applyPrices = (data: { status: string; data: CryptoPrice[] }) => {
+      if (data.status !== 'success') throw new Error('API response failed');
+
+      setPrices(data.data);
+
+      if (data.data.length > 0) {
+        // Aplicamos el ajuste de hora aquí
+        const adjustedTime = adjustTimeToMexico(data.data[0].timestamp);
+        setLastUpdated(adjustedTime);
+      }
+
+      setLoading(false);
+    };
+
     const fetchPrices = async () => {
       try {
         const response = await fetch('http://34.95.126.189/prices/current');
         if (!response.ok) throw new Error(`Error: ${response.status}`);
         
-        const data = await response.json();
-        if (data.status !== 'success') throw new Error('API response failed');
-
-        setPrices(data.data);
-        
-        if (data.data.length > 0) {
-          // Aplicamos el ajuste de hora aquí
-          const adjustedTime = adjustTimeToMexico(data.data[0].timestamp);
-          setLastUpdated(adjustedTime);
-        }
-        
-        setLoading(false);
+        applyPrices(await response.json());
       } catch (err) {
         setError(`Error loading data: ${err instanceof Error ? err.message : String(err)}`);
         setLoading(false);
@@ -92,8 +95,41 @@ const CurrentPrices: React.FC = () => {
     };
 
     fetchPrices();
-    const intervalId = setInterval(fetchPrices, 60000);
-    return () => clearInterval(intervalId);
+
+    // Si el navegador soporta SSE el servidor nos empuja cada scrape; si no, polling cada minuto
+    if (typeof EventSource === 'undefined') {
+      const intervalId = setInterval(fetchPrices, 60000);
+      return () => clearInterval(intervalId);
+    }
+
+    let pollId: ReturnType<typeof setInterval> | null = null;
+    const source = new EventSource('http://34.95.126.189/prices/stream');
+    source.addEventListener('prices', (event) => {
+      try {
+        applyPrices(JSON.parse((event as MessageEvent).data));
+        setError(null);
+      } catch (err) {
+        console.error('Error procesando evento de precios:', err);
+      }
+    });
+    // EventSource reintenta solo tras un corte; no marcamos error para no tapar la tabla.
+    // Si el servidor lo rechaza (p. ej. 503 por límite de suscriptores) queda CLOSED y
+    // ya no reintenta, así que pasamos a polling como sin SSE
+    source.onerror = () => {
+      if (source.readyState === EventSource.CLOSED) {
+        if (pollId === null) {
+          console.warn('Stream de precios rechazado, consultando cada minuto');
+          fetchPrices();
+          pollId = setInterval(fetchPrices, 60000);
+        }
+      } else {
+        console.warn('Stream de precios desconectado, reintentando...');
+      }
+    };
+    return () => {
+      source.close();
+      if (pollId !== null) clearInterval(pollId);
+    };
   }, []);
 
   if (loading) return <div className="center">Cargando...</div>;